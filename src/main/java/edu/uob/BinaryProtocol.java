@@ -0,0 +1,314 @@
+package edu.uob;
+
+import edu.uob.commands.ResultSink;
+import edu.uob.tables.BoolColumn;
+import edu.uob.tables.Column;
+import edu.uob.tables.DoubleColumn;
+import edu.uob.tables.IntColumn;
+import edu.uob.tables.LongColumn;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Binary protocol, used by a client sending PREFACE as its first bytes. No command starts
+// with a NUL byte, so a client sending a command line gets the text protocol as before.
+// Every message is a frame:
+//     int length of the rest, byte kind, payload
+// from the client:
+//     QUERY   a command, the rest of the frame as UTF-8
+// from the server, a HEADER, any ROWS, then END for each command:
+//     HEADER  string message (the text result, only its first line if rows follow), int
+//             attribute count, then string of each attribute, none if there are no rows
+//     ROWS    int row count, then the values of each row, each a byte tag and its value:
+//             NULL, INT int, LONG long, DOUBLE double, BOOL byte, STRING string
+//             a value stored as other text than the canonical text of its type (e.g.
+//             "007" or "1.50", see Column.isCanonical()) is sent as STRING of that text
+//     END     end of the result
+// Rows are sent in chunks while they are read from the table (see ResultSink), so neither
+// side holds a whole result, and the client reads values without scanning for separators.
+// Numbers are big-endian, a string is an int length followed by its UTF-8 bytes.
+final class BinaryProtocol {
+    static final byte[] PREFACE = {0, 'T', 'Q', 'P'};
+    static final byte QUERY = 'Q';
+    static final byte HEADER = 'H';
+    static final byte ROWS = 'R';
+    static final byte END = 'E';
+    static final byte NULL = 0;
+    static final byte INT = 1;
+    static final byte LONG = 2;
+    static final byte DOUBLE = 3;
+    static final byte BOOL = 4;
+    static final byte STRING = 5;
+    // a ROWS frame is sent once it holds this many rows, or bytes.
+    static final int CHUNK_ROWS = 1024;
+    static final int CHUNK_BYTES = 32 * 1024;
+    // longer frames are refused, so that a broken length never takes all memory.
+    static final int MAX_FRAME_LENGTH = 16 * 1024 * 1024;
+
+    private BinaryProtocol() {
+    }
+
+    // Whether in starts with PREFACE, which is read if so, otherwise nothing is read. Only
+    // the first byte is needed to tell, so a short text command is never waited for.
+    static boolean readPreface(InputStream in) throws IOException {
+        in.mark(1);
+        if (in.read() != PREFACE[0]) {
+            in.reset();
+            return false;
+        }
+        checkPreface(in.readNBytes(PREFACE.length - 1), 0);
+        return true;
+    }
+
+    // bytes from offset hold the rest of PREFACE, after its first byte.
+    static void checkPreface(byte[] bytes, int offset) throws IOException {
+        int end = offset + PREFACE.length - 1;
+        if (bytes.length < end || !Arrays.equals(bytes, offset, end, PREFACE, 1, PREFACE.length)) {
+            throw new IOException("Unknown protocol");
+        }
+    }
+
+    // Serve commands of a connection which sent PREFACE until the client disconnects.
+    static void serve(DBServer server, Session session, InputStream input, OutputStream output) throws IOException {
+        DataInputStream in = new DataInputStream(input);
+        FrameWriter writer = new FrameWriter(output);
+        String command;
+        while (!Thread.interrupted() && (command = readQuery(in)) != null) {
+            System.out.println("Received message: " + command);
+            try {
+                server.handleCommand(session, command, writer);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    // command of the next QUERY frame, or null at end of stream.
+    static String readQuery(DataInputStream in) throws IOException {
+        int length;
+        try {
+            length = in.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        byte[] frame = new byte[checkLength(length)];
+        in.readFully(frame);
+        return getQuery(ByteBuffer.wrap(frame));
+    }
+
+    // Take the command of the QUERY frame at the position of in if all of it has arrived,
+    // otherwise return null and leave in as it is.
+    static String takeQuery(ByteBuffer in) throws IOException {
+        if (in.remaining() < Integer.BYTES) return null;
+        int length = checkLength(in.getInt(in.position()));
+        if (in.remaining() < Integer.BYTES + length) return null;
+        ByteBuffer frame = in.slice(in.position() + Integer.BYTES, length);
+        in.position(in.position() + Integer.BYTES + length);
+        return getQuery(frame);
+    }
+
+    private static String getQuery(ByteBuffer frame) throws IOException {
+        if (frame.get() != QUERY) throw new IOException("Expected a QUERY frame");
+        return StandardCharsets.UTF_8.decode(frame).toString();
+    }
+
+    private static int checkLength(int length) throws IOException {
+        if (length < 1 || length > MAX_FRAME_LENGTH) {
+            throw new IOException("Invalid frame length " + length);
+        }
+        return length;
+    }
+
+    // === client side ===
+
+    static void writeQuery(DataOutputStream out, String command) throws IOException {
+        byte[] bytes = command.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(1 + bytes.length);
+        out.writeByte(QUERY);
+        out.write(bytes);
+        out.flush();
+    }
+
+    // Read the frames of one result, giving each row to reader as soon as its chunk arrives.
+    static void readResult(DataInputStream in, ResultReader reader) throws IOException {
+        int width = 0;
+        while (true) {
+            byte[] bytes = new byte[checkLength(in.readInt())];
+            in.readFully(bytes);
+            ByteBuffer frame = ByteBuffer.wrap(bytes);
+            byte kind = frame.get();
+            if (kind == END) return;
+            if (kind == HEADER) {
+                String message = readString(frame);
+                width = frame.getInt();
+                List<String> attributes = new ArrayList<>(width);
+                for (int i = 0; i < width; i++) {
+                    attributes.add(readString(frame));
+                }
+                reader.header(message, attributes);
+            }
+            else if (kind == ROWS) {
+                int count = frame.getInt();
+                for (int i = 0; i < count; i++) {
+                    List<Object> values = new ArrayList<>(width);
+                    for (int j = 0; j < width; j++) {
+                        values.add(readValue(frame));
+                    }
+                    reader.row(values);
+                }
+            }
+            else throw new IOException("Unknown frame " + kind);
+        }
+    }
+
+    interface ResultReader {
+        void header(String message, List<String> attributes);
+
+        // values are null, Integer, Long, Double, Boolean or String.
+        void row(List<Object> values);
+    }
+
+    private static Object readValue(ByteBuffer in) throws IOException {
+        byte tag = in.get();
+        return switch (tag) {
+            case NULL -> null;
+            case INT -> in.getInt();
+            case LONG -> in.getLong();
+            case DOUBLE -> in.getDouble();
+            case BOOL -> in.get() != 0;
+            case STRING -> readString(in);
+            default -> throw new IOException("Unknown value " + tag);
+        };
+    }
+
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeString(DataOutputStream out, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    // Sends results as frames to out, flushed after each ROWS frame and END. Rows are
+    // held only until their chunk is full. Used by one command at a time.
+    static final class FrameWriter implements ResultSink {
+        private final DataOutputStream out;
+        // payload of the frame being built.
+        private final ByteArrayOutputStream chunk;
+        private final DataOutputStream chunkOut;
+        private List<Column> columns;
+        private int chunkRows;
+
+        FrameWriter(OutputStream out) {
+            this.out = new DataOutputStream(out);
+            this.chunk = new ByteArrayOutputStream();
+            this.chunkOut = new DataOutputStream(chunk);
+            this.columns = List.of();
+            this.chunkRows = 0;
+        }
+
+        @Override
+        public void begin(String message, List<String> attributes, List<Column> columns) {
+            this.columns = columns;
+            try {
+                writeString(chunkOut, message);
+                chunkOut.writeInt(attributes.size());
+                for (String attribute : attributes) {
+                    writeString(chunkOut, attribute);
+                }
+                writeFrame(HEADER);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void row(int row) {
+            try {
+                for (Column column : columns) {
+                    writeValue(chunkOut, column, row);
+                }
+                chunkRows++;
+                if (chunkRows == CHUNK_ROWS || chunk.size() >= CHUNK_BYTES) writeRows();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void end() {
+            try {
+                if (chunkRows > 0) writeRows();
+                writeFrame(END);
+                out.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            columns = List.of();
+        }
+
+        private void writeRows() throws IOException {
+            out.writeInt(1 + Integer.BYTES + chunk.size());
+            out.writeByte(ROWS);
+            out.writeInt(chunkRows);
+            chunk.writeTo(out);
+            out.flush();
+            chunk.reset();
+            chunkRows = 0;
+        }
+
+        private void writeFrame(byte kind) throws IOException {
+            out.writeInt(1 + chunk.size());
+            out.writeByte(kind);
+            chunk.writeTo(out);
+            chunk.reset();
+        }
+
+        // the value read from the column as it is stored, not as text, unless that would
+        // change how it reads.
+        private static void writeValue(DataOutputStream out, Column column, int row) throws IOException {
+            if (!column.isCanonical(row)) {
+                out.writeByte(STRING);
+                writeString(out, column.getString(row));
+            }
+            else if (column.isNull(row)) {
+                out.writeByte(NULL);
+            }
+            else if (column instanceof IntColumn intColumn) {
+                out.writeByte(INT);
+                out.writeInt(intColumn.getInt(row));
+            }
+            else if (column instanceof LongColumn longColumn) {
+                out.writeByte(LONG);
+                out.writeLong(longColumn.getLong(row));
+            }
+            else if (column instanceof DoubleColumn doubleColumn) {
+                out.writeByte(DOUBLE);
+                out.writeDouble(doubleColumn.getDouble(row));
+            }
+            else if (column instanceof BoolColumn boolColumn) {
+                out.writeByte(BOOL);
+                out.writeBoolean(boolColumn.getBool(row));
+            }
+            else {
+                out.writeByte(STRING);
+                writeString(out, column.getString(row));
+            }
+        }
+    }
+}
@@ -2,19 +2,23 @@ package edu.uob;
 
 import java.io.*;
 import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * This is the sample DB client for you to connect to your DB server.
  *
- * <p>Input are taken from stdin and output goes to stdout.
+ * <p>Input are taken from stdin and output goes to stdout. With "--binary" the client talks
+ * {@link BinaryProtocol} and prints rows as they arrive.
  */
 public final class DBClient {
 
     private static final char END_OF_TRANSMISSION = 4;
 
     public static void main(String[] args) throws IOException {
-        connectTo("localhost", 8888,
-                  new BufferedReader(new InputStreamReader(System.in)));
+        BufferedReader input = new BufferedReader(new InputStreamReader(System.in));
+        if (args.length > 0 && args[0].equals("--binary")) connectBinaryTo("localhost", 8888, input);
+        else connectTo("localhost", 8888, input);
     }
 
     private static void connectTo(String host, int port, BufferedReader input) throws IOException {
@@ -29,6 +33,38 @@ public final class DBClient {
         }
     }
 
+    private static void connectBinaryTo(String host, int port, BufferedReader input) throws IOException {
+        try (var socket = new Socket(host, port);
+             var socketIn = new DataInputStream(
+                     new BufferedInputStream(socket.getInputStream()));
+             var socketOut = new DataOutputStream(
+                     new BufferedOutputStream(socket.getOutputStream()))) {
+            socketOut.write(BinaryProtocol.PREFACE);
+            String command;
+            while (!Thread.interrupted()) {
+                System.out.print("SQL:> ");
+                if ((command = input.readLine()) == null) break; // end of input.
+                BinaryProtocol.writeQuery(socketOut, command);
+                BinaryProtocol.readResult(socketIn, new BinaryProtocol.ResultReader() {
+                    @Override
+                    public void header(String message, List<String> attributes) {
+                        System.out.println(message);
+                        if (!attributes.isEmpty()) System.out.println(String.join("\t", attributes));
+                    }
+
+                    @Override
+                    public void row(List<Object> values) {
+                        List<String> texts = new ArrayList<>(values.size());
+                        for (Object value : values) {
+                            texts.add(value == null ? "NULL" : value.toString());
+                        }
+                        System.out.println(String.join("\t", texts));
+                    }
+                });
+            }
+        }
+    }
+
     private static void handleNextCommand(
             BufferedReader commandLine, BufferedReader socketReader, BufferedWriter socketWriter)
             throws IOException {
@@ -1,22 +1,57 @@
 package edu.uob;
 
+import edu.uob.commands.Command;
+import edu.uob.commands.ResultSink;
 import edu.uob.exceptions.*;
-import edu.uob.syntax.Parser;
+import edu.uob.syntax.PlanCache;
+import edu.uob.syntax.PreparedStatement;
 import edu.uob.syntax.Tokenizer;
+import edu.uob.tables.Column;
+import edu.uob.tables.LockManager;
+import edu.uob.tables.Table;
+import edu.uob.tables.TableCache;
+import edu.uob.tables.TableCheckpointer;
 
 import java.io.*;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * This class implements the DB server.
  */
-public final class DBServer {
-    private static final char END_OF_TRANSMISSION = 4;
+public final class DBServer implements AutoCloseable {
+    static final char END_OF_TRANSMISSION = 4;
+    // queries over fewer rows than this run on a single thread.
+    public static final int DEFAULT_PARALLEL_THRESHOLD = 100_000;
+    // connections served at once, others wait to be accepted by a free thread.
+    public static final int CONNECTION_THREADS = 64;
     private final File databaseDirectory;
-    private String databaseName;
+    private final TableCache tableCache;
+    private final TableCheckpointer checkpointer;
+    private final PlanCache planCache;
+    private int parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+    // session of handleCommand(String), and the session of each thread running a command.
+    private final Session defaultSession;
+    private final ThreadLocal<Session> currentSession;
+    // A command changing tables locks them (see LockManager) while holding the read lock of
+    // the server, queries only reading tables hold no other lock (see TableCache.pin()).
+    // Commands on a whole database hold the write lock of the server instead, so does a
+    // batch from its first statement to the saving of its tables. A query giving rows to a
+    // sink gives the read lock up once its tables are pinned, see runCommand().
+    private final ReentrantReadWriteLock serverLock;
+    private final LockManager lockManager;
 
     /**
      * KEEP this signature (i.e. {@code edu.uob.DBServer(File)}) otherwise we won't be able to mark
@@ -31,17 +66,79 @@ public final class DBServer {
      *                          server instance.
      */
     public DBServer(File databaseDirectory) {
+        this(databaseDirectory, TableCache.DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param databaseDirectory The directory to use for storing any persistent database files.
+     * @param cacheCapacity     Memory budget in bytes for tables kept in the table cache.
+     */
+    public DBServer(File databaseDirectory, long cacheCapacity) {
         this.databaseDirectory = databaseDirectory;
+        this.checkpointer = new TableCheckpointer();
+        this.tableCache = new TableCache(cacheCapacity, checkpointer);
+        this.planCache = new PlanCache();
+        this.defaultSession = new Session();
+        this.currentSession = new ThreadLocal<>();
+        this.serverLock = new ReentrantReadWriteLock();
+        this.lockManager = new LockManager();
     }
 
+    // "--selector" serves connections with selectorListenOn() instead of a thread each.
     public static void main(String[] args) throws IOException {
-        new DBServer(Paths.get("db").toAbsolutePath().toFile()).blockingListenOn(8888);
+        DBServer server = new DBServer(Paths.get("db").toAbsolutePath().toFile());
+        if (args.length > 0 && args[0].equals("--selector")) server.selectorListenOn(8888);
+        else server.blockingListenOn(8888);
+    }
+
+    // Stop checkpointing in background. Changes not checkpointed yet stay in the logs of
+    // their tables, and are read back by the next server.
+    @Override
+    public void close() {
+        checkpointer.close();
     }
 
     public File getDatabaseDirectory() {
         return databaseDirectory;
     }
 
+    public TableCache getTableCache() {
+        return tableCache;
+    }
+
+    public TableCheckpointer getCheckpointer() {
+        return checkpointer;
+    }
+
+    public PlanCache getPlanCache() {
+        return planCache;
+    }
+
+    // session of the command running on this thread.
+    public Session getSession() {
+        Session session = currentSession.get();
+        return session != null ? session : defaultSession;
+    }
+
+    public PreparedStatement getPreparedStatement(String name) throws QueryException {
+        return getSession().getPreparedStatement(name);
+    }
+
+    public void putPreparedStatement(String name, PreparedStatement statement) {
+        getSession().putPreparedStatement(name, statement);
+    }
+
+    public int getParallelThreshold() {
+        return parallelThreshold;
+    }
+
+    /**
+     * @param parallelThreshold Minimum number of rows before a query is split across cores.
+     */
+    public void setParallelThreshold(int parallelThreshold) {
+        this.parallelThreshold = parallelThreshold;
+    }
+
     /**
      * KEEP this signature (i.e. {@code edu.uob.DBServer.handleCommand(String)}) otherwise we won't be
      * able to mark your submission correctly.
@@ -49,23 +146,254 @@ public final class DBServer {
      * <p>This method handles all incoming DB commands and carry out the corresponding actions.
      */
     public String handleCommand(String command) {
-        List<String> tokens = Tokenizer.getTokens(command);
+        return handleCommand(defaultSession, command);
+    }
+
+    // Run command in session, whose USE and prepared statements are not seen by other
+    // sessions. Sessions may run commands on different threads at once.
+    public String handleCommand(Session session, String command) {
+        currentSession.set(session);
+        try {
+            return handleStatements(command);
+        } finally {
+            currentSession.remove();
+        }
+    }
+
+    // Run command in session giving its result to sink, where the rows of a SELECT are sent
+    // while they are read instead of being built into one string first. A batch gives its
+    // result as one message.
+    public void handleCommand(Session session, String command, ResultSink sink) {
+        currentSession.set(session);
+        try {
+            if (Tokenizer.splitStatements(command).size() > 1) {
+                sink.begin(handleStatements(command), List.of(), List.of());
+            }
+            else handleStatement(command, sink);
+        } finally {
+            currentSession.remove();
+        }
+        sink.end();
+    }
+
+    private String handleStatements(String command) {
+        List<String> statements = Tokenizer.splitStatements(command);
+        if (statements.size() <= 1) return handleStatement(command);
+        // A batch of statements runs until one fails, against one loaded copy of each
+        // table. Each changed table is saved once at the end, which writes all changes of
+        // the batch to its log at once.
+        Session session = getSession();
+        StringBuilder result = new StringBuilder();
+        serverLock.writeLock().lock();
+        session.setBatchTables(new LinkedHashMap<>());
+        try {
+            for (String statement : statements) {
+                if (result.length() > 0 && result.charAt(result.length() - 1) != '\n')
+                    result.append('\n');
+                String statementResult = handleStatement(statement);
+                result.append(statementResult);
+                if (statementResult.startsWith("[ERROR]")) break;
+            }
+        } finally {
+            Map<File, Table> tables = session.getBatchTables();
+            session.setBatchTables(null);
+            for (Map.Entry<File, Table> table : tables.entrySet()) {
+                try {
+                    tableCache.save(table.getValue(), table.getKey());
+                } catch (TableException e) {
+                    result.append("\n[ERROR] ").append(e.getMessage());
+                }
+            }
+            serverLock.writeLock().unlock();
+        }
+        return result.toString();
+    }
+
+    private String handleStatement(String command) {
         String result;
         try {
-            result = new Parser(tokens).getCommand().query(this);
+            // a command already parsed is taken from the cache, EXECUTE is bound first to
+            // lock for the command it runs.
+            Command statement = planCache.getCommand(command).bind(this);
+            result = runCommand(statement, (release) -> statement.query(this));
         } catch (QueryException | ParserException | TableException | ConditionException | ValueException e) {
             result = "[ERROR] " + e.getMessage();
         }
         return result;
     }
 
+    // An error is found before any row is given to sink. The server is unlocked before
+    // the first row, a slow client reading rows holds only the versions pinned.
+    private void handleStatement(String command, ResultSink sink) {
+        try {
+            Command statement = planCache.getCommand(command).bind(this);
+            runCommand(statement, (release) -> {
+                statement.query(this, new ReleasingSink(sink, release));
+                return null;
+            });
+        } catch (QueryException | ParserException | TableException | ConditionException | ValueException e) {
+            sink.begin("[ERROR] " + e.getMessage(), List.of(), List.of());
+        }
+    }
+
+    // Run query of command once the tables of command are locked, or pinned.
+    private <T> T runCommand(Command command, Query<T> query) throws QueryException, TableException, ConditionException, ValueException {
+        Session session = getSession();
+        if (session.getBatchTables() != null) return query.run(() -> {}); // server locked.
+        List<File> tableFiles = command.getTableFiles(this);
+        if (tableFiles == null) { // a whole database.
+            serverLock.writeLock().lock();
+            try {
+                return queryChanging(query, session);
+            } finally {
+                serverLock.writeLock().unlock();
+            }
+        }
+        serverLock.readLock().lock();
+        // a query may unlock the server early, once its tables are pinned.
+        boolean[] isLocked = {true};
+        try {
+            if (command.isReadOnly()) return queryPinned(query, session, () -> {
+                if (!isLocked[0]) return;
+                isLocked[0] = false;
+                serverLock.readLock().unlock();
+            });
+            LockManager.Locks locks = lockManager.lock(tableFiles);
+            try {
+                return queryChanging(query, session);
+            } finally {
+                locks.unlock();
+            }
+        } finally {
+            if (isLocked[0]) serverLock.readLock().unlock();
+        }
+    }
+
+    // tables read by a query are versions pinned until it ends, never changed meanwhile.
+    private <T> T queryPinned(Query<T> query, Session session, Runnable release) throws QueryException, TableException, ConditionException, ValueException {
+        List<Table> pinnedTables = new ArrayList<>();
+        session.setPinnedTables(pinnedTables);
+        try {
+            return query.run(release);
+        } finally {
+            session.setPinnedTables(null);
+            pinnedTables.forEach(tableCache::unpin);
+        }
+    }
+
+    // tables changed but not saved by the command are read again from file once it ends.
+    private <T> T queryChanging(Query<T> query, Session session) throws QueryException, TableException, ConditionException, ValueException {
+        List<File> changedFiles = new ArrayList<>();
+        session.setChangedFiles(changedFiles);
+        try {
+            return query.run(() -> {});
+        } finally {
+            session.setChangedFiles(null);
+            changedFiles.forEach(tableCache::endChange);
+        }
+    }
+
+    // What runCommand() runs: query() of the command, or query() giving rows to a sink.
+    // release unlocks the server for the rest of a query whose tables are all pinned, it
+    // does nothing for other commands.
+    private interface Query<T> {
+        T run(Runnable release) throws QueryException, TableException, ConditionException, ValueException;
+    }
+
+    // calls release before the result begins, all tables of the command are loaded by then.
+    private record ReleasingSink(ResultSink sink, Runnable release) implements ResultSink {
+        @Override
+        public void begin(String message, List<String> attributes, List<Column> columns) {
+            release.run();
+            sink.begin(message, attributes, columns);
+        }
+
+        @Override
+        public void row(int row) {
+            sink.row(row);
+        }
+
+        @Override
+        public void end() {
+            sink.end();
+        }
+    }
+
+    // A table in the batch running. Otherwise a version pinned by the query running, or
+    // the table to be changed by the command running, see TableCache.
+    public Table loadTable(File tableFile) throws TableException {
+        Session session = getSession();
+        LinkedHashMap<File, Table> batchTables = session.getBatchTables();
+        if (batchTables != null) {
+            File key = tableFile.getAbsoluteFile();
+            Table table = batchTables.get(key);
+            if (table == null) { // a version pinned by a query streaming rows is copied.
+                table = tableCache.loadForChange(tableFile);
+                batchTables.put(key, table);
+            }
+            return table;
+        }
+        if (session.getPinnedTables() != null) return pinTable(session, tableFile, null);
+        if (session.getChangedFiles() == null) return tableCache.load(tableFile);
+        session.getChangedFiles().add(tableFile);
+        return tableCache.loadForChange(tableFile);
+    }
+
+    // Only attributes in projection and id are needed by a query not changing the table,
+    // others are not read unless the table is loaded already, see TableCache.load(). The
+    // table returned must not be changed. All attributes are loaded if projection is null.
+    public Table loadTable(File tableFile, Set<String> projection) throws TableException {
+        if (projection == null) return loadTable(tableFile);
+        Session session = getSession();
+        LinkedHashMap<File, Table> batchTables = session.getBatchTables();
+        if (batchTables != null) {
+            Table table = batchTables.get(tableFile.getAbsoluteFile());
+            if (table != null) return table;
+        }
+        if (session.getPinnedTables() != null) return pinTable(session, tableFile, projection);
+        return tableCache.load(tableFile, projection);
+    }
+
+    private Table pinTable(Session session, File tableFile, Set<String> projection) throws TableException {
+        Table table = tableCache.pin(tableFile, projection);
+        session.getPinnedTables().add(table);
+        return table;
+    }
+
+    // A table loaded by the batch running is saved at the end of it, others at once: a new
+    // table has its file created before any later statement looks for it.
+    public void saveTable(Table table, File tableFile) throws TableException {
+        LinkedHashMap<File, Table> batchTables = getSession().getBatchTables();
+        File key = tableFile.getAbsoluteFile();
+        if (batchTables != null && batchTables.containsKey(key)) batchTables.put(key, table);
+        else tableCache.save(table, tableFile);
+    }
+
+    // drop a table changed but not saved, read it from file next time.
+    public void invalidateTable(File tableFile) {
+        LinkedHashMap<File, Table> batchTables = getSession().getBatchTables();
+        if (batchTables != null) batchTables.remove(tableFile.getAbsoluteFile());
+        tableCache.invalidate(tableFile);
+    }
+
+    public void invalidateDirectory(File directory) {
+        LinkedHashMap<File, Table> batchTables = getSession().getBatchTables();
+        if (batchTables != null) {
+            Iterator<File> iterator = batchTables.keySet().iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().toPath().startsWith(directory.getAbsoluteFile().toPath()))
+                    iterator.remove();
+            }
+        }
+        tableCache.invalidateDirectory(directory);
+    }
+
     public String getDatabaseName() throws QueryException {
-        if (databaseName != null) return databaseName;
-        throw new QueryException.NoSpecificDatabaseException();
+        return getSession().getDatabaseName();
     }
 
     public void setDatabaseName(String name) {
-        databaseName = name;
+        getSession().setDatabaseName(name);
     }
 
 
@@ -84,43 +412,99 @@ public final class DBServer {
     public void blockingListenOn(int portNumber) throws IOException {
         try (ServerSocket s = new ServerSocket(portNumber)) {
             System.out.println("Server listening on port " + portNumber);
-            while (!Thread.interrupted()) {
+            blockingListenOn(s);
+        }
+    }
+
+    /**
+     * Accepts connections until the current thread is interrupted or the socket is closed. Each
+     * connection is served by a thread of a bounded pool (see {@link #CONNECTION_THREADS}) with a
+     * {@link Session} of its own, so a client never waits for another one to disconnect.
+     *
+     * @param serverSocket The socket to accept connections from.
+     */
+    public void blockingListenOn(ServerSocket serverSocket) {
+        ExecutorService connectionPool = Executors.newFixedThreadPool(
+                CONNECTION_THREADS, (runnable) -> {
+                    Thread thread = new Thread(runnable, "connection");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        try {
+            while (!Thread.interrupted() && !serverSocket.isClosed()) {
                 try {
-                    blockingHandleConnection(s);
+                    Socket socket = serverSocket.accept();
+                    connectionPool.execute(() -> blockingHandleConnection(socket));
                 } catch (IOException e) {
+                    if (serverSocket.isClosed()) break;
                     System.err.println("Server encountered a non-fatal IO error:");
                     e.printStackTrace();
                     System.err.println("Continuing...");
                 }
             }
+        } finally {
+            connectionPool.shutdownNow();
         }
     }
 
     /**
-     * Handles an incoming connection from the socket server.
+     * Starts a non-blocking socket server listening for new connections, which serves all
+     * connections from one thread and runs their commands on a pool of workers, see
+     * {@link SelectorListener}. The protocol is the same as {@link #blockingListenOn(int)}. This
+     * method blocks until the current thread is interrupted.
+     *
+     * @param portNumber The port to listen on.
+     * @throws IOException If any IO related operation fails.
+     */
+    public void selectorListenOn(int portNumber) throws IOException {
+        try (ServerSocketChannel channel = ServerSocketChannel.open()) {
+            channel.bind(new InetSocketAddress(portNumber));
+            System.out.println("Server listening on port " + portNumber);
+            selectorListenOn(channel);
+        }
+    }
+
+    /**
+     * @param serverChannel The bound channel to accept connections from.
+     */
+    public void selectorListenOn(ServerSocketChannel serverChannel) throws IOException {
+        new SelectorListener(this, serverChannel).run();
+    }
+
+    /**
+     * Handles an incoming connection until the client disconnects. A client starting with
+     * {@link BinaryProtocol#PREFACE} is served by {@link BinaryProtocol}, others by lines of text.
      *
      * <p>This method isn't used for marking. You shouldn't have to modify this method, but you can if
      * * you want to.
      *
-     * @param serverSocket The client socket to read/write from.
-     * @throws IOException If any IO related operation fails.
+     * @param socket The client socket to read/write from.
      */
-    private void blockingHandleConnection(ServerSocket serverSocket) throws IOException {
-        try (Socket s = serverSocket.accept(); BufferedReader reader = new BufferedReader(
-                new InputStreamReader(
-                        s.getInputStream())); BufferedWriter writer = new BufferedWriter(
-                new OutputStreamWriter(s.getOutputStream()))) {
+    private void blockingHandleConnection(Socket socket) {
+        Session session = new Session();
+        try (socket; BufferedInputStream input = new BufferedInputStream(
+                socket.getInputStream()); BufferedOutputStream output = new BufferedOutputStream(
+                socket.getOutputStream())) {
 
             System.out.println(
-                    "Connection established: " + serverSocket.getInetAddress());
-            while (!Thread.interrupted()) {
-                String incomingCommand = reader.readLine();
+                    "Connection established: " + socket.getInetAddress());
+            if (BinaryProtocol.readPreface(input)) {
+                BinaryProtocol.serve(this, session, input, output);
+                return;
+            }
+            BufferedReader reader = new BufferedReader(new InputStreamReader(input));
+            BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(output));
+            String incomingCommand;
+            while (!Thread.interrupted() && (incomingCommand = reader.readLine()) != null) {
                 System.out.println("Received message: " + incomingCommand);
-                String result = handleCommand(incomingCommand);
+                String result = handleCommand(session, incomingCommand);
                 writer.write(result);
                 writer.write("\n" + END_OF_TRANSMISSION + "\n");
                 writer.flush();
             }
+        } catch (IOException e) {
+            System.err.println("Connection closed by a non-fatal IO error:");
+            e.printStackTrace();
         }
     }
 }
@@ -0,0 +1,347 @@
+package edu.uob;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+// Listener serving many connections, mostly idle, from one thread with a Selector instead
+// of a thread for each connection. Bytes read are split into commands at '\n' as they
+// arrive, and each complete command is run by a pool of workers. Results are sent back
+// followed by END_OF_TRANSMISSION, the same as DBServer.blockingListenOn(), so DBClient
+// works with either listener. Commands of a connection run one at a time in order, in a
+// Session of the connection. A connection starting with BinaryProtocol.PREFACE sends
+// QUERY frames instead, and gets its results as frames while they are produced.
+final class SelectorListener {
+    static final int WORKER_THREADS = 64;
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    // a worker giving results to a connection waits while this many bytes are not sent.
+    static final int MAX_QUEUED_BYTES = 256 * 1024;
+    // workers started in place of those waiting for slow clients, at most.
+    static final int MAX_WAITING_WORKERS = 1024;
+    private final DBServer server;
+    private final ServerSocketChannel serverChannel;
+    private final Selector selector;
+    // shared by all connections, only used by the selector thread. An idle connection
+    // holds no buffer.
+    private final ByteBuffer readBuffer;
+    // A worker waiting for a slow client blocks through ForkJoinPool.managedBlock(), and
+    // another one is started meanwhile, so such clients never take all the workers.
+    private final ForkJoinPool workers;
+    // connections having results to send, registered for writing by the selector thread.
+    private final ConcurrentLinkedQueue<Connection> writable;
+    private final Charset charset;
+
+    SelectorListener(DBServer server, ServerSocketChannel serverChannel) throws IOException {
+        this.server = server;
+        this.serverChannel = serverChannel;
+        this.selector = Selector.open();
+        this.readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+        this.workers = new ForkJoinPool(WORKER_THREADS, ForkJoinPool.defaultForkJoinWorkerThreadFactory,
+                                        null, true, 0, WORKER_THREADS + MAX_WAITING_WORKERS, 1,
+                                        (pool) -> true, 60, TimeUnit.SECONDS);
+        this.writable = new ConcurrentLinkedQueue<>();
+        this.charset = Charset.defaultCharset(); // as the readers of blockingListenOn().
+    }
+
+    // serve until the current thread is interrupted or the server channel is closed.
+    void run() throws IOException {
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        try {
+            while (!Thread.interrupted() && serverChannel.isOpen()) {
+                selector.select();
+                registerWritable();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    try {
+                        if (!key.isValid()) continue;
+                        if (key.isAcceptable()) accept();
+                        if (key.isValid() && key.isReadable()) read(key);
+                        if (key.isValid() && key.isWritable()) write(key);
+                    } catch (IOException e) {
+                        close(key);
+                    }
+                }
+            }
+        } finally {
+            workers.shutdownNow();
+            for (SelectionKey key : selector.keys()) {
+                if (key.channel() != serverChannel) close(key);
+            }
+            selector.close();
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) return;
+        channel.configureBlocking(false);
+        channel.register(selector, SelectionKey.OP_READ, new Connection(channel));
+    }
+
+    private void read(SelectionKey key) throws IOException {
+        Connection connection = (Connection) key.attachment();
+        readBuffer.clear();
+        if (connection.channel.read(readBuffer) < 0) { // client disconnected.
+            close(key);
+            return;
+        }
+        readBuffer.flip();
+        connection.frame(readBuffer);
+    }
+
+    // send results in order, as much as the socket takes without blocking.
+    private void write(SelectionKey key) throws IOException {
+        Connection connection = (Connection) key.attachment();
+        synchronized (connection) {
+            while (!connection.results.isEmpty()) {
+                ByteBuffer result = connection.results.peek();
+                connection.queuedBytes -= connection.channel.write(result);
+                connection.notifyAll();
+                if (result.hasRemaining()) return; // wait until writable again.
+                connection.results.poll();
+            }
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+        }
+    }
+
+    private void registerWritable() {
+        Connection connection;
+        while ((connection = writable.poll()) != null) {
+            SelectionKey key = connection.channel.keyFor(selector);
+            if (key != null && key.isValid()) {
+                key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+            }
+        }
+    }
+
+    // results of commands still running for a closed connection are dropped.
+    private static void close(SelectionKey key) {
+        if (key.attachment() instanceof Connection connection) connection.close();
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private final class Connection {
+        private final SocketChannel channel;
+        private final Session session;
+        // bytes of a command not ended yet, only used by the selector thread.
+        private ByteArrayOutputStream partial;
+        // protocol chosen by the first byte, see BinaryProtocol.readPreface().
+        private boolean isChosen;
+        private boolean isBinary;
+        private boolean hasPreface;
+        // results of a binary connection, used by the worker running its command.
+        private BinaryProtocol.FrameWriter frameWriter;
+        // guarded by this connection.
+        private final ArrayDeque<String> commands;
+        private final ArrayDeque<ByteBuffer> results;
+        private int queuedBytes;
+        private boolean isRunning;
+        private boolean isClosed;
+        private final Room room;
+
+        private Connection(SocketChannel channel) {
+            this.channel = channel;
+            this.session = new Session();
+            this.commands = new ArrayDeque<>();
+            this.results = new ArrayDeque<>();
+            this.queuedBytes = 0;
+            this.isRunning = false;
+            this.isClosed = false;
+            this.room = new Room();
+        }
+
+        private void frame(ByteBuffer bytes) throws IOException {
+            if (!isChosen && bytes.hasRemaining()) {
+                isChosen = true;
+                isBinary = bytes.get(bytes.position()) == BinaryProtocol.PREFACE[0];
+            }
+            if (isBinary) frameBinary(bytes);
+            else frameText(bytes);
+        }
+
+        // Take QUERY frames which arrived whole, after PREFACE. Bytes of a frame not
+        // complete yet are kept until the rest of it arrives.
+        private void frameBinary(ByteBuffer bytes) throws IOException {
+            ByteBuffer in = ByteBuffer.wrap(take(bytes, bytes.position(), bytes.limit()));
+            if (!hasPreface) {
+                if (in.remaining() < BinaryProtocol.PREFACE.length) {
+                    keep(in);
+                    return;
+                }
+                BinaryProtocol.checkPreface(in.array(), 1);
+                in.position(BinaryProtocol.PREFACE.length);
+                hasPreface = true;
+                frameWriter = new BinaryProtocol.FrameWriter(
+                        new BufferedOutputStream(new QueuedOutput()));
+            }
+            String command;
+            while ((command = BinaryProtocol.takeQuery(in)) != null) {
+                submit(command);
+            }
+            keep(in);
+        }
+
+        private void keep(ByteBuffer rest) {
+            if (!rest.hasRemaining()) return;
+            partial = new ByteArrayOutputStream();
+            partial.write(rest.array(), rest.position(), rest.remaining());
+        }
+
+        // Take commands ended by '\n' from bytes, '\r' before it is dropped as readLine()
+        // does. Bytes after the last '\n' are kept until the rest of the command arrives.
+        private void frameText(ByteBuffer bytes) {
+            int start = bytes.position();
+            for (int i = start; i < bytes.limit(); i++) {
+                if (bytes.get(i) != '\n') continue;
+                byte[] line = take(bytes, start, i);
+                int length = line.length;
+                if (length > 0 && line[length - 1] == '\r') length--;
+                submit(new String(line, 0, length, charset));
+                start = i + 1;
+            }
+            if (start < bytes.limit()) {
+                if (partial == null) partial = new ByteArrayOutputStream();
+                byte[] rest = new byte[bytes.limit() - start];
+                bytes.get(start, rest);
+                partial.writeBytes(rest);
+            }
+        }
+
+        // bytes from start to end, after bytes kept from earlier reads.
+        private byte[] take(ByteBuffer bytes, int start, int end) {
+            byte[] line = new byte[end - start];
+            bytes.get(start, line);
+            if (partial == null) return line;
+            partial.writeBytes(line);
+            line = partial.toByteArray();
+            partial = null;
+            return line;
+        }
+
+        private void submit(String command) {
+            synchronized (this) {
+                commands.add(command);
+                if (isRunning) return;
+                isRunning = true;
+            }
+            workers.execute(this::runNext);
+        }
+
+        // run by a worker, the next command of this connection is given to a worker again.
+        private void runNext() {
+            String command;
+            synchronized (this) {
+                command = commands.poll();
+            }
+            // A command failing unexpectedly closes the connection, instead of leaving it
+            // without an answer and never running its commands again.
+            boolean isAnswered = false;
+            try {
+                if (isBinary) server.handleCommand(session, command, frameWriter);
+                else send(charset.encode(server.handleCommand(session, command) + "\n" +
+                                         DBServer.END_OF_TRANSMISSION + "\n"));
+                isAnswered = true;
+            } catch (IOException | UncheckedIOException e) {
+                // closed, commands left are dropped.
+            } catch (RuntimeException e) {
+                System.err.println("Connection closed by an unexpected error:");
+                e.printStackTrace();
+            } finally {
+                if (!isAnswered) abort();
+            }
+            if (!isAnswered) return;
+            boolean hasNext;
+            synchronized (this) {
+                hasNext = !commands.isEmpty();
+                isRunning = hasNext;
+            }
+            if (hasNext) workers.execute(this::runNext);
+        }
+
+        // Queue bytes to be sent by the selector thread. Waits while MAX_QUEUED_BYTES are
+        // queued already, so a result streamed to a slow client holds bounded memory.
+        private void send(ByteBuffer bytes) throws IOException {
+            try {
+                ForkJoinPool.managedBlock(room);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+            synchronized (this) {
+                if (isClosed) throw new IOException("Connection closed");
+                results.add(bytes);
+                queuedBytes += bytes.remaining();
+            }
+            writable.add(this);
+            selector.wakeup();
+        }
+
+        private synchronized void close() {
+            isClosed = true;
+            notifyAll();
+        }
+
+        // close from a worker, the key of the channel is cancelled by closing it.
+        private void abort() {
+            close();
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+            selector.wakeup();
+        }
+
+        // room in the queue of results, or the connection closed, waited for by send().
+        private final class Room implements ForkJoinPool.ManagedBlocker {
+            @Override
+            public boolean block() throws InterruptedException {
+                synchronized (Connection.this) {
+                    if (!isReleasable()) Connection.this.wait();
+                    return isReleasable();
+                }
+            }
+
+            @Override
+            public boolean isReleasable() {
+                synchronized (Connection.this) {
+                    return queuedBytes < MAX_QUEUED_BYTES || isClosed;
+                }
+            }
+        }
+
+        // bytes written by frameWriter, queued as they are flushed.
+        private final class QueuedOutput extends OutputStream {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] {(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                send(ByteBuffer.wrap(Arrays.copyOfRange(b, off, off + len)));
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package edu.uob;
+
+import edu.uob.exceptions.QueryException;
+import edu.uob.syntax.PreparedStatement;
+import edu.uob.tables.Table;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+// State of one client connection: the database chosen by USE, statements prepared by
+// PREPARE, and tables of the batch running. Tables themselves are shared by all sessions
+// through the server's cache. A session is used by one thread at a time.
+public final class Session {
+    private String databaseName;
+    private final HashMap<String, PreparedStatement> preparedStatements;
+    // tables used by the statements of a batch, by absolute file, saved at the end of the
+    // batch. null out of a batch.
+    private LinkedHashMap<File, Table> batchTables;
+    // versions of tables pinned by the query running, see TableCache.pin(). null unless a
+    // query only reading tables is running.
+    private List<Table> pinnedTables;
+    // files of tables loaded by the command changing them. null unless such a command is
+    // running.
+    private List<File> changedFiles;
+
+    public Session() {
+        this.databaseName = null;
+        this.preparedStatements = new HashMap<>();
+        this.batchTables = null;
+    }
+
+    public String getDatabaseName() throws QueryException {
+        if (databaseName != null) return databaseName;
+        throw new QueryException.NoSpecificDatabaseException();
+    }
+
+    public void setDatabaseName(String name) {
+        databaseName = name;
+    }
+
+    public PreparedStatement getPreparedStatement(String name) throws QueryException {
+        PreparedStatement statement = preparedStatements.get(name);
+        if (statement != null) return statement;
+        throw new QueryException.PreparedStatementNotExistException(name);
+    }
+
+    public void putPreparedStatement(String name, PreparedStatement statement) {
+        preparedStatements.put(name, statement);
+    }
+
+    LinkedHashMap<File, Table> getBatchTables() {
+        return batchTables;
+    }
+
+    void setBatchTables(LinkedHashMap<File, Table> batchTables) {
+        this.batchTables = batchTables;
+    }
+
+    List<Table> getPinnedTables() {
+        return pinnedTables;
+    }
+
+    void setPinnedTables(List<Table> pinnedTables) {
+        this.pinnedTables = pinnedTables;
+    }
+
+    List<File> getChangedFiles() {
+        return changedFiles;
+    }
+
+    void setChangedFiles(List<File> changedFiles) {
+        this.changedFiles = changedFiles;
+    }
+}
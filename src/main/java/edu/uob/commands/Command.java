@@ -1,11 +1,13 @@
 package edu.uob.commands;
 
 import edu.uob.DBServer;
+import edu.uob.conditions.ConditionNode;
 import edu.uob.conditions.ConditionSolver;
 import edu.uob.exceptions.ConditionException;
 import edu.uob.exceptions.QueryException;
 import edu.uob.exceptions.TableException;
 import edu.uob.exceptions.ValueException;
+import edu.uob.tables.IdSet;
 import edu.uob.tables.Table;
 import edu.uob.tables.TableIO;
 
@@ -14,15 +16,41 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 
+// A command is parsed once and may be run many times, also by several threads at once
+// (see PlanCache), so query() never changes its fields: anything computed for one run
+// is kept in local variables.
 public abstract class Command {
     protected List<String> attributeList;
     protected List<String> valueList;
     protected String databaseName;
     protected String tableName;
-    protected List<String> conditionTokens;
+    protected ConditionNode condition;
 
     public abstract String query(DBServer server) throws QueryException, TableException, ConditionException, ValueException;
 
+    // Give the result to sink instead of returning it. A command having rows gives them
+    // while they are read (see CommandSELECT), others give the result of query().
+    public void query(DBServer server, ResultSink sink) throws QueryException, TableException, ConditionException, ValueException {
+        sink.begin(query(server), List.of(), List.of());
+    }
+
+    // Whether query() only reads tables, then it reads versions of them not changed by
+    // commands running meanwhile, see DBServer.
+    public boolean isReadOnly() {
+        return false;
+    }
+
+    // Table files used by query(), locked by DBServer before running it unless isReadOnly().
+    // null if the command uses a whole database.
+    public List<File> getTableFiles(DBServer server) throws QueryException {
+        return tableName != null ? List.of(getTableFile(server)) : null;
+    }
+
+    // the command actually run by query(), which EXECUTE finds in the session.
+    public Command bind(DBServer server) throws QueryException {
+        return this;
+    }
+
     protected File getDatabaseFile(DBServer server, String databaseName) {
         return new File(server.getDatabaseDirectory() + File.separator + databaseName);
     }
@@ -41,23 +69,39 @@ public abstract class Command {
         return getTableFile(server, this.tableName);
     }
 
-    protected void getWildAttributeList(Table table) {
-        // check <WildAttribute>
+    // tables are read through the server's cache instead of parsing the file on every query,
+    // and saved at the end of a batch, see DBServer.
+    protected Table loadTable(DBServer server, File tableFile) throws TableException {
+        return server.loadTable(tableFile);
+    }
+
+    // for a query reading only attributes in projection, the table must not be changed.
+    protected Table loadTable(DBServer server, File tableFile, Set<String> projection) throws TableException {
+        return server.loadTable(tableFile, projection);
+    }
+
+    protected void saveTable(DBServer server, Table table, File tableFile) throws TableException {
+        server.saveTable(table, tableFile);
+    }
+
+    // check <WildAttribute>, * is parsed as an empty list.
+    protected List<String> getWildAttributeList(Table table) {
         if (attributeList.size() == 0) {
-            attributeList.addAll(table.getAttributeList()); // this contain id;
+            return new ArrayList<>(table.getAttributeList()); // this contain id;
         }
+        return new ArrayList<>(attributeList);
     }
 
-    protected Table getResultTable(Table targetTable, Set<Integer> idSet) throws TableException {
+    protected Table getResultTable(Table targetTable, IdSet idSet) throws TableException {
         return getResultTable(targetTable, idSet, this.attributeList);
     }
 
-    protected Table getResultTable(Table targetTable, Set<Integer> idSet, List<String> attributeList) throws TableException {
+    protected Table getResultTable(Table targetTable, IdSet idSet, List<String> attributeList) throws TableException {
         Table resultTable = new Table();
         for (String attribute : attributeList) {
             resultTable.addAttribute(attribute);
         }
-        for (Integer id : idSet) {
+        for (int id : idSet.toIntArray()) {
             ArrayList<String> record = new ArrayList<>();
             for (String attribute : attributeList) {
                 record.add(targetTable.getValue(attribute, id));
@@ -67,10 +111,12 @@ public abstract class Command {
         return resultTable;
     }
 
-    protected Set<Integer> getConditionResult(Table table) throws ConditionException, TableException, ValueException {
-        Set<Integer> idSet;
-        if (conditionTokens != null) {
-            ConditionSolver conditionSolver = new ConditionSolver(table, conditionTokens);
+    // large tables are scanned in parallel, see DBServer.getParallelThreshold().
+    protected IdSet getConditionResult(DBServer server, Table table) throws ConditionException, TableException, ValueException {
+        IdSet idSet;
+        if (condition != null) {
+            ConditionSolver conditionSolver = new ConditionSolver(
+                    table, condition, server.getParallelThreshold());
             idSet = conditionSolver.solve();
         }
         else { // no condition get all ids.
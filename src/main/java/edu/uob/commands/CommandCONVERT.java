@@ -0,0 +1,44 @@
+package edu.uob.commands;
+
+import edu.uob.DBServer;
+import edu.uob.exceptions.QueryException;
+import edu.uob.exceptions.TableException;
+import edu.uob.tables.Table;
+import edu.uob.tables.TableFormat;
+import edu.uob.tables.TableIO;
+
+import java.io.File;
+import java.io.IOException;
+
+public class CommandCONVERT extends Command {
+    private final TableFormat format;
+
+    // tables written from now on are in format, and existing ones are rewritten in it.
+    public CommandCONVERT(String databaseName, String format) {
+        this.databaseName = databaseName;
+        this.format = TableFormat.valueOf(format.toUpperCase());
+    }
+
+    @Override
+    public String query(DBServer server) throws QueryException, TableException {
+        File database = getDatabaseFile(server);
+        if (!database.isDirectory()) {
+            throw new QueryException.DatabaseNotExistException(databaseName);
+        }
+        try {
+            TableFormat.set(database, format);
+        } catch (IOException e) {
+            throw new TableException.WriteTableFailedException(database.toString());
+        }
+        File[] tableFiles = database.listFiles(
+                (directory, name) -> name.endsWith(TableIO.FILE_SUFFIX));
+        if (tableFiles == null) {
+            throw new TableException.ReadTableFailedException(database.toString());
+        }
+        for (File tableFile : tableFiles) {
+            Table table = loadTable(server, tableFile);
+            TableIO.convert(table, tableFile);
+        }
+        return "[OK] " + tableFiles.length + " table(s) converted.";
+    }
+}
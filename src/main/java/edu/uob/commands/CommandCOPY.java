@@ -0,0 +1,49 @@
+package edu.uob.commands;
+
+import edu.uob.DBServer;
+import edu.uob.exceptions.QueryException;
+import edu.uob.exceptions.TableException;
+import edu.uob.tables.BulkLoader;
+import edu.uob.tables.Table;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class CommandCOPY extends Command {
+    private final String sourcePath;
+
+    // sourcePath is relative to the database directory, and cannot be outside of it.
+    public CommandCOPY(String tableName, String sourcePath) {
+        this.tableName = tableName;
+        this.sourcePath = sourcePath;
+    }
+
+    @Override
+    public String query(DBServer server) throws QueryException, TableException {
+        // links are followed before checking, so none leads outside.
+        Path source;
+        try {
+            Path directory = server.getDatabaseDirectory().toPath().toRealPath();
+            source = directory.resolve(sourcePath).toRealPath();
+            if (!source.startsWith(directory) || !Files.isRegularFile(source)) {
+                throw new QueryException.FileNotExistException(sourcePath);
+            }
+        } catch (IOException e) {
+            throw new QueryException.FileNotExistException(sourcePath);
+        }
+        File tableFile = getTableFile(server);
+        Table table = loadTable(server, tableFile);
+        int count;
+        try {
+            count = BulkLoader.load(table, source.toFile());
+        } catch (TableException e) {
+            // attributes may be added already, drop the cached copy.
+            server.invalidateTable(tableFile);
+            throw e;
+        }
+        saveTable(server, table, tableFile);
+        return "[OK] " + count + " record(s) loaded.";
+    }
+}
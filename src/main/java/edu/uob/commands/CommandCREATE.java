@@ -4,20 +4,33 @@ import edu.uob.DBServer;
 import edu.uob.exceptions.ParserException;
 import edu.uob.exceptions.QueryException;
 import edu.uob.exceptions.TableException;
+import edu.uob.tables.IndexType;
 import edu.uob.tables.Table;
-import edu.uob.tables.TableIO;
 
 import java.io.File;
 import java.util.List;
 
 public class CommandCREATE extends Command {
     private List<String> attributeList;
+    private IndexType indexType;
 
+    // for [ORDERED|TRIGRAM] INDEX, name is the table and attributeList holds the attribute
+    // to index.
     public CommandCREATE(String name, String type, List<String> attributeList) throws ParserException {
         if (type.equalsIgnoreCase("table")) {
             this.tableName = name;
             this.attributeList = attributeList;
         }
+        else if (type.toLowerCase().endsWith("index")) {
+            this.tableName = name;
+            this.attributeList = attributeList;
+            this.indexType = switch (type.toLowerCase()) {
+                case "index" -> IndexType.HASH;
+                case "ordered index" -> IndexType.ORDERED;
+                case "trigram index" -> IndexType.TRIGRAM;
+                default -> throw new ParserException.InvalidTokenException(type);
+            };
+        }
         else if (type.equalsIgnoreCase("database")) {
             this.databaseName = name;
         }
@@ -31,7 +44,8 @@ public class CommandCREATE extends Command {
             result = createDatabase(getDatabaseFile(server));
         }
         if (tableName != null) {
-            result = createTable(getTableFile(server));
+            result = indexType != null ? createIndex(server, getTableFile(server)) :
+                     createTable(server, getTableFile(server));
         }
         return result;
     }
@@ -47,16 +61,23 @@ public class CommandCREATE extends Command {
         return result;
     }
 
-    private String createTable(File tableFile) throws TableException {
+    private String createTable(DBServer server, File tableFile) throws TableException {
         String result = "[ERROR] Table " + tableFile + " already existed.";
         if (!tableFile.exists()) {
             Table table = getNewTable();
-            TableIO.save(table, tableFile);
+            saveTable(server, table, tableFile);
             result = "[OK]";
         }
         return result;
     }
 
+    private String createIndex(DBServer server, File tableFile) throws TableException {
+        Table table = loadTable(server, tableFile);
+        table.createIndex(attributeList.get(0), indexType);
+        saveTable(server, table, tableFile);
+        return "[OK]";
+    }
+
     private Table getNewTable() throws TableException {
         Table table = new Table();
         if (attributeList != null) {
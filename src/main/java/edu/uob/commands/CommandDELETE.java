@@ -1,35 +1,34 @@
 package edu.uob.commands;
 
 import edu.uob.DBServer;
+import edu.uob.conditions.ConditionNode;
 import edu.uob.exceptions.ConditionException;
 import edu.uob.exceptions.QueryException;
 import edu.uob.exceptions.TableException;
 import edu.uob.exceptions.ValueException;
+import edu.uob.tables.IdSet;
 import edu.uob.tables.Table;
-import edu.uob.tables.TableIO;
 
 import java.io.File;
-import java.util.List;
-import java.util.Set;
 
 public class CommandDELETE extends Command {
-    public CommandDELETE(String tableName, List<String> conditionTokens) {
+    public CommandDELETE(String tableName, ConditionNode condition) {
         this.tableName = tableName;
-        this.conditionTokens = conditionTokens;
+        this.condition = condition;
     }
 
     @Override
     public String query(DBServer server) throws QueryException, TableException, ConditionException, ValueException {
         File tableFile = getTableFile(server);
-        Table table = TableIO.load(tableFile);
+        Table table = loadTable(server, tableFile);
         // solve condition.
-        Set<Integer> idSet = getConditionResult(table);
+        IdSet idSet = getConditionResult(server, table);
         // delete records
-        for (Integer id : idSet) {
+        for (int id : idSet.toIntArray()) {
             table.deleteRecord(id);
         }
         // save table
-        TableIO.save(table, tableFile);
+        saveTable(server, table, tableFile);
         return "[OK] " + idSet.size() + " record(s) deleted.";
     }
 }
@@ -3,6 +3,7 @@ package edu.uob.commands;
 import edu.uob.DBServer;
 import edu.uob.exceptions.ParserException;
 import edu.uob.exceptions.QueryException;
+import edu.uob.tables.TableIO;
 
 import java.io.File;
 import java.io.IOException;
@@ -23,29 +24,31 @@ public class CommandDROP extends Command {
     public String query(DBServer server) throws QueryException {
         String result = "[ERROR] Failed to get name of table or database.";
         if (databaseName != null) {
-            result = dropDatabase(getDatabaseFile(server));
+            result = dropDatabase(server, getDatabaseFile(server));
             if (server.getDatabaseName().equals(databaseName)) {
                 server.setDatabaseName(null); // reset USE.
             }
         }
         else if (tableName != null) {
-            result = dropTable(getTableFile(server));
+            result = dropTable(server, getTableFile(server));
         }
         return result;
     }
 
-    private String dropTable(File tableFile) {
+    private String dropTable(DBServer server, File tableFile) {
         String result = "[ERROR] Table not exist.";
         if (tableFile.exists()) {
             result = "[ERROR] Failed to delete table.";
-            if (tableFile.delete()) {
+            if (TableIO.delete(tableFile)) {
                 result = "[OK]";
             }
         }
+        // only once the file is gone, a query reading it before is not cached then.
+        server.invalidateTable(tableFile);
         return result;
     }
 
-    private String dropDatabase(File databaseFile) {
+    private String dropDatabase(DBServer server, File databaseFile) {
         File[] files;
         String result = "[ERROR] Database not exist.";
         if ((files = databaseFile.listFiles()) != null) { // is directory.
@@ -61,6 +64,7 @@ public class CommandDROP extends Command {
                 result = "[ERROR] Failed to delete database.";
             }
         }
+        server.invalidateDirectory(databaseFile);
         return result;
     }
 }
@@ -0,0 +1,38 @@
+package edu.uob.commands;
+
+import edu.uob.DBServer;
+import edu.uob.exceptions.ConditionException;
+import edu.uob.exceptions.ParserException;
+import edu.uob.exceptions.QueryException;
+import edu.uob.exceptions.TableException;
+import edu.uob.exceptions.ValueException;
+import edu.uob.syntax.PreparedStatement;
+import edu.uob.tables.Value;
+
+import java.util.List;
+
+public class CommandEXECUTE extends Command {
+    private final String statementName;
+    private final List<Value> parameters;
+
+    public CommandEXECUTE(String statementName, List<Value> parameters) {
+        this.statementName = statementName;
+        this.parameters = parameters;
+    }
+
+    @Override
+    public String query(DBServer server) throws QueryException, TableException, ConditionException, ValueException {
+        return bind(server).query(server);
+    }
+
+    // statement prepared in the session of server, with parameters in place.
+    @Override
+    public Command bind(DBServer server) throws QueryException {
+        PreparedStatement statement = server.getPreparedStatement(statementName);
+        try {
+            return statement.bind(parameters);
+        } catch (ParserException e) {
+            throw new QueryException(e.getMessage());
+        }
+    }
+}
@@ -4,25 +4,26 @@ import edu.uob.DBServer;
 import edu.uob.exceptions.QueryException;
 import edu.uob.exceptions.TableException;
 import edu.uob.tables.Table;
-import edu.uob.tables.TableIO;
 
 import java.io.File;
 import java.util.List;
 
 public class CommandINSERT extends Command {
+    private final List<List<String>> rows;
 
-    public CommandINSERT(String tableName, List<String> valueList) {
+    // rows of VALUES (...), (...), ... inserted all at once.
+    public CommandINSERT(String tableName, List<List<String>> rows) {
         this.tableName = tableName;
-        this.valueList = valueList;
+        this.rows = rows;
     }
 
     @Override
     public String query(DBServer server) throws QueryException, TableException {
         File tableFile = getTableFile(server);
-        Table table = TableIO.load(tableFile);
+        Table table = loadTable(server, tableFile);
         // this method will check whether number of values is correct.
-        table.insertRecord(valueList);
-        TableIO.save(table, tableFile);
+        table.insertRecords(rows);
+        saveTable(server, table, tableFile);
         return "[OK]";
     }
 }
@@ -3,11 +3,13 @@ package edu.uob.commands;
 import edu.uob.DBServer;
 import edu.uob.exceptions.QueryException;
 import edu.uob.exceptions.TableException;
+import edu.uob.tables.Column;
+import edu.uob.tables.HashJoin;
 import edu.uob.tables.Table;
-import edu.uob.tables.TableIO;
 
 import java.io.File;
 import java.util.List;
+import java.util.stream.IntStream;
 
 public class CommandJOIN extends Command {
     private final String anotherTableName;
@@ -21,14 +23,25 @@ public class CommandJOIN extends Command {
         this.rightAttribute = rightAttribute;
     }
 
+    @Override
+    public boolean isReadOnly() {
+        return true;
+    }
+
+    // both tables are only read, so neither is locked (see Command.getTableFiles()).
+    @Override
+    public List<File> getTableFiles(DBServer server) throws QueryException {
+        return List.of(getTableFile(server, tableName), getTableFile(server, anotherTableName));
+    }
+
     @Override
     public String query(DBServer server) throws QueryException, TableException {
         File leftTableFile = getTableFile(server, tableName);
         File rightTableFile = getTableFile(server, anotherTableName);
-        Table leftTable = TableIO.load(leftTableFile);
-        Table rightTable = TableIO.load(rightTableFile);
+        Table leftTable = loadTable(server, leftTableFile);
+        Table rightTable = loadTable(server, rightTableFile);
         // get join table;
-        Table resultTable = joinTable(leftTable, rightTable);
+        Table resultTable = joinTable(leftTable, rightTable, server.getParallelThreshold());
         // remove foreign key.
         if (!leftAttribute.equals("id"))
             resultTable.dropAttribute(leftAttribute);
@@ -46,24 +59,38 @@ public class CommandJOIN extends Command {
         }
     }
 
-    private Table joinTable(Table left, Table right) throws TableException {
+    private Table joinTable(Table left, Table right, int parallelThreshold) throws TableException {
         Table result = new Table();
         // import all attributes.
         importAttributes(result, left);
         importAttributes(result, right);
-        // check whether each foreign key of left is equal with right one.
-        for (Integer leftId : left.getIds()) {
-            String leftForeignKey = left.getValue(leftAttribute, leftId);
-            for (Integer rightId : right.getIds()) {
-                String rightForeignKey = right.getValue(rightAttribute, rightId);
-                // if equal, combine this row
-                if (leftForeignKey.equals(rightForeignKey)) {
-                    List<String> values = left.getValues(leftId);
-                    values.addAll(right.getValues(rightId));
-                    result.insertRecord(values);
-                }
-            }
+        // pairs of matched rows, in order of left id then right id.
+        int[] leftRows = left.getRows();
+        int[] rightRows = right.getRows();
+        long[] pairs = HashJoin.join(getKeys(left, leftAttribute, leftRows),
+                                     getKeys(right, rightAttribute, rightRows),
+                                     parallelThreshold);
+        // combine rows, values are read in parallel for large joins.
+        IntStream range = IntStream.range(0, pairs.length);
+        List<List<String>> records = (pairs.length >= parallelThreshold ? range.parallel() :
+                                      range).mapToObj((index) -> {
+            List<String> values = left.getRowValues(leftRows[HashJoin.getLeft(pairs[index])]);
+            values.addAll(right.getRowValues(rightRows[HashJoin.getRight(pairs[index])]));
+            return values;
+        }).toList();
+        for (List<String> values : records) {
+            result.insertRecord(values);
         }
         return result;
     }
+
+    // foreign key of each row.
+    private static String[] getKeys(Table table, String attribute, int[] rows) throws TableException {
+        Column column = table.getColumn(attribute);
+        String[] keys = new String[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            keys[i] = column.getString(rows[i]);
+        }
+        return keys;
+    }
 }
@@ -0,0 +1,34 @@
+package edu.uob.commands;
+
+import edu.uob.DBServer;
+import edu.uob.syntax.PreparedStatement;
+
+import java.io.File;
+import java.util.List;
+
+public class CommandPREPARE extends Command {
+    private final String statementName;
+    private final PreparedStatement statement;
+
+    public CommandPREPARE(String statementName, PreparedStatement statement) {
+        this.statementName = statementName;
+        this.statement = statement;
+    }
+
+    @Override
+    public boolean isReadOnly() {
+        return true;
+    }
+
+    @Override
+    public List<File> getTableFiles(DBServer server) {
+        return List.of();
+    }
+
+    // a statement of the same name is replaced.
+    @Override
+    public String query(DBServer server) {
+        server.putPreparedStatement(statementName, statement);
+        return "[OK]";
+    }
+}
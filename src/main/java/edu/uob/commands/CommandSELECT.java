@@ -1,45 +1,77 @@
 package edu.uob.commands;
 
 import edu.uob.DBServer;
+import edu.uob.conditions.ConditionNode;
 import edu.uob.exceptions.ConditionException;
 import edu.uob.exceptions.QueryException;
 import edu.uob.exceptions.TableException;
 import edu.uob.exceptions.ValueException;
+import edu.uob.tables.Column;
+import edu.uob.tables.IdSet;
 import edu.uob.tables.Table;
-import edu.uob.tables.TableIO;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
 public class CommandSELECT extends Command {
-    private boolean hasId;
-
-    public CommandSELECT(String tableName, List<String> attributes, List<String> conditionTokens) {
+    public CommandSELECT(String tableName, List<String> attributes, ConditionNode condition) {
         this.tableName = tableName;
         this.attributeList = attributes;
-        this.conditionTokens = conditionTokens;
-
+        this.condition = condition;
+    }
 
+    @Override
+    public boolean isReadOnly() {
+        return true;
     }
 
     @Override
     public String query(DBServer server) throws QueryException, TableException, ConditionException, ValueException {
         File tableFile = getTableFile(server);
-        Table table = TableIO.load(tableFile);
+        Table table = loadTable(server, tableFile, getProjection());
         // check <WildAttribute>
-        getWildAttributeList(table);
+        List<String> attributes = getWildAttributeList(table);
         // set flag and remove id;
-        if (attributeList.contains("id")) {
-            hasId = true;
-            attributeList.remove("id");
-        }
+        boolean hasId = attributes.remove("id");
         // solve condition.
-        Set<Integer> idSet = getConditionResult(table);
+        IdSet idSet = getConditionResult(server, table);
         // get result table
-        Table resultTable = getResultTable(table, idSet);
+        Table resultTable = getResultTable(table, idSet, attributes);
         // get query result
         String result = hasId ? resultTable.toString() : resultTable.toStringNoId();
         return "[OK] " + idSet.size() + " record(s) found.\n" + result;
     }
+
+    // Rows are given to sink straight from the columns of the table, no result table is
+    // built. The table is a version pinned until the command ends, see DBServer. As with
+    // query(), id comes first if it is selected.
+    @Override
+    public void query(DBServer server, ResultSink sink) throws QueryException, TableException, ConditionException, ValueException {
+        File tableFile = getTableFile(server);
+        Table table = loadTable(server, tableFile, getProjection());
+        List<String> attributes = getWildAttributeList(table);
+        if (attributes.remove("id")) attributes.add(0, "id");
+        IdSet idSet = getConditionResult(server, table);
+        List<Column> columns = new ArrayList<>(attributes.size());
+        for (String attribute : attributes) {
+            columns.add(table.getColumn(attribute));
+        }
+        sink.begin("[OK] " + idSet.size() + " record(s) found.", attributes, columns);
+        for (int row : table.getRows(idSet)) {
+            sink.row(row);
+        }
+    }
+
+    // Attributes selected and tested by condition, only they are read from the table
+    // file. Return null for *, which needs all of them.
+    private Set<String> getProjection() {
+        if (attributeList.isEmpty()) return null;
+        Set<String> projection = new HashSet<>(attributeList);
+        if (condition != null) condition.addAttributes(projection);
+        projection.remove("id");
+        return projection;
+    }
 }
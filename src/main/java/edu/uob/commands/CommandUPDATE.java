@@ -1,41 +1,50 @@
 package edu.uob.commands;
 
 import edu.uob.DBServer;
+import edu.uob.conditions.ConditionNode;
 import edu.uob.exceptions.ConditionException;
 import edu.uob.exceptions.QueryException;
 import edu.uob.exceptions.TableException;
 import edu.uob.exceptions.ValueException;
+import edu.uob.tables.IdSet;
 import edu.uob.tables.Table;
-import edu.uob.tables.TableIO;
 
 import java.io.File;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
 public class CommandUPDATE extends Command {
-    public CommandUPDATE(String tableName, List<String> attributeList, List<String> valueList, List<String> conditionTokens) {
+    public CommandUPDATE(String tableName, List<String> attributeList, List<String> valueList, ConditionNode condition) {
         this.tableName = tableName;
         this.attributeList = attributeList;
         this.valueList = valueList;
-        this.conditionTokens = conditionTokens;
+        this.condition = condition;
     }
 
     @Override
     public String query(DBServer server) throws QueryException, TableException, ConditionException, ValueException {
         File tableFile = getTableFile(server);
-        Table table = TableIO.load(tableFile);
-        // check duplicate
+        Table table = loadTable(server, tableFile);
+        // check duplicate, and attributes before any record is changed.
         checkAttributeListDuplicate();
+        for (String attribute : attributeList) {
+            table.checkSettable(attribute);
+        }
         // solve condition.
-        Set<Integer> idSet = getConditionResult(table);
+        IdSet idSet = getConditionResult(server, table);
         // update values
-        for (Integer id : idSet) {
-            for (int i = 0; i < valueList.size(); i++) {
-                table.setValue(attributeList.get(i), valueList.get(i), id);
+        try {
+            for (int id : idSet.toIntArray()) {
+                for (int i = 0; i < valueList.size(); i++) {
+                    table.setValue(attributeList.get(i), valueList.get(i), id);
+                }
             }
+        } catch (TableException e) {
+            // some records may be updated already, drop the cached copy.
+            server.invalidateTable(tableFile);
+            throw e;
         }
-        TableIO.save(table, tableFile);
+        saveTable(server, table, tableFile);
         return "[OK] Attributes of " + idSet.size() + " record(s) have been updated.";
     }
 
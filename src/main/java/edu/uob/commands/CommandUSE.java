@@ -3,12 +3,23 @@ package edu.uob.commands;
 import edu.uob.DBServer;
 
 import java.io.File;
+import java.util.List;
 
 public class CommandUSE extends Command {
     public CommandUSE(String databaseName) {
         this.databaseName = databaseName;
     }
 
+    @Override
+    public boolean isReadOnly() {
+        return true;
+    }
+
+    @Override
+    public List<File> getTableFiles(DBServer server) {
+        return List.of();
+    }
+
     @Override
     public String query(DBServer server) {
         String result = "[OK]";
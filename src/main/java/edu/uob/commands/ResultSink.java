@@ -0,0 +1,21 @@
+package edu.uob.commands;
+
+import edu.uob.tables.Column;
+
+import java.util.List;
+
+// Receives the result of a command while it runs, instead of as one string from query():
+// rows are given one at a time as they are read from the table, see
+// Command.query(DBServer, ResultSink). A sink failing to send the result throws
+// UncheckedIOException, which ends the command.
+public interface ResultSink {
+    // First line of the result, and attributes of the rows to follow with the column each
+    // is read from, both empty if the result has no rows. Columns are only read by row().
+    void begin(String message, List<String> attributes, List<Column> columns);
+
+    // values of row in each column given to begin().
+    void row(int row);
+
+    // called once the result is complete, also for an [ERROR].
+    void end();
+}
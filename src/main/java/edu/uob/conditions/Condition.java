@@ -1,65 +1,43 @@
 package edu.uob.conditions;
 
 import edu.uob.exceptions.ConditionException;
+import edu.uob.exceptions.TableException;
 import edu.uob.exceptions.ValueException;
+import edu.uob.tables.IdSet;
+import edu.uob.tables.RowPredicate;
+import edu.uob.tables.Table;
 import edu.uob.tables.Type;
 import edu.uob.tables.Value;
 
-import java.util.function.BiPredicate;
+import java.util.Collection;
+import java.util.function.IntPredicate;
 
-public class Condition {
+// Leaf of a compiled condition: <AttributeName> <Operator> <Value>.
+public class Condition implements ConditionNode {
+    // fraction of records above which a range is scanned instead of found by index.
+    private static final double MAX_RANGE_SELECTIVITY = 0.25;
     private final String attribute;
     private final Operator operator;
     private final Value referenceValue;
+    private final RowPredicate predicate;
 
     public Condition(String attribute, String operator, String referenceValue) throws ConditionException, ValueException {
+        this(attribute, operator, getReferenceValue(referenceValue));
+    }
+
+    // reference value of a string is given without quote.
+    public Condition(String attribute, String operator, Value referenceValue) throws ConditionException {
         this.attribute = attribute;
         this.operator = matchOperator(operator);
+        this.referenceValue = referenceValue;
+        this.predicate = compile();
+    }
+
+    private static Value getReferenceValue(String referenceValue) throws ValueException {
         Type type = Value.matchValueType(referenceValue);
         if (type == Type.STRING) // remove quote
             referenceValue = referenceValue.substring(1, referenceValue.length() - 1);
-        this.referenceValue = new Value(referenceValue, type);
-    }
-
-    private static boolean isEqual(Value value, Value referenceValue) {
-        return value.compareTo(referenceValue) == 0;
-    }
-
-    private static boolean isNotEqual(Value value, Value referenceValue) {
-        return value.compareTo(referenceValue) != 0;
-    }
-
-    private static boolean isLike(Value value, Value referenceValue) {
-        return value.valueString().contains(referenceValue.valueString());
-    }
-
-    private static boolean isGreater(Value value, Value referenceValue) {
-        if (isValueNull(value)) return false;
-        return value.compareTo(referenceValue) > 0;
-    }
-
-    private static boolean isLess(Value value, Value referenceValue) {
-        if (isValueNull(value)) return false;
-        return value.compareTo(referenceValue) < 0;
-    }
-
-    private static boolean isGreaterOrEqual(Value value, Value referenceValue) {
-        if (isValueNull(value)) return false;
-        return value.compareTo(referenceValue) >= 0;
-    }
-
-    private static boolean isLessOrEqual(Value value, Value referenceValue) {
-        if (isValueNull(value)) return false;
-        return value.compareTo(referenceValue) <= 0;
-    }
-
-    //     In Table class, the value from table will be directly set in type of referenceValue
-    // without any checking. In Value class, the compareTo method set result of Null and
-    // Integer/Float to -1. In this case, once value is Null, the result of == or != will
-    // be correct but result of other operator will not.
-    //     So all these methods will check whether value is null first by using this method.
-    private static boolean isValueNull(Value value) {
-        return value.valueString().equalsIgnoreCase("null");
+        return new Value(referenceValue, type);
     }
 
     private static Operator matchOperator(String operatorString) throws ConditionException {
@@ -97,16 +75,112 @@ public class Condition {
         return referenceValue;
     }
 
-    public BiPredicate<Value, Value> getOperatorMethod() throws ConditionException {
+    @Override
+    public IntPredicate bind(Table table) throws TableException {
+        return table.getRowFilter(attribute, predicate);
+    }
+
+    @Override
+    public void addAttributes(Collection<String> attributes) {
+        attributes.add(attribute);
+    }
+
+    // == and != are answered by hash index of attribute, != as all records but ==. LIKE
+    // is answered by trigram index. Other operators are answered by ordered index, unless
+    // it finds so many records that a scan is cheaper. Conditions on 'id' are always found
+    // by binary search, which is never slower than a scan, see Table.getIdsByRange().
+    @Override
+    public IdSet lookup(Table table) {
+        if (operator == Operator.LIKE) {
+            return table.getIdsByLike(attribute, referenceValue.valueString());
+        }
+        if (operator != Operator.EQUAL && operator != Operator.NOT_EQUAL) {
+            boolean isGreater = operator == Operator.GREATER ||
+                                operator == Operator.GREATER_OR_EQUAL;
+            boolean isInclusive = operator == Operator.GREATER_OR_EQUAL ||
+                                  operator == Operator.LESS_OR_EQUAL;
+            int count = table.countIdsByRange(attribute, referenceValue, isGreater,
+                                              isInclusive);
+            if (count < 0 || !attribute.equals("id") &&
+                             count > table.getRecordCount() * MAX_RANGE_SELECTIVITY) {
+                return null;
+            }
+            return table.getIdsByRange(attribute, referenceValue, isGreater, isInclusive);
+        }
+        IdSet ids = table.getIdsByIndex(attribute, referenceValue);
+        if (ids == null || operator == Operator.EQUAL) return ids;
+        return table.getIds().andNot(ids);
+    }
+
+    // Compile to a predicate testing a row of the column of attribute. Reference value is
+    // parsed here once and each operator of each type gets its own predicate, so testing a
+    // row parses and allocates nothing.
+    //     Rows are compared as Value.compareTo does with the text of the row: text not
+    // matching type of reference value compares as -1. Once value is Null, the result of
+    // == or != will be correct but result of other operator will not, so these operators
+    // check whether value is null first.
+    private RowPredicate compile() throws ConditionException {
         checkOperatorValid();
+        String reference = referenceValue.valueString();
+        return switch (referenceValue.type()) {
+            case INT -> compileInt(reference);
+            case FLOAT -> compileFloat(Float.parseFloat(reference));
+            case BOOL -> {
+                boolean bool = reference.equalsIgnoreCase("TRUE");
+                yield operator == Operator.EQUAL ?
+                      (column, row) -> column.isBool(row, bool) :
+                      (column, row) -> !column.isBool(row, bool);
+            }
+            case NULL -> operator == Operator.EQUAL ?
+                         (column, row) -> column.isNull(row) :
+                         (column, row) -> !column.isNull(row);
+            case STRING -> switch (operator) {
+                case EQUAL -> (column, row) -> column.compareString(row, reference) == 0;
+                case NOT_EQUAL -> (column, row) -> column.compareString(row, reference) != 0;
+                default -> (column, row) -> column.contains(row, reference); // LIKE
+            };
+        };
+    }
+
+    private RowPredicate compileInt(String reference) {
+        int number;
+        try {
+            number = Integer.parseInt(reference);
+        } catch (NumberFormatException e) { // out of range of int, always compare as -1.
+            return switch (operator) {
+                case EQUAL, GREATER, GREATER_OR_EQUAL -> (column, row) -> false;
+                case NOT_EQUAL -> (column, row) -> true;
+                default -> (column, row) -> !column.isNull(row); // LESS, LESS_OR_EQUAL
+            };
+        }
+        return switch (operator) {
+            case EQUAL -> (column, row) -> column.compareInt(row, number) == 0;
+            case NOT_EQUAL -> (column, row) -> column.compareInt(row, number) != 0;
+            case GREATER -> (column, row) -> !column.isNull(row) &&
+                                             column.compareInt(row, number) > 0;
+            case LESS -> (column, row) -> !column.isNull(row) &&
+                                          column.compareInt(row, number) < 0;
+            case GREATER_OR_EQUAL -> (column, row) -> !column.isNull(row) &&
+                                                      column.compareInt(row, number) >= 0;
+            case LESS_OR_EQUAL -> (column, row) -> !column.isNull(row) &&
+                                                   column.compareInt(row, number) <= 0;
+            case LIKE -> throw new IllegalStateException(); // checked by checkOperatorValid.
+        };
+    }
+
+    private RowPredicate compileFloat(float number) {
         return switch (operator) {
-            case EQUAL -> Condition::isEqual;
-            case LESS_OR_EQUAL -> Condition::isLessOrEqual;
-            case GREATER_OR_EQUAL -> Condition::isGreaterOrEqual;
-            case NOT_EQUAL -> Condition::isNotEqual;
-            case LESS -> Condition::isLess;
-            case GREATER -> Condition::isGreater;
-            case LIKE -> Condition::isLike;
+            case EQUAL -> (column, row) -> column.compareFloat(row, number) == 0;
+            case NOT_EQUAL -> (column, row) -> column.compareFloat(row, number) != 0;
+            case GREATER -> (column, row) -> !column.isNull(row) &&
+                                             column.compareFloat(row, number) > 0;
+            case LESS -> (column, row) -> !column.isNull(row) &&
+                                          column.compareFloat(row, number) < 0;
+            case GREATER_OR_EQUAL -> (column, row) -> !column.isNull(row) &&
+                                                      column.compareFloat(row, number) >= 0;
+            case LESS_OR_EQUAL -> (column, row) -> !column.isNull(row) &&
+                                                   column.compareFloat(row, number) <= 0;
+            case LIKE -> throw new IllegalStateException(); // checked by checkOperatorValid.
         };
     }
 
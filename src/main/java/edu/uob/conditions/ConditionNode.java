@@ -0,0 +1,35 @@
+package edu.uob.conditions;
+
+import edu.uob.exceptions.TableException;
+import edu.uob.tables.IdSet;
+import edu.uob.tables.Table;
+
+import java.util.Collection;
+import java.util.function.IntPredicate;
+
+// A condition compiled by the parser, which is evaluated against a table without looking
+// at any token again.
+public interface ConditionNode {
+    // Get filter testing a row of table against the whole condition.
+    IntPredicate bind(Table table) throws TableException;
+
+    // add attributes this condition tests to attributes, so that they are loaded.
+    void addAttributes(Collection<String> attributes);
+
+    // ids of records met this condition found by indexes, without scanning the table.
+    // Return null if indexes cannot answer this condition.
+    default IdSet lookup(Table table) throws TableException {
+        return null;
+    }
+
+    // ids of records met this condition, the table is scanned at most once.
+    default IdSet solve(Table table) throws TableException {
+        return solve(table, Integer.MAX_VALUE);
+    }
+
+    // scan is split across cores once table has at least parallelThreshold records.
+    default IdSet solve(Table table, int parallelThreshold) throws TableException {
+        IdSet ids = lookup(table);
+        return ids != null ? ids : table.getIdsByFilter(bind(table), parallelThreshold);
+    }
+}
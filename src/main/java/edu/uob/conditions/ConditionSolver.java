@@ -3,71 +3,82 @@ package edu.uob.conditions;
 import edu.uob.exceptions.ConditionException;
 import edu.uob.exceptions.TableException;
 import edu.uob.exceptions.ValueException;
+import edu.uob.tables.IdSet;
 import edu.uob.tables.Table;
 
 import java.util.List;
-import java.util.Set;
 
 public class ConditionSolver {
     private final Table table;
     private final List<String> tokens;
     private int currentIndex;
+    private ConditionNode condition;
+    private final int parallelThreshold;
 
+    public ConditionSolver(Table targetTable, ConditionNode condition) {
+        this(targetTable, condition, Integer.MAX_VALUE);
+    }
+
+    // table of at least parallelThreshold records is scanned by multiple threads.
+    public ConditionSolver(Table targetTable, ConditionNode condition, int parallelThreshold) {
+        this.table = targetTable;
+        this.tokens = null;
+        this.condition = condition;
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    // tokens are compiled on solving.
     public ConditionSolver(Table targetTable, List<String> tokens) {
         this.table = targetTable;
         this.tokens = tokens;
         this.currentIndex = 0;
+        this.parallelThreshold = Integer.MAX_VALUE;
+    }
+
+    // Compile condition tokens into a tree, whose leaves have their reference value parsed.
+    // parser has checked all tokens, no checking here.
+    public static ConditionNode compile(List<String> tokens) throws ConditionException, ValueException {
+        return new ConditionSolver(null, tokens).compileNext();
+    }
+
+    // (left) AND|OR (right), logic is checked by parser.
+    public static ConditionNode combine(ConditionNode left, String logic, ConditionNode right) {
+        return new LogicCondition(left, right, getLogicOperator(logic));
     }
 
-    // parser has checked all tokens, no checking in solver.
-    public Set<Integer> solve() throws ConditionException, ValueException, TableException {
+    public IdSet solve() throws ConditionException, ValueException, TableException {
+        if (condition == null) condition = compileNext();
+        return condition.solve(table, parallelThreshold);
+    }
+
+    private ConditionNode compileNext() throws ConditionException, ValueException {
         if (tokens.get(currentIndex).equals("(")) {
             currentIndex++;
             // <condition>
-            Set<Integer> leftResult = solve();
+            ConditionNode left = compileNext();
             // ")"
             currentIndex++;
             // "AND" or "OR"
-            LogicOperator logic = getLogicOperator();
+            LogicCondition.LogicOperator logic = getLogicOperator();
             // "("
             currentIndex++;
             // <condition>
-            Set<Integer> rightResult = solve();
+            ConditionNode right = compileNext();
             // ")"
             currentIndex++;
-            // result
-            return calculateLogic(leftResult, rightResult, logic);
+            return new LogicCondition(left, right, logic);
         }
         // <AttributeName> <Operator> <Value>
-        Condition condition = new Condition(tokens.get(currentIndex++),
-                                            tokens.get(currentIndex++),
-                                            tokens.get(currentIndex++));
-        return findIdsMetCondition(condition);
-
+        return new Condition(tokens.get(currentIndex++), tokens.get(currentIndex++),
+                             tokens.get(currentIndex++));
     }
 
-    private LogicOperator getLogicOperator() {
-        String token = tokens.get(currentIndex++);
-        return token.equalsIgnoreCase("AND") ? LogicOperator.AND : LogicOperator.OR;
+    private LogicCondition.LogicOperator getLogicOperator() {
+        return getLogicOperator(tokens.get(currentIndex++));
     }
 
-    // find ids met each condition expression.
-    private Set<Integer> findIdsMetCondition(Condition condition) throws TableException, ConditionException {
-        return table.getIdsByMethod(condition.getAttribute(),
-                                    condition.getReferenceValue(),
-                                    condition.getOperatorMethod());
-    }
-
-    private Set<Integer> calculateLogic(Set<Integer> left, Set<Integer> right, LogicOperator logic) {
-        switch (logic) {
-            case AND -> left.retainAll(right);
-            case OR -> left.addAll(right);
-        }
-        return left;
-    }
-
-    private enum LogicOperator {
-        AND, OR
+    private static LogicCondition.LogicOperator getLogicOperator(String token) {
+        return token.equalsIgnoreCase("AND") ? LogicCondition.LogicOperator.AND :
+               LogicCondition.LogicOperator.OR;
     }
 }
-
@@ -0,0 +1,61 @@
+package edu.uob.conditions;
+
+import edu.uob.exceptions.TableException;
+import edu.uob.tables.IdSet;
+import edu.uob.tables.Table;
+
+import java.util.Collection;
+import java.util.function.IntPredicate;
+
+// (<Condition>) AND|OR (<Condition>)
+class LogicCondition implements ConditionNode {
+    private final ConditionNode left;
+    private final ConditionNode right;
+    private final LogicOperator logic;
+
+    LogicCondition(ConditionNode left, ConditionNode right, LogicOperator logic) {
+        this.left = left;
+        this.right = right;
+        this.logic = logic;
+    }
+
+    // Right side is only tested on rows still undecided by left side: AND stops at the
+    // first false and OR at the first true.
+    @Override
+    public IntPredicate bind(Table table) throws TableException {
+        IntPredicate leftFilter = left.bind(table);
+        IntPredicate rightFilter = right.bind(table);
+        return switch (logic) {
+            case AND -> (row) -> leftFilter.test(row) && rightFilter.test(row);
+            case OR -> (row) -> leftFilter.test(row) || rightFilter.test(row);
+        };
+    }
+
+    @Override
+    public void addAttributes(Collection<String> attributes) {
+        left.addAttributes(attributes);
+        right.addAttributes(attributes);
+    }
+
+    // Both sides found by indexes are combined a word at a time, see IdSet. For AND, one side found by
+    // index is enough: the other side is only tested on records found.
+    @Override
+    public IdSet lookup(Table table) throws TableException {
+        IdSet leftIds = left.lookup(table);
+        IdSet rightIds = right.lookup(table);
+        if (leftIds != null && rightIds != null) {
+            return switch (logic) {
+                case AND -> leftIds.and(rightIds);
+                case OR -> leftIds.or(rightIds);
+            };
+        }
+        if (logic == LogicOperator.OR) return null;
+        if (leftIds != null) return table.getIdsByFilter(leftIds, right.bind(table));
+        if (rightIds != null) return table.getIdsByFilter(rightIds, left.bind(table));
+        return null;
+    }
+
+    enum LogicOperator {
+        AND, OR
+    }
+}
@@ -19,4 +19,31 @@ public class QueryException extends Exception {
             super("Database not specified.");
         }
     }
+
+    public static class DatabaseNotExistException extends QueryException {
+        @Serial
+        private static final long serialVersionUID = -6021837465129384751L;
+
+        public DatabaseNotExistException(String name) {
+            super("Database " + name + " not exist.");
+        }
+    }
+
+    public static class FileNotExistException extends QueryException {
+        @Serial
+        private static final long serialVersionUID = 4710958216374285093L;
+
+        public FileNotExistException(String path) {
+            super("File " + path + " not exist in database directory.");
+        }
+    }
+
+    public static class PreparedStatementNotExistException extends QueryException {
+        @Serial
+        private static final long serialVersionUID = -3527301928415903386L;
+
+        public PreparedStatementNotExistException(String name) {
+            super("Prepared statement " + name + " not exist.");
+        }
+    }
 }
@@ -1,28 +1,69 @@
 package edu.uob.syntax;
 
 import edu.uob.commands.*;
+import edu.uob.conditions.Condition;
+import edu.uob.conditions.ConditionNode;
+import edu.uob.conditions.ConditionSolver;
+import edu.uob.exceptions.ConditionException;
 import edu.uob.exceptions.ParserException;
 import edu.uob.exceptions.ValueException;
 import edu.uob.tables.Type;
 import edu.uob.tables.Value;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 
+// Tokens are classified by the Tokenizer (see Token), the parser only compares their kind
+// and text with the keywords expected, without any pattern.
+//     Commands taking values are parsed into a Template first, which getCommand() binds
+// at once. A statement of PREPARE accepts "?" in place of any <Value>, and its template
+// is kept for EXECUTE to bind the values given, see PreparedStatement.
 public class Parser {
-    private static final String RX_PLAIN_TEXT = "^([0-9a-zA-Z]+)$";
-    private static final String RX_TABLE_OR_DATABASE = "(?i)(^(table|database)$)";
-    private static final String RX_COMMA_OR_RIGHT_BRACKET = "^[,)]$";
-    private static final String RX_ALTERATION_TYPE = "(?i)(^(drop|add)$)";
-    private static final String RX_LOGIC_OPT = "(?i)(^(and|or)$)";
-    private static final String RX_COMPARE_OPT = "(?i)(==|!=|>=|<=|>|<|LIKE)";
-
-    List<String> tokens;
+    private static final String[] TABLE_OR_DATABASE = {"table", "database"};
+    private static final String[] CREATE_TYPES = {"table", "database", "index", "ordered",
+                                                  "trigram"};
+    private static final String[] COMMA_OR_RIGHT_BRACKET = {",", ")"};
+    private static final String[] ALTERATION_TYPES = {"drop", "add"};
+    private static final String[] TABLE_FORMATS = {"binary", "text"};
+    private static final String[] LOGIC_OPERATORS = {"and", "or"};
+    private static final String[] COMPARE_OPERATORS = {"==", "!=", ">=", "<=", ">", "<",
+                                                       "LIKE"};
+
+    List<Token> tokens;
     int currentIndex;
+    // "?" is accepted, each one being a slot of the template for the next parameter.
+    private boolean isPreparing;
+    private int parameterCount;
+    // tokens read as keywords, which match in any case.
+    private final BitSet keywordTokens = new BitSet();
+
+    public Parser(String command) throws ParserException {
+        setTokens(Tokenizer.lex(command));
+    }
 
+    // tokens split by Tokenizer.getTokens().
     public Parser(List<String> tokens) throws ParserException {
+        ArrayList<Token> typedTokens = new ArrayList<>(tokens.size());
+        for (String token : tokens) {
+            typedTokens.add(Token.of(token));
+        }
+        setTokens(typedTokens);
+    }
+
+    private Parser() {
+    }
+
+    // tokens lexed by Tokenizer.lex(), which are left unchanged.
+    static Parser of(List<Token> tokens) throws ParserException {
+        Parser parser = new Parser();
+        parser.setTokens(new ArrayList<>(tokens));
+        return parser;
+    }
+
+    private void setTokens(List<Token> tokens) throws ParserException {
         // last token should be ;
-        if (!tokens.get(tokens.size() - 1).equals(";"))
+        if (tokens.isEmpty() || !tokens.get(tokens.size() - 1).is(";"))
             throw new ParserException.MissingTokenException(";");
         // remove ;
         tokens.remove(tokens.size() - 1);
@@ -31,37 +72,55 @@ public class Parser {
     }
 
     public Command getCommand() throws ParserException {
-        String firstToken = tokens.get(currentIndex++).toUpperCase();
+        return getTemplate().bind(List.of());
+    }
+
+    // only commands taking values have slots, any other command is built at once.
+    private Template<Command> getTemplate() throws ParserException {
+        checkHasNextToken("<Command>");
+        keywordTokens.set(currentIndex);
+        String firstToken = tokens.get(currentIndex++).text().toUpperCase();
         return switch (firstToken) {
-            case "USE" -> getCommandUSE();
-            case "CREATE" -> getCommandCREATE();
-            case "DROP" -> getCommandDROP();
-            case "ALTER" -> getCommandALTER();
+            case "USE" -> Template.of(getCommandUSE());
+            case "CREATE" -> Template.of(getCommandCREATE());
+            case "DROP" -> Template.of(getCommandDROP());
+            case "ALTER" -> Template.of(getCommandALTER());
             case "INSERT" -> getCommandINSERT();
             case "SELECT" -> getCommandSELECT();
             case "UPDATE" -> getCommandUPDATE();
             case "DELETE" -> getCommandDELETE();
-            case "JOIN" -> getCommandJOIN();
+            case "JOIN" -> Template.of(getCommandJOIN());
+            case "COPY" -> getCommandCOPY();
+            case "CONVERT" -> Template.of(getCommandCONVERT());
+            case "PREPARE" -> Template.of(getCommandPREPARE());
+            case "EXECUTE" -> Template.of(getCommandEXECUTE());
             default -> throw new ParserException.InvalidTokenException(firstToken);
         };
     }
 
     private Command getCommandUSE() throws ParserException {
         checkHasNextToken("<DatabaseName>");
-        String databaseName = getNextTokenAfterMatching(RX_PLAIN_TEXT, "<DatabaseName>");
+        String databaseName = getNextName("<DatabaseName>");
         checkRemainTokens();
         return new CommandUSE(databaseName);
     }
 
     private Command getCommandCREATE() throws ParserException {
-        // TABLE or DATABASE
-        checkHasNextToken("\"TABLE\" or \"DATABASE\"");
-        String createType = getNextTokenAfterMatching(RX_TABLE_OR_DATABASE,
-                                                      "\"TABLE\" or \"DATABASE\"");
+        // TABLE or DATABASE or [ORDERED|TRIGRAM] INDEX
+        checkHasNextToken("\"TABLE\", \"DATABASE\" or \"INDEX\"");
+        String createType = getNextKeyword(
+                "\"TABLE\", \"DATABASE\" or \"INDEX\"", CREATE_TYPES);
+        if (createType.equalsIgnoreCase("ordered") || createType.equalsIgnoreCase("trigram")) {
+            checkHasNextToken("\"INDEX\"");
+            getNextStaticToken("INDEX");
+            return getCommandCREATEINDEX(createType + " index");
+        }
+        if (createType.equalsIgnoreCase("index")) {
+            return getCommandCREATEINDEX("index");
+        }
         // <TableName> or <DatabaseName>
         checkHasNextToken("<TableName> or <DatabaseName>");
-        String name = getNextTokenAfterMatching(RX_PLAIN_TEXT,
-                                                "<TableName> or <DatabaseName>");
+        String name = getNextName("<TableName> or <DatabaseName>");
         // (optional)
         List<String> attributes = null;
         if (!isReachEnd() && createType.equalsIgnoreCase("table")) {
@@ -74,15 +133,34 @@ public class Parser {
         return new CommandCREATE(name, createType, attributes);
     }
 
+    // CREATE [ORDERED|TRIGRAM] INDEX ON <TableName> ( <AttributeName> )
+    private Command getCommandCREATEINDEX(String indexType) throws ParserException {
+        // "ON"
+        checkHasNextToken("\"ON\"");
+        getNextStaticToken("ON");
+        // <TableName>
+        checkHasNextToken("<TableName>");
+        String tableName = getNextName("<TableName>");
+        // '('
+        checkHasNextToken("'('");
+        getNextStaticToken("(");
+        // <AttributeName>
+        checkHasNextToken("<AttributeName>");
+        String attributeName = getNextName("<AttributeName>");
+        // ')'
+        checkHasNextToken("')'");
+        getNextStaticToken(")");
+        checkRemainTokens();
+        return new CommandCREATE(tableName, indexType, List.of(attributeName));
+    }
+
     private Command getCommandDROP() throws ParserException {
         // TABLE or DATABASE
         checkHasNextToken("\"TABLE\" or \"DATABASE\"");
-        String dropType = getNextTokenAfterMatching(RX_TABLE_OR_DATABASE,
-                                                    "\"TABLE\" or \"DATABASE\"");
+        String dropType = getNextKeyword("\"TABLE\" or \"DATABASE\"", TABLE_OR_DATABASE);
         // <TableName> or <DatabaseName>
         checkHasNextToken("<TableName> or <DatabaseName>");
-        String name = getNextTokenAfterMatching(RX_PLAIN_TEXT,
-                                                "<TableName> or <DatabaseName>");
+        String name = getNextName("<TableName> or <DatabaseName>");
         checkRemainTokens();
         return new CommandDROP(name, dropType);
     }
@@ -93,28 +171,25 @@ public class Parser {
         getNextStaticToken("TABLE");
         // <TableName>
         checkHasNextToken("<TableName> or <DatabaseName>");
-        String tableName = getNextTokenAfterMatching(RX_PLAIN_TEXT,
-                                                     "<TableName> or <DatabaseName>");
+        String tableName = getNextName("<TableName> or <DatabaseName>");
         // <AlterationType>
         checkHasNextToken("<AlterationType>");
-        String alterType = getNextTokenAfterMatching(RX_ALTERATION_TYPE,
-                                                     "\"ADD\" or \"DROP\"");
+        String alterType = getNextKeyword("\"ADD\" or \"DROP\"", ALTERATION_TYPES);
         // <AttributeName>
         checkHasNextToken("<AttributeName>");
-        String AttributeName = getNextTokenAfterMatching(RX_PLAIN_TEXT,
-                                                         "<AttributeName>");
+        String AttributeName = getNextName("<AttributeName>");
         // no remaining
         checkRemainTokens();
         return new CommandALTER(tableName, alterType, AttributeName);
     }
 
-    private Command getCommandINSERT() throws ParserException {
+    private Template<Command> getCommandINSERT() throws ParserException {
         // "INTO"
         checkHasNextToken("\"INTO\"");
         getNextStaticToken("INTO");
         // <TableName>
         checkHasNextToken("<TableName>");
-        String tableName = getNextTokenAfterMatching(RX_PLAIN_TEXT, "<TableName>");
+        String tableName = getNextName("<TableName>");
         // "VALUES"
         checkHasNextToken("\"VALUES\"");
         getNextStaticToken("VALUES");
@@ -122,18 +197,30 @@ public class Parser {
         checkHasNextToken("'('");
         getNextStaticToken("(");
         // <ValueList>
-        List<String> valueList = parseValueList();
-
-        checkRemainTokens();
-        return new CommandINSERT(tableName, valueList);
+        ArrayList<List<Template<String>>> rows = new ArrayList<>();
+        rows.add(parseValueList());
+        // (optional) more rows, ',' '(' <ValueList>
+        while (!isReachEnd()) {
+            getNextStaticToken(",");
+            checkHasNextToken("'('");
+            getNextStaticToken("(");
+            rows.add(parseValueList());
+        }
+        return parameters -> {
+            ArrayList<List<String>> values = new ArrayList<>(rows.size());
+            for (List<Template<String>> row : rows) {
+                values.add(bindAll(row, parameters));
+            }
+            return new CommandINSERT(tableName, values);
+        };
     }
 
-    private Command getCommandSELECT() throws ParserException {
+    private Template<Command> getCommandSELECT() throws ParserException {
         List<String> attributeList;
-        List<String> conditionTokenList = null;
+        Template<ConditionNode> condition = Template.of(null);
         // <wildAttributeList> "FROM"
-        String wild = tokens.get(currentIndex);
-        if (wild.equals("*")) {
+        checkHasNextToken("<WildAttribList>");
+        if (tokens.get(currentIndex).is("*")) {
             attributeList = new ArrayList<>();
             currentIndex++;
             // "FROM"
@@ -145,63 +232,57 @@ public class Parser {
         }
         // <TableName>
         checkHasNextToken("<TableName>");
-        String tableName = getNextTokenAfterMatching(RX_PLAIN_TEXT, "<TableName>");
+        String tableName = getNextName("<TableName>");
         // optional condition
         if (!isReachEnd()) {
             // "WHERE"
             checkHasNextToken("\"WHERE\"");
             getNextStaticToken("WHERE");
             // <Condition>
-            int startIndex = currentIndex;
-            parseConditions();
+            condition = parseConditions();
             // no trailing
             checkRemainTokens();
-            conditionTokenList = new ArrayList<>(
-                    tokens.subList(startIndex, tokens.size()));
         }
-        return new CommandSELECT(tableName, attributeList, conditionTokenList);
+        Template<ConditionNode> where = condition;
+        return parameters -> new CommandSELECT(tableName, attributeList,
+                                               where.bind(parameters));
     }
 
-    private Command getCommandDELETE() throws ParserException {
+    private Template<Command> getCommandDELETE() throws ParserException {
         // "FROM"
         checkHasNextToken("\"FROM\"");
         getNextStaticToken("FROM");
         // <TableName>
         checkHasNextToken("<TableName>");
-        String tableName = getNextTokenAfterMatching(RX_PLAIN_TEXT, "<TableName>");
+        String tableName = getNextName("<TableName>");
         // "WHERE"
         checkHasNextToken("\"WHERE\"");
         getNextStaticToken("WHERE");
         // <Condition>
-        int startIndex = currentIndex;
-        parseConditions();
+        Template<ConditionNode> condition = parseConditions();
         // no trailing
         checkRemainTokens();
-        ArrayList<String> conditionTokenList = new ArrayList<>(
-                tokens.subList(startIndex, tokens.size()));
-        return new CommandDELETE(tableName, conditionTokenList);
+        return parameters -> new CommandDELETE(tableName, condition.bind(parameters));
     }
 
-    private Command getCommandUPDATE() throws ParserException {
+    private Template<Command> getCommandUPDATE() throws ParserException {
         // <TableName>
         checkHasNextToken("<TableName>");
-        String tableName = getNextTokenAfterMatching(RX_PLAIN_TEXT, "<TableName>");
+        String tableName = getNextName("<TableName>");
         // "SET"
         checkHasNextToken("\"SET\"");
         getNextStaticToken("SET");
         // <NameValueList> "WHERE"
         ArrayList<String> attributeList = new ArrayList<>();
-        ArrayList<String> valueList = new ArrayList<>();
+        ArrayList<Template<String>> valueList = new ArrayList<>();
         parseNameValueList(attributeList, valueList);
         // <Condition>
-        int startIndex = currentIndex;
-        parseConditions();
+        Template<ConditionNode> condition = parseConditions();
         // no trailing
         checkRemainTokens();
-        ArrayList<String> conditionTokenList = new ArrayList<>(
-                tokens.subList(startIndex, tokens.size()));
-
-        return new CommandUPDATE(tableName, attributeList, valueList, conditionTokenList);
+        return parameters -> new CommandUPDATE(tableName, attributeList,
+                                               bindAll(valueList, parameters),
+                                               condition.bind(parameters));
     }
 
 
@@ -209,31 +290,112 @@ public class Parser {
     private Command getCommandJOIN() throws ParserException {
         // <TableName>
         checkHasNextToken("<TableName>");
-        String leftTable = getNextTokenAfterMatching(RX_PLAIN_TEXT, "<TableName>");
+        String leftTable = getNextName("<TableName>");
         // "AND"
         checkHasNextToken("\"AND\"");
         getNextStaticToken("AND");
         // <TableName>
         checkHasNextToken("<TableName>");
-        String rightTable = getNextTokenAfterMatching(RX_PLAIN_TEXT, "<TableName>");
+        String rightTable = getNextName("<TableName>");
         // "ON"
         checkHasNextToken("\"ON\"");
         getNextStaticToken("ON");
         // "<AttributeName>"
         checkHasNextToken("<AttributeName>");
-        String leftAttribute = getNextTokenAfterMatching(RX_PLAIN_TEXT,
-                                                         "<AttributeName>");
+        String leftAttribute = getNextName("<AttributeName>");
         // "AND"
         checkHasNextToken("\"AND\"");
         getNextStaticToken("AND");
         // "<AttributeName>"
         checkHasNextToken("<AttributeName>");
-        String rightAttribute = getNextTokenAfterMatching(RX_PLAIN_TEXT,
-                                                          "<AttributeName>");
+        String rightAttribute = getNextName("<AttributeName>");
 
         return new CommandJOIN(leftTable, rightTable, leftAttribute, rightAttribute);
     }
 
+    // COPY <TableName> FROM <FilePath>
+    private Template<Command> getCommandCOPY() throws ParserException {
+        // <TableName>
+        checkHasNextToken("<TableName>");
+        String tableName = getNextName("<TableName>");
+        // "FROM"
+        checkHasNextToken("\"FROM\"");
+        getNextStaticToken("FROM");
+        // <FilePath>, a string
+        checkHasNextToken("<FilePath>");
+        String text = tokens.get(currentIndex).text();
+        Template<Value> path = getNextSlot();
+        checkRemainTokens();
+        return parameters -> {
+            Value value = path.bind(parameters);
+            if (value.type() != Type.STRING)
+                throw new ParserException.UnexpectedTokenException(text, "<FilePath>");
+            return new CommandCOPY(tableName, value.valueString());
+        };
+    }
+
+    // CONVERT DATABASE <DatabaseName> TO <Format>
+    private Command getCommandCONVERT() throws ParserException {
+        // "DATABASE"
+        checkHasNextToken("\"DATABASE\"");
+        getNextStaticToken("DATABASE");
+        // <DatabaseName>
+        checkHasNextToken("<DatabaseName>");
+        String databaseName = getNextName("<DatabaseName>");
+        // "TO"
+        checkHasNextToken("\"TO\"");
+        getNextStaticToken("TO");
+        // <Format>
+        checkHasNextToken("\"BINARY\" or \"TEXT\"");
+        String format = getNextKeyword("\"BINARY\" or \"TEXT\"", TABLE_FORMATS);
+        checkRemainTokens();
+        return new CommandCONVERT(databaseName, format);
+    }
+
+    // PREPARE <StatementName> AS <CommandType>
+    private Command getCommandPREPARE() throws ParserException {
+        // <StatementName>
+        checkHasNextToken("<StatementName>");
+        String name = getNextName("<StatementName>");
+        // "AS"
+        checkHasNextToken("\"AS\"");
+        getNextStaticToken("AS");
+        // <CommandType>, which cannot be PREPARE or EXECUTE again.
+        checkHasNextToken("<Command>");
+        Token first = tokens.get(currentIndex);
+        if (first.is("PREPARE") || first.is("EXECUTE"))
+            throw new ParserException.InvalidTokenException(first.text());
+        Parser parser = new Parser();
+        parser.tokens = tokens.subList(currentIndex, tokens.size());
+        parser.isPreparing = true;
+        Template<Command> template = parser.getTemplate();
+        currentIndex = tokens.size();
+        return new CommandPREPARE(name, new PreparedStatement(template,
+                                                              parser.parameterCount));
+    }
+
+    // EXECUTE <StatementName> or EXECUTE <StatementName> "(" <ValueList> ")"
+    private Command getCommandEXECUTE() throws ParserException {
+        // <StatementName>
+        checkHasNextToken("<StatementName>");
+        String name = getNextName("<StatementName>");
+        // (optional) '(' <ValueList> ')'
+        ArrayList<Value> values = new ArrayList<>();
+        if (!isReachEnd()) {
+            getNextStaticToken("(");
+            while (true) { // keep processing 2 tokens each time.
+                // <Value>
+                checkHasNextToken("<Value>");
+                values.add(getNextValue());
+                // ',' means continue, ')' means end.
+                checkHasNextToken("\",\"");
+                if (getNextKeyword("\",\"", COMMA_OR_RIGHT_BRACKET).equals(")")) break;
+            }
+        }
+        checkRemainTokens();
+        return new CommandEXECUTE(name, values);
+    }
+
     // Current token should be the first token of <attributeList> when calling this method.
     // endSignal is the token after attributeList. In CREATE command, it's "\\)", in Select it's
     // "FROM"
@@ -242,30 +404,30 @@ public class Parser {
         while (true) { // keep processing 2 tokens each time.
             // <AttributeName>
             checkHasNextToken("<AttributeName>");
-            result.add(getNextTokenAfterMatching(RX_PLAIN_TEXT, "<AttributeName>"));
+            result.add(getNextName("<AttributeName>"));
             // ',' means continue, ')' means end.
             checkHasNextToken("\",\"");
-            String next = tokens.get(currentIndex++);
-            if (next.equalsIgnoreCase(endToken)) {
+            Token next = tokens.get(currentIndex++);
+            if (next.is(endToken)) {
                 return result; // reach end.
             }
-            else if (!next.equals(",")) { // Invalid.
-                throw new ParserException.UnexpectedTokenException(next,
+            else if (!next.is(",")) { // Invalid.
+                throw new ParserException.UnexpectedTokenException(next.text(),
                                                                    "\",\" or \")\"");
             }
         }
     }
 
     // Current token should be the first token of <ValueList> when calling this method.
-    private List<String> parseValueList() throws ParserException {
-        ArrayList<String> result = new ArrayList<>();
+    private List<Template<String>> parseValueList() throws ParserException {
+        ArrayList<Template<String>> result = new ArrayList<>();
         while (true) { // keep processing 2 tokens each time.
             // <Value>
             checkHasNextToken("<Value>");
             result.add(getNextTokenAsValue());
             // ',' means continue, ')' means end.
             checkHasNextToken("\",\"");
-            String next = getNextTokenAfterMatching(RX_COMMA_OR_RIGHT_BRACKET, "\",\"");
+            String next = getNextKeyword("\",\"", COMMA_OR_RIGHT_BRACKET);
             if (next.equals(")")) {
                 return result;
             }
@@ -274,11 +436,12 @@ public class Parser {
 
     // Current token should be the first token of <ValueList> when calling this method.
     // end token should be "WHERE"
-    private void parseNameValueList(List<String> nameList, List<String> valueList) throws ParserException {
+    private void parseNameValueList(List<String> nameList, List<Template<String>> valueList)
+            throws ParserException {
         while (true) {
             // <AttributeName>
             checkHasNextToken("<AttributeName>");
-            nameList.add(getNextTokenAfterMatching(RX_PLAIN_TEXT, "<AttributeName>"));
+            nameList.add(getNextName("<AttributeName>"));
             // "="
             checkHasNextToken("\"=\"");
             getNextStaticToken("=");
@@ -287,12 +450,12 @@ public class Parser {
             valueList.add(getNextTokenAsValue());
             // ',' means continue, ')' means end.
             checkHasNextToken("\",\"");
-            String next = tokens.get(currentIndex++);
-            if (next.equalsIgnoreCase("where")) {
+            Token next = tokens.get(currentIndex++);
+            if (next.is("where")) {
                 return; // reach end.
             }
-            else if (!next.equals(",")) {// Invalid.
-                throw new ParserException.UnexpectedTokenException(next,
+            else if (!next.is(",")) {// Invalid.
+                throw new ParserException.UnexpectedTokenException(next.text(),
                                                                    "\",\" or \")\"");
             }
         }
@@ -309,78 +472,145 @@ public class Parser {
         }
     }
 
-    // if token match regex return it, otherwise throw exception
-    private String getNextTokenAfterMatching(String regex, String expectedToken) throws ParserException {
-        String actualToken = tokens.get(currentIndex++);
-        if (!actualToken.matches(regex))
-            throw new ParserException.UnexpectedTokenException(actualToken,
+    // if token is a name (plain text) return it, otherwise throw exception
+    private String getNextName(String expectedToken) throws ParserException {
+        Token actualToken = tokens.get(currentIndex++);
+        if (actualToken.kind() != Token.Kind.WORD)
+            throw new ParserException.UnexpectedTokenException(actualToken.text(),
                                                                expectedToken);
-        return actualToken;
+        return actualToken.text();
+    }
+
+    // if token is one of keywords (ignoring case) return it, otherwise throw exception
+    private String getNextKeyword(String expectedToken, String... keywords) throws ParserException {
+        keywordTokens.set(currentIndex);
+        Token actualToken = tokens.get(currentIndex++);
+        for (String keyword : keywords) {
+            if (actualToken.is(keyword)) return actualToken.text();
+        }
+        throw new ParserException.UnexpectedTokenException(actualToken.text(), expectedToken);
     }
 
     private void getNextStaticToken(String expectedToken) throws ParserException {
-        String actualToken = tokens.get(currentIndex++);
-        if (!actualToken.equalsIgnoreCase(expectedToken))
-            throw new ParserException.UnexpectedTokenException(actualToken,
+        keywordTokens.set(currentIndex);
+        Token actualToken = tokens.get(currentIndex++);
+        if (!actualToken.is(expectedToken))
+            throw new ParserException.UnexpectedTokenException(actualToken.text(),
                                                                '\"' + expectedToken +
                                                                '\"');
     }
 
+    // a value, or when preparing "?" as the slot of the next parameter.
+    private Template<Value> getNextSlot() throws ParserException {
+        if (isPreparing && tokens.get(currentIndex).kind() == Token.Kind.PARAMETER) {
+            currentIndex++;
+            int index = parameterCount++;
+            return parameters -> parameters.get(index);
+        }
+        return Template.of(getNextValue());
+    }
+
+    // check value type and get value, string without quote.
+    private Value getNextValue() throws ParserException {
+        Token token = tokens.get(currentIndex++);
+        Type type = token.valueType();
+        if (type == null) {
+            throw new ParserException(
+                    new ValueException.ValueTypeMatchingFailedException(token.text())
+                            .getMessage());
+        }
+        String value = token.text();
+        if (type == Type.STRING) value = value.substring(1, value.length() - 1);
+        return new Value(value, type);
+    }
 
     // check value type and get value string.
-    private String getNextTokenAsValue() throws ParserException {
-        String value = tokens.get(currentIndex++);
-        try {
-            Type type = Value.matchValueType(value);
-            return switch (type) {
-                case STRING -> value.substring(1, value.length() - 1); // remove quote;
-                case BOOL, NULL -> value.toUpperCase();
-                case INT, FLOAT -> value;
-            };
-        } catch (ValueException e) {
-            throw new ParserException(e.getMessage());
+    private Template<String> getNextTokenAsValue() throws ParserException {
+        Template<Value> slot = getNextSlot();
+        if (slot instanceof Template.Fixed<Value> fixed)
+            return Template.of(getValueString(fixed.value()));
+        return parameters -> getValueString(slot.bind(parameters));
+    }
+
+    private static String getValueString(Value value) {
+        return switch (value.type()) {
+            case BOOL, NULL -> value.valueString().toUpperCase();
+            case STRING, INT, FLOAT -> value.valueString();
+        };
+    }
+
+    private static List<String> bindAll(List<Template<String>> values, List<Value> parameters)
+            throws ParserException {
+        ArrayList<String> result = new ArrayList<>(values.size());
+        for (Template<String> value : values) {
+            result.add(value.bind(parameters));
         }
+        return result;
+    }
+
+    // indexes of tokens read as keywords by getCommand(), any other token is read as it is.
+    BitSet getKeywordTokens() {
+        return keywordTokens;
     }
 
     // check whether there is any remaining token after parse.
     private void checkRemainTokens() throws ParserException {
         if (!isReachEnd())
-            throw new ParserException.RemainTokensException(tokens.get(currentIndex));
+            throw new ParserException.RemainTokensException(tokens.get(currentIndex).text());
     }
 
-    // check condition syntax.(sublist between WHERE and ;)
-    private void parseConditions() throws ParserException {
+    // Check condition syntax (sublist between WHERE and ;) and compile it into a tree, so
+    // that a query does not go through the tokens again. Only the conditions on a "?" and
+    // the logic above them are left to bind().
+    private Template<ConditionNode> parseConditions() throws ParserException {
         // "(" or <AttributeName>
         checkHasNextToken("\"(\" or <AttributeName>");
-        if (tokens.get(currentIndex).equals("(")) {
+        if (tokens.get(currentIndex).is("(")) {
             currentIndex++;
             // <Condition>
-            parseConditions();
+            Template<ConditionNode> left = parseConditions();
             // ")"
             checkHasNextToken("\")\"");
             getNextStaticToken(")");
             // "AND" or "OR"
             checkHasNextToken("\"AND\" or \"OR\"");
-            getNextTokenAfterMatching(RX_LOGIC_OPT, "\"AND\" or \"OR\"");
+            String logic = getNextKeyword("\"AND\" or \"OR\"", LOGIC_OPERATORS);
             // "("
             checkHasNextToken("\"(\"");
             getNextStaticToken("(");
             // <Condition>
-            parseConditions();
+            Template<ConditionNode> right = parseConditions();
             // ")"
             checkHasNextToken("\")\"");
             getNextStaticToken(")");
+            if (left instanceof Template.Fixed<ConditionNode> fixedLeft &&
+                right instanceof Template.Fixed<ConditionNode> fixedRight) {
+                return Template.of(ConditionSolver.combine(fixedLeft.value(), logic,
+                                                           fixedRight.value()));
+            }
+            return parameters -> ConditionSolver.combine(left.bind(parameters), logic,
+                                                         right.bind(parameters));
         }
-        else {
-            // <AttributeName>
-            checkHasNextToken("<AttributeName>");
-            getNextTokenAfterMatching(RX_PLAIN_TEXT, "<AttributeName>");
-            // <Operator>
-            checkHasNextToken("<Operator>");
-            getNextTokenAfterMatching(RX_COMPARE_OPT, "<Operator>");
-            // <Value>
-            checkHasNextToken("<Value>");
-            getNextTokenAsValue(); // this method will check value type.
+        // <AttributeName>
+        checkHasNextToken("<AttributeName>");
+        String attribute = getNextName("<AttributeName>");
+        // <Operator>
+        checkHasNextToken("<Operator>");
+        String operator = getNextKeyword("<Operator>", COMPARE_OPERATORS);
+        // <Value>
+        checkHasNextToken("<Value>");
+        Template<Value> value = getNextSlot(); // this method will check value type.
+        if (value instanceof Template.Fixed<Value> fixed)
+            return Template.of(getCondition(attribute, operator, fixed.value()));
+        return parameters -> getCondition(attribute, operator, value.bind(parameters));
+    }
+
+    private static ConditionNode getCondition(String attribute, String operator, Value value)
+            throws ParserException {
+        try {
+            return new Condition(attribute, operator, value);
+        } catch (ConditionException e) {
+            throw new ParserException(e.getMessage());
         }
     }
 }
@@ -0,0 +1,109 @@
+package edu.uob.syntax;
+
+import edu.uob.commands.Command;
+import edu.uob.commands.CommandEXECUTE;
+import edu.uob.exceptions.ParserException;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// Commands parsed recently, so that a query sent again is run without going through the
+// Parser. Commands are not changed by running them (see Command), so one command is shared
+// by every run and every thread. A query of the same text is found by its text alone,
+// without the Tokenizer. Otherwise commands are kept by their tokens with words in upper
+// case, and a command found is only used if its tokens not read as keywords (names and
+// values, which are case sensitive) are the same text. Commands failing to parse are not
+// kept, nor EXECUTE, which binds its statement on every run.
+public class PlanCache {
+    public static final int DEFAULT_CAPACITY = 256;
+    private final LinkedHashMap<String, Command> texts;
+    private final LinkedHashMap<List<String>, Plan> plans;
+
+    public PlanCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public PlanCache(int capacity) {
+        // access order, the eldest is the least recently used.
+        this.texts = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Command> eldest) {
+                return size() > capacity;
+            }
+        };
+        this.plans = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<List<String>, Plan> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    public Command getCommand(String command) throws ParserException {
+        // the Tokenizer ignores whitespace around the command as well.
+        String text = command.trim();
+        Command known = getByText(text);
+        if (known != null) return known;
+        List<Token> tokens = Tokenizer.lex(command);
+        List<String> key = new ArrayList<>(tokens.size());
+        for (Token token : tokens) {
+            key.add(token.kind() == Token.Kind.WORD ? token.text().toUpperCase(Locale.ROOT) :
+                    token.text());
+        }
+        Plan cached = get(key);
+        if (cached != null && cached.matches(tokens)) {
+            putText(text, cached.command());
+            return cached.command();
+        }
+        // parsed out of lock, the same text parsed twice at once gives equal commands.
+        Parser parser = Parser.of(tokens);
+        Command parsed = parser.getCommand();
+        if (!(parsed instanceof CommandEXECUTE)) {
+            put(key, new Plan(parsed, tokens, parser.getKeywordTokens()));
+            putText(text, parsed);
+        }
+        return parsed;
+    }
+
+    // commands kept by their tokens, each text kept leads to one of them.
+    public synchronized int size() {
+        return plans.size();
+    }
+
+    public synchronized void clear() {
+        texts.clear();
+        plans.clear();
+    }
+
+    private synchronized Command getByText(String text) {
+        return texts.get(text);
+    }
+
+    private synchronized void putText(String text, Command command) {
+        texts.put(text, command);
+    }
+
+    private synchronized Plan get(List<String> key) {
+        return plans.get(key);
+    }
+
+    private synchronized void put(List<String> key, Plan plan) {
+        plans.put(key, plan);
+    }
+
+    // tokens has the same key as the tokens command was parsed from.
+    private record Plan(Command command, List<Token> tokens, BitSet keywordTokens) {
+        boolean matches(List<Token> other) {
+            for (int i = 0; i < tokens.size(); i++) {
+                if (!keywordTokens.get(i) && !tokens.get(i).text().equals(other.get(i).text())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package edu.uob.syntax;
+
+import edu.uob.commands.Command;
+import edu.uob.exceptions.ParserException;
+import edu.uob.tables.Value;
+
+import java.util.List;
+
+// A statement of PREPARE, parsed once into a command with a slot for each "?" (see
+// Template), so that EXECUTE only builds the parts taking a value, with neither the
+// Tokenizer nor the Parser. The template is never changed, so a statement can be executed
+// by several threads at once.
+public final class PreparedStatement {
+    private final Template<Command> template;
+    private final int parameterCount;
+
+    PreparedStatement(Template<Command> template, int parameterCount) {
+        this.template = template;
+        this.parameterCount = parameterCount;
+    }
+
+    public Command bind(List<Value> parameters) throws ParserException {
+        if (parameters.size() != parameterCount) {
+            throw new ParserException(parameterCount + " parameter(s) expected but " +
+                                      parameters.size() + " parameter(s) given.");
+        }
+        return template.bind(parameters);
+    }
+}
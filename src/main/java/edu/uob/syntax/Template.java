@@ -0,0 +1,24 @@
+package edu.uob.syntax;
+
+import edu.uob.exceptions.ParserException;
+import edu.uob.tables.Value;
+
+import java.util.List;
+
+// A part of a command parsed with each "?" left as a slot, which bind() fills in with the
+// parameter of the same index. Parts without any "?" are built once by the Parser and only
+// returned by bind() (see Fixed).
+interface Template<T> {
+    T bind(List<Value> parameters) throws ParserException;
+
+    static <T> Template<T> of(T value) {
+        return new Fixed<>(value);
+    }
+
+    record Fixed<T>(T value) implements Template<T> {
+        @Override
+        public T bind(List<Value> parameters) {
+            return value;
+        }
+    }
+}
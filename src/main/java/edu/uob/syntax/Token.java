@@ -0,0 +1,51 @@
+package edu.uob.syntax;
+
+import edu.uob.tables.Type;
+import edu.uob.tables.Value;
+
+// A token classified once by the Tokenizer, so that the Parser never matches its text
+// against a pattern. A WORD is a keyword or a name, which only the parser can tell, e.g.
+// "table" is also a valid table name. valueType is the type of a token usable as a
+// <Value>, or null: words TRUE, FALSE, NULL and digits are values as well. A PARAMETER
+// "?" stands for a value given later, see PreparedStatement.
+public record Token(String text, Kind kind, Type valueType) {
+    public static Token of(String text) {
+        return new Token(text, getKind(text), Value.getValueType(text));
+    }
+
+    // keyword or symbol, ignoring case.
+    public boolean is(String expected) {
+        return text.equalsIgnoreCase(expected);
+    }
+
+    private static Kind getKind(String text) {
+        switch (text) {
+            case "==", "!=", ">=", "<=", ">", "<", "=" -> {
+                return Kind.OPERATOR;
+            }
+            case "(", ")", ",", ";", "*" -> {
+                return Kind.SYMBOL;
+            }
+            case "?" -> {
+                return Kind.PARAMETER;
+            }
+        }
+        if (text.isEmpty()) return Kind.OTHER;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (!(c >= '0' && c <= '9' || c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z')) {
+                return Value.getValueType(text) != null ? Kind.VALUE : Kind.OTHER;
+            }
+        }
+        return Kind.WORD;
+    }
+
+    public enum Kind {
+        WORD, // [0-9a-zA-Z]+
+        VALUE, // other values: strings, signed and decimal numbers.
+        OPERATOR,
+        SYMBOL,
+        PARAMETER,
+        OTHER
+    }
+}
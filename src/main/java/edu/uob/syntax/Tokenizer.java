@@ -1,49 +1,95 @@
 package edu.uob.syntax;
 
-import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 public class Tokenizer {
-    private static final String REGEX_OPERATORS = "(?i)(==|!=|>=|<=|>|<)";
-    private static final String REGEX_BRACKETS = "[()]";
-    private static final String REGEX_LITERAL_STRING = "('[^'\"]*')";
-    private static final String REGEX_SYMBOLS = "[;,*]";
-    private static final String REGEX_ASSIGNMENT = "(?<=[^=<>!])=(?=[^=])";
-    private static final String LITERAL_PLACEHOLDER = "'LITERAL'";
+    private static final String OPERATOR_CHARS = "=!<>";
+    private static final String SYMBOL_CHARS = "();,*";
+    private static final String WHITESPACE_CHARS = " \t\n\u000B\f\r";
 
-    // This method split a command string into many tokens. Splitting rule:
-    // 1. replace token surround by \' with the placeholder, so there will not be any string
-    // with whitespace split into tokens.
-    // 2. add whitespace to left and right of all operators, symbols(\' not included), brackets.
-    // 3. split string into tokens by whitespace.
-    // 4. replace all placeholder with original literal string.
+    // This method split a command string into many tokens, see lex().
     public static List<String> getTokens(String command) {
-        // match all literal string and store them.
-        Pattern p = Pattern.compile(REGEX_LITERAL_STRING);
-        Matcher m = p.matcher(command);
-        ArrayDeque<String> literalStrings = new ArrayDeque<>();
-        while (m.find()) {
-            literalStrings.add(m.group(0));
+        List<Token> tokens = lex(command);
+        ArrayList<String> result = new ArrayList<>(tokens.size());
+        for (Token token : tokens) {
+            result.add(token.text());
         }
-        // generalize the command string (replace literal string and add whitespace).
-        command = command.replaceAll(REGEX_LITERAL_STRING,
-                                     " " + LITERAL_PLACEHOLDER + " ")
-                         .replaceAll(REGEX_OPERATORS, " $0 ")
-                         .replaceAll(REGEX_BRACKETS, " $0 ")
-                         .replaceAll(REGEX_SYMBOLS, " $0 ")
-                         .replaceAll(REGEX_ASSIGNMENT, " $0 ");
-        command = command.trim();
-        // get tokens.
-        ArrayList<String> tokens = new ArrayList<>(Arrays.asList(command.split("\\s+")));
-        for (int i = 0; i < tokens.size(); i++) {
-            if (tokens.get(i).equals(LITERAL_PLACEHOLDER)) {
-                tokens.set(i, literalStrings.removeFirst());
+        return result;
+    }
+
+    // Split a command string into statements, each ending with its ;. A ; in a quoted
+    // string (see lex()) does not end a statement. Text after the last ; is a statement as
+    // well, unless it is blank.
+    public static List<String> splitStatements(String command) {
+        ArrayList<String> statements = new ArrayList<>();
+        int start = 0;
+        int i = 0;
+        while (i < command.length()) {
+            char c = command.charAt(i);
+            if (c == '\'') {
+                int close = i + 1;
+                while (close < command.length() && command.charAt(close) != '\'' &&
+                       command.charAt(close) != '"') {
+                    close++;
+                }
+                if (close < command.length() && command.charAt(close) == '\'') i = close;
+            }
+            else if (c == ';') {
+                statements.add(command.substring(start, i + 1));
+                start = i + 1;
+            }
+            i++;
+        }
+        if (!command.substring(start).trim().isEmpty()) {
+            statements.add(command.substring(start));
+        }
+        return statements;
+    }
+
+    // Split a command string into tokens in a single pass. Splitting rule:
+    // 1. a string quoted by \' without \' or " inside is a token, whitespace included.
+    // 2. operators (==, !=, >=, <=, >, <, =), brackets and symbols (; , *) are tokens.
+    // 3. anything else is split by whitespace.
+    public static List<Token> lex(String command) {
+        ArrayList<Token> tokens = new ArrayList<>();
+        // control characters at either end are trimmed, as String.trim() does.
+        int i = 0;
+        int length = command.length();
+        while (i < length && command.charAt(i) <= ' ') i++;
+        while (length > i && command.charAt(length - 1) <= ' ') length--;
+        int wordStart = -1; // start of the word being read, or -1.
+        while (i < length) {
+            char c = command.charAt(i);
+            int end = i; // end of a token starting at i, if not part of a word.
+            if (c == '\'') {
+                int close = i + 1;
+                while (close < length && command.charAt(close) != '\'' &&
+                       command.charAt(close) != '"') {
+                    close++;
+                }
+                if (close < length && command.charAt(close) == '\'') end = close + 1;
+            }
+            else if (OPERATOR_CHARS.indexOf(c) >= 0) {
+                boolean isPair = i + 1 < length && command.charAt(i + 1) == '=';
+                // a single = at either end of command stays in its word, as it always has.
+                boolean isAtEnd = i == 0 || i == command.length() - 1;
+                if (isPair) end = i + 2;
+                else if (c != '!' && !(c == '=' && isAtEnd)) end = i + 1;
+            }
+            else if (SYMBOL_CHARS.indexOf(c) >= 0) end = i + 1;
+            if (end > i || WHITESPACE_CHARS.indexOf(c) >= 0) {
+                if (wordStart >= 0) tokens.add(Token.of(command.substring(wordStart, i)));
+                wordStart = -1;
+                if (end > i) tokens.add(Token.of(command.substring(i, end)));
+                i = Math.max(end, i + 1);
+            }
+            else {
+                if (wordStart < 0) wordStart = i;
+                i++;
             }
         }
+        if (wordStart >= 0) tokens.add(Token.of(command.substring(wordStart, length)));
         return tokens;
     }
 }
@@ -0,0 +1,201 @@
+package edu.uob.tables;
+
+import edu.uob.exceptions.TableException;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.IntPredicate;
+import java.util.zip.CRC32;
+
+// Table file storing records column by column in binary, read through FileChannel.map so
+// that values are copied into columns as they are, without parsing any text. Layout:
+//     int  MAGIC, int VERSION, int length of header, long checksum of body
+//     header: int lastId, int record count, int attribute count, then for ids and each
+//             attribute: [name, byte kind (see Column.getKind())], long offset, long length
+//     body:   ids, then a section of each column at its offset, see Column.write()
+// Offsets are from the start of body, so each section is mapped and read on its own.
+// The checksum is checked against the whole body on every read, also of a projection.
+// Numbers are big-endian, a string is an int length followed by its UTF-8 bytes.
+final class BinaryTableFile {
+    static final int MAGIC = 0x54514254; // "TQBT", not the start of any text table file.
+    static final int VERSION = 1;
+    private static final int PREFIX_SIZE = 3 * Integer.BYTES + Long.BYTES;
+    // body is mapped in parts of this size to check its checksum.
+    private static final long CHECK_SIZE = 64L * 1024 * 1024;
+
+    private BinaryTableFile() {
+    }
+
+    // whether file starts with MAGIC, read from the start of channel.
+    static boolean isBinary(FileChannel channel) throws IOException {
+        ByteBuffer magic = ByteBuffer.allocate(Integer.BYTES);
+        while (magic.hasRemaining()) {
+            if (channel.read(magic, magic.position()) < 0) return false;
+        }
+        return magic.getInt(0) == MAGIC;
+    }
+
+    // write table to path, return checksum of body.
+    static long write(Table table, Path path) throws IOException, TableException {
+        int[] rows = table.getRows();
+        List<String> attributes = table.getAttributeList();
+        attributes.remove("id");
+        // sections of body, ids first.
+        List<byte[]> sections = new ArrayList<>();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        Column ids = table.getColumn("id");
+        for (int row : rows) {
+            out.writeInt(((IntColumn) ids).getInt(row));
+        }
+        out.flush();
+        sections.add(bytes.toByteArray());
+        for (String attribute : attributes) {
+            bytes.reset();
+            table.getColumn(attribute).write(out, rows);
+            out.flush();
+            sections.add(bytes.toByteArray());
+        }
+        // header, with offsets of sections.
+        bytes.reset();
+        out.writeInt(table.getLastId());
+        out.writeInt(rows.length);
+        out.writeInt(attributes.size());
+        long offset = 0;
+        CRC32 checksum = new CRC32();
+        for (int i = 0; i < sections.size(); i++) {
+            if (i > 0) {
+                writeString(out, attributes.get(i - 1));
+                out.writeByte(Column.getKind(table.getColumn(attributes.get(i - 1))));
+            }
+            out.writeLong(offset);
+            out.writeLong(sections.get(i).length);
+            offset += sections.get(i).length;
+            checksum.update(sections.get(i));
+        }
+        out.flush();
+        byte[] header = bytes.toByteArray();
+        try (OutputStream file = new BufferedOutputStream(Files.newOutputStream(path));
+             DataOutputStream fileOut = new DataOutputStream(file)) {
+            fileOut.writeInt(MAGIC);
+            fileOut.writeInt(VERSION);
+            fileOut.writeInt(header.length);
+            fileOut.writeLong(checksum.getValue());
+            fileOut.write(header);
+            for (byte[] section : sections) {
+                fileOut.write(section);
+            }
+        }
+        return checksum.getValue();
+    }
+
+    // Read a table from channel of file, whose MAGIC is checked already. Only attributes in
+    // projection are read if it is not null, sections of others are never mapped.
+    static Loaded read(FileChannel channel, File file, Set<String> projection) throws IOException, TableException {
+        ByteBuffer prefix = channel.map(FileChannel.MapMode.READ_ONLY, 0, PREFIX_SIZE);
+        prefix.getInt(); // MAGIC
+        if (prefix.getInt() != VERSION) {
+            throw new TableException.ReadTableFailedException(file.toString());
+        }
+        int headerLength = prefix.getInt();
+        long checksum = prefix.getLong();
+        long bodyStart = PREFIX_SIZE + headerLength;
+        if (getChecksum(channel, bodyStart) != checksum) {
+            throw new TableException.ReadTableFailedException(file.toString());
+        }
+        ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, PREFIX_SIZE,
+                                        headerLength);
+        int lastId = header.getInt();
+        int count = header.getInt();
+        int attributeCount = header.getInt();
+        int capacity = Math.max(count, 16);
+        // ids.
+        int[] ids = new int[capacity];
+        ByteBuffer section = mapSection(channel, header, bodyStart);
+        section.asIntBuffer().get(ids, 0, count);
+        // columns.
+        List<String> attributes = new ArrayList<>(attributeCount);
+        List<Column> columns = new ArrayList<>(attributeCount);
+        for (int i = 0; i < attributeCount; i++) {
+            attributes.add(readString(header));
+            byte kind = header.get();
+            if (projection != null && !projection.contains(attributes.get(i))) {
+                header.position(header.position() + 2 * Long.BYTES); // offset and length.
+                columns.add(null);
+                continue;
+            }
+            Column column = Column.create(kind, capacity);
+            if (column == null) throw new TableException.ReadTableFailedException(file.toString());
+            column.read(mapSection(channel, header, bodyStart), count);
+            columns.add(column);
+        }
+        return new Loaded(new Table(attributes, columns, ids, count, lastId), checksum);
+    }
+
+    // checksum of the bytes of channel from start to its end.
+    private static long getChecksum(FileChannel channel, long start) throws IOException {
+        CRC32 checksum = new CRC32();
+        long size = channel.size();
+        for (long position = start; position < size; position += CHECK_SIZE) {
+            checksum.update(channel.map(FileChannel.MapMode.READ_ONLY, position,
+                                        Math.min(CHECK_SIZE, size - position)));
+        }
+        return checksum.getValue();
+    }
+
+    private static ByteBuffer mapSection(FileChannel channel, ByteBuffer header, long bodyStart) throws IOException {
+        long offset = header.getLong();
+        long length = header.getLong();
+        return channel.map(FileChannel.MapMode.READ_ONLY, bodyStart + offset, length);
+    }
+
+    // === helpers of Column.write() and Column.read() ===
+
+    // bits of positions in rows for which isSet is true.
+    static void writeBits(DataOutputStream out, int[] rows, IntPredicate isSet) throws IOException {
+        BitSet bits = new BitSet(rows.length);
+        for (int i = 0; i < rows.length; i++) {
+            if (isSet.test(rows[i])) bits.set(i);
+        }
+        long[] words = bits.toLongArray();
+        out.writeInt(words.length);
+        for (long word : words) {
+            out.writeLong(word);
+        }
+    }
+
+    static BitSet readBits(ByteBuffer in) {
+        long[] words = new long[in.getInt()];
+        in.asLongBuffer().get(words);
+        in.position(in.position() + words.length * Long.BYTES);
+        return BitSet.valueOf(words);
+    }
+
+    static void writeString(DataOutputStream out, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    record Loaded(Table table, long checksum) {
+    }
+}
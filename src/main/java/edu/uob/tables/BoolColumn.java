@@ -0,0 +1,79 @@
+package edu.uob.tables;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+
+public final class BoolColumn extends PrimitiveColumn {
+    private final BitSet values;
+
+    BoolColumn(int capacity) {
+        super(capacity);
+        this.values = new BitSet();
+    }
+
+    public boolean getBool(int row) {
+        return values.get(row);
+    }
+
+    @Override
+    public Type getType() {
+        return Type.BOOL;
+    }
+
+    @Override
+    public int compareInt(int row, int reference) {
+        return -1;
+    }
+
+    @Override
+    public int compareFloat(int row, float reference) {
+        return -1;
+    }
+
+    @Override
+    public boolean isBool(int row, boolean reference) {
+        return !nulls.get(row) && values.get(row) == reference;
+    }
+
+    @Override
+    boolean fits(String text) {
+        return isNullText(text) || isBoolText(text);
+    }
+
+    @Override
+    protected String getCanonicalString(int row) {
+        return values.get(row) ? "TRUE" : "FALSE";
+    }
+
+    @Override
+    protected void setValue(int row, String text) {
+        values.set(row, text.equalsIgnoreCase("TRUE"));
+    }
+
+    @Override
+    protected void copyValue(int from, int to) {
+        values.set(to, values.get(from));
+    }
+
+    @Override
+    protected void resizeValues(int capacity) {
+        // BitSet grows by itself.
+    }
+
+    @Override
+    protected int getValueSize() {
+        return 0;
+    }
+
+    @Override
+    protected void writeValues(DataOutputStream out, int[] rows) throws IOException {
+        BinaryTableFile.writeBits(out, rows, values::get);
+    }
+
+    @Override
+    protected void readValues(ByteBuffer in, int count) {
+        values.or(BinaryTableFile.readBits(in));
+    }
+}
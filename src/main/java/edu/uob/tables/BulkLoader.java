@@ -0,0 +1,181 @@
+package edu.uob.tables;
+
+import edu.uob.exceptions.TableException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+// Loads the records of a file in the format of a table file (see Table.toString()) into
+// a table, so that an existing table file can be imported. The file is memory-mapped and
+// split at line ends into chunks, which are parsed and checked in parallel; nothing is
+// added to the table unless every line is valid. Ids in the file are checked but not
+// kept, records get new ids in the order of the file.
+//     A table without attribute and record takes the attributes of the file, otherwise
+// attributes of the file should be the same as the table's.
+//     A table file with changes still in its logs is loaded by TableIO with them instead,
+// its records are then taken from that table.
+public final class BulkLoader {
+    private static final int CHUNK_SIZE = 8 * 1024 * 1024;
+    private static final int SEARCH_SIZE = 4096;
+
+    private BulkLoader() {
+    }
+
+    // return number of records loaded.
+    public static int load(Table table, File file) throws TableException {
+        if (TableLog.getLogFile(file).exists() || TableLog.getCheckpointLogFile(file).exists()) {
+            return load(table, TableIO.load(file));
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            // first line is the attributes.
+            long headerEnd = findLineEnd(channel, 0);
+            String header = decode(channel, 0, headerEnd).trim();
+            List<String> attributes = checkAttributes(table, header);
+            // other lines are records, split into chunks at line ends.
+            List<long[]> ranges = new ArrayList<>();
+            for (long start = headerEnd; start < size; ) {
+                long end = Math.min(size, findLineEnd(channel, Math.min(size, start + CHUNK_SIZE)));
+                ranges.add(new long[]{start, end});
+                start = end;
+            }
+            List<Chunk> chunks = ranges.parallelStream().map(
+                    (range) -> parseChunk(channel, range[0], range[1], attributes.size()))
+                                       .toList();
+            // all lines are checked before the table is changed.
+            int[] fitMasks = new int[attributes.size()];
+            Arrays.fill(fitMasks, Column.ALL_TYPES);
+            List<List<String[]>> records = new ArrayList<>(chunks.size());
+            for (Chunk chunk : chunks) {
+                if (chunk.error() != null) {
+                    throw new TableException.InvalidImportStringException(chunk.error());
+                }
+                for (int i = 0; i < fitMasks.length; i++) {
+                    fitMasks[i] &= chunk.fitMasks()[i];
+                }
+                records.add(chunk.records());
+            }
+            return append(table, attributes, records, fitMasks);
+        } catch (IOException | UncheckedIOException e) {
+            throw new TableException.ReadTableFailedException(file.toString());
+        }
+    }
+
+    // records of source, as if read from its table file.
+    private static int load(Table table, Table source) throws TableException {
+        List<String> attributes = checkAttributes(
+                table, String.join(Table.TABLE_SEPARATOR, source.getAttributeList()));
+        List<Column> columns = new ArrayList<>(attributes.size());
+        for (String attribute : attributes) {
+            columns.add(source.getColumn(attribute));
+        }
+        int[] rows = source.getRows();
+        List<String[]> records = new ArrayList<>(rows.length);
+        int[] fitMasks = new int[attributes.size()];
+        Arrays.fill(fitMasks, Column.ALL_TYPES);
+        for (int row : rows) {
+            String[] values = new String[columns.size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = columns.get(i).getString(row);
+                fitMasks[i] &= Column.getFitMask(values[i]);
+            }
+            records.add(values);
+        }
+        return append(table, attributes, List.of(records), fitMasks);
+    }
+
+    // append checked records, adding attributes to a table without any.
+    private static int append(Table table, List<String> attributes, List<List<String[]>> records,
+                              int[] fitMasks) throws TableException {
+        if (table.getAttributeList().size() == 1) {
+            for (String attribute : attributes) {
+                table.addAttribute(attribute);
+            }
+        }
+        table.appendRecords(records, fitMasks);
+        return records.stream().mapToInt(List::size).sum();
+    }
+
+    // attributes of the header line without id, checked against table.
+    private static List<String> checkAttributes(Table table, String header) throws TableException {
+        List<String> attributes = new ArrayList<>(Arrays.asList(header.split(Table.TABLE_SEPARATOR)));
+        if (!attributes.remove(0).equals("id")) {
+            throw new TableException.InvalidImportStringException("Missing primary key.");
+        }
+        List<String> tableAttributes = table.getAttributeList();
+        if (tableAttributes.size() == 1 && table.getRecordCount() == 0) {
+            if (new HashSet<>(attributes).size() != attributes.size() || attributes.contains("id")) {
+                throw new TableException.InvalidImportStringException(
+                        "Attributes are duplicated: " + header + ".");
+            }
+        }
+        else if (!tableAttributes.subList(1, tableAttributes.size()).equals(attributes)) {
+            throw new TableException.InvalidImportStringException(
+                    "Attributes do not match the table: " + header + ".");
+        }
+        return attributes;
+    }
+
+    // parse and check the lines between start and end, same as Table.readRecordsFormLine().
+    private static Chunk parseChunk(FileChannel channel, long start, long end, int attributeCount) {
+        String content;
+        try {
+            content = decode(channel, start, end);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        ArrayList<String[]> records = new ArrayList<>();
+        int[] fitMasks = new int[attributeCount];
+        Arrays.fill(fitMasks, Column.ALL_TYPES);
+        int lineStart = 0;
+        while (lineStart < content.length()) {
+            int lineEnd = content.indexOf('\n', lineStart);
+            if (lineEnd < 0) lineEnd = content.length();
+            String line = content.substring(lineStart, lineEnd).trim();
+            lineStart = lineEnd + 1;
+            if (line.isEmpty()) continue;
+            String[] fields = line.split(Table.TABLE_SEPARATOR);
+            if (fields.length != attributeCount + 1 || Column.parseInt(fields[0]) == null) {
+                return new Chunk(null, null, "Invalid record: " + line + ".");
+            }
+            String[] values = Arrays.copyOfRange(fields, 1, fields.length);
+            for (int i = 0; i < attributeCount; i++) {
+                fitMasks[i] &= Column.getFitMask(values[i]);
+            }
+            records.add(values);
+        }
+        return new Chunk(records, fitMasks, null);
+    }
+
+    private static String decode(FileChannel channel, long start, long end) throws IOException {
+        if (start == end) return "";
+        ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        return StandardCharsets.UTF_8.decode(buffer).toString();
+    }
+
+    // position after the first line end at or after position, or the size of file.
+    private static long findLineEnd(FileChannel channel, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SEARCH_SIZE);
+        while (true) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) return channel.size();
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') return position + i + 1;
+            }
+            position += read;
+        }
+    }
+
+    private record Chunk(List<String[]> records, int[] fitMasks, String error) {
+    }
+}
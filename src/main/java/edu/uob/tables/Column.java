@@ -0,0 +1,213 @@
+package edu.uob.tables;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+import java.util.List;
+import java.util.function.IntFunction;
+
+// A column stores the values of one attribute for every row of a table in a primitive
+// array of the column's type. The type is inferred from the values: a column holding
+// only integers is an IntColumn, and it is widened to another type once a value of that
+// type is set (see widen()). The text of each value is kept exactly, so the table still
+// reads as the text it was loaded from.
+//
+// The compare methods give the same result as Value.compareTo on the text of a row with
+// a reference value of the named type, but without parsing the text again.
+public abstract class Column {
+    static final String NULL_TEXT = "NULL";
+    // narrowest first, StringColumn accepts everything.
+    private static final List<IntFunction<Column>> WIDENING_ORDER = List.of(
+            IntColumn::new, LongColumn::new, DoubleColumn::new, BoolColumn::new,
+            StringColumn::new);
+    // empty column of each type in WIDENING_ORDER, only asked whether a text fits.
+    private static final List<Column> PROTOTYPES = WIDENING_ORDER.stream().map(
+            (factory) -> factory.apply(0)).toList();
+    // fit mask of columns accepting every text, see getFitMask().
+    static final int ALL_TYPES = (1 << WIDENING_ORDER.size()) - 1;
+
+    public abstract Type getType();
+
+    public abstract String getString(int row);
+
+    public abstract boolean isNull(int row);
+
+    // whether getString() is the canonical text of the value of the row, e.g. not "007",
+    // "1.50" or "null", so the value reads the same once it is printed by its type.
+    public boolean isCanonical(int row) {
+        return true;
+    }
+
+    // compare to an INT reference: -1 if text of the row is not an integer.
+    public abstract int compareInt(int row, int reference);
+
+    // compare to a FLOAT reference: -1 if text of the row is not a number.
+    public abstract int compareFloat(int row, float reference);
+
+    // compare to a STRING reference.
+    public int compareString(int row, String reference) {
+        return getString(row).compareTo(reference);
+    }
+
+    // whether text of the row is equal to a BOOL reference ignoring case.
+    public abstract boolean isBool(int row, boolean reference);
+
+    public boolean contains(int row, String reference) {
+        return getString(row).contains(reference);
+    }
+
+    // === storage, managed by Table ===
+
+    // whether text can be stored in this column without widening.
+    abstract boolean fits(String text);
+
+    abstract void set(int row, String text);
+
+    abstract void copyRow(int from, int to);
+
+    // release anything held by a row no longer in use.
+    abstract void clearRow(int row);
+
+    abstract void resize(int capacity);
+
+    abstract long estimateSize();
+
+    // === binary table file, see BinaryTableFile ===
+
+    // write values of rows in order.
+    abstract void write(DataOutputStream out, int[] rows) throws IOException;
+
+    // read count values written by write() into the first rows.
+    abstract void read(ByteBuffer in, int count);
+
+    // number of column type in a binary table file, which is its place in WIDENING_ORDER.
+    static int getKind(Column column) {
+        for (int kind = 0; kind < PROTOTYPES.size(); kind++) {
+            if (PROTOTYPES.get(kind).getClass() == column.getClass()) return kind;
+        }
+        throw new IllegalArgumentException(column.getClass().getName());
+    }
+
+    // column of kind, or null if kind is unknown.
+    static Column create(int kind, int capacity) {
+        if (kind < 0 || kind >= WIDENING_ORDER.size()) return null;
+        return WIDENING_ORDER.get(kind).apply(capacity);
+    }
+
+    static Column create(Type type, int capacity) {
+        return switch (type) {
+            case INT, NULL -> new IntColumn(capacity);
+            case FLOAT -> new DoubleColumn(capacity);
+            case BOOL -> new BoolColumn(capacity);
+            case STRING -> new StringColumn(capacity);
+        };
+    }
+
+    // Get the narrowest column holding both text and the rows in use of column. Rows not
+    // in use are left empty, they will be set before being used again.
+    static Column widen(Column column, String text, BitSet rows, int capacity) {
+        return widen(column, getFitMask(text), rows, capacity);
+    }
+
+    // Same as above for texts accepted by the columns in fitMask. Column itself is returned
+    // if it is the narrowest one.
+    static Column widen(Column column, int fitMask, BitSet rows, int capacity) {
+        for (int i = 0; i < PROTOTYPES.size(); i++) {
+            Column prototype = PROTOTYPES.get(i);
+            if ((fitMask & 1 << i) == 0) continue;
+            if (prototype.getClass() == column.getClass()) return column;
+            if (fitsAllRows(prototype, column, rows)) {
+                Column candidate = WIDENING_ORDER.get(i).apply(capacity);
+                for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+                    candidate.set(row, column.getString(row));
+                }
+                return candidate;
+            }
+        }
+        throw new IllegalStateException("No column accepts texts of mask " + fitMask + ".");
+    }
+
+    // bit i is set if the i-th type of WIDENING_ORDER accepts text. The mask of many texts
+    // is the AND of their masks.
+    static int getFitMask(String text) {
+        int mask = 0;
+        for (int i = 0; i < PROTOTYPES.size(); i++) {
+            if (PROTOTYPES.get(i).fits(text)) mask |= 1 << i;
+        }
+        return mask;
+    }
+
+    private static boolean fitsAllRows(Column candidate, Column column, BitSet rows) {
+        for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+            if (!candidate.fits(column.getString(row))) return false;
+        }
+        return true;
+    }
+
+    static boolean isNullText(String text) {
+        return text.equalsIgnoreCase(NULL_TEXT);
+    }
+
+    static boolean isBoolText(String text) {
+        return text.equalsIgnoreCase("TRUE") || text.equalsIgnoreCase("FALSE");
+    }
+
+    // [+-]?[0-9]+
+    static boolean isIntegerText(String text) {
+        int start = text.startsWith("+") || text.startsWith("-") ? 1 : 0;
+        if (start == text.length()) return false;
+        for (int i = start; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') return false;
+        }
+        return true;
+    }
+
+    // [+-]?[0-9]+[.][0-9]+
+    static boolean isDecimalText(String text) {
+        int point = text.indexOf('.');
+        return point > 0 && point < text.length() - 1 &&
+               isIntegerText(text.substring(0, point)) &&
+               isIntegerText(text.substring(point + 1)) &&
+               Character.isDigit(text.charAt(point + 1));
+    }
+
+    // Integer.parseInt as Value.compareTo does, or null if it fails. Only texts that could
+    // be numbers are parsed, others are rejected without throwing.
+    static Integer parseInt(String text) {
+        char first = getFirstDigit(text);
+        if (!Character.isDigit(first)) return null;
+        try {
+            return Integer.parseInt(text);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // Float.parseFloat as Value.compareTo does, or null if it fails.
+    static Float parseFloat(String text) {
+        char first = getFirstDigit(text);
+        if (!(first >= '0' && first <= '9') && first != '.' && first != 'I' && first != 'N') {
+            return null;
+        }
+        try {
+            return Float.parseFloat(text);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // first character of text after sign, or 0 if none.
+    private static char getFirstDigit(String text) {
+        String trimmed = text.trim();
+        if (trimmed.isEmpty()) return 0;
+        char first = trimmed.charAt(0);
+        if ((first == '+' || first == '-') && trimmed.length() > 1) first = trimmed.charAt(1);
+        return first;
+    }
+
+    static int grow(int capacity, int minimum) {
+        return Math.max(minimum, capacity + (capacity >> 1) + 1);
+    }
+}
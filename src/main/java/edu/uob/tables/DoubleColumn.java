@@ -0,0 +1,115 @@
+package edu.uob.tables;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+
+// FLOAT values, may be mixed with integers.
+public final class DoubleColumn extends PrimitiveColumn {
+    private double[] values;
+    // Float.parseFloat of the text, compared as FLOAT as indexes do (see Column.parseFloat),
+    // narrowing the double would round twice.
+    private float[] floats;
+    // rows whose text is an integer in range of int, which can be compared as INT.
+    private final BitSet intRows;
+
+    DoubleColumn(int capacity) {
+        super(capacity);
+        this.values = new double[capacity];
+        this.floats = new float[capacity];
+        this.intRows = new BitSet();
+    }
+
+    public double getDouble(int row) {
+        return values[row];
+    }
+
+    public boolean isInt(int row) {
+        return intRows.get(row);
+    }
+
+    @Override
+    public Type getType() {
+        return Type.FLOAT;
+    }
+
+    @Override
+    public int compareInt(int row, int reference) {
+        if (!intRows.get(row)) return -1; // also false for NULL
+        return Integer.compare((int) values[row], reference);
+    }
+
+    @Override
+    public int compareFloat(int row, float reference) {
+        if (nulls.get(row)) return -1;
+        return Float.compare(floats[row], reference);
+    }
+
+    @Override
+    public boolean isBool(int row, boolean reference) {
+        return false;
+    }
+
+    @Override
+    boolean fits(String text) {
+        return isNullText(text) || isIntegerText(text) || isDecimalText(text);
+    }
+
+    @Override
+    protected String getCanonicalString(int row) {
+        if (intRows.get(row)) return Integer.toString((int) values[row]);
+        return Double.toString(values[row]);
+    }
+
+    @Override
+    protected void setValue(int row, String text) {
+        values[row] = Double.parseDouble(text);
+        floats[row] = Float.parseFloat(text);
+        intRows.set(row, isIntegerText(text) && values[row] == (int) values[row]);
+    }
+
+    @Override
+    void set(int row, String text) {
+        if (isNullText(text)) intRows.clear(row);
+        super.set(row, text);
+    }
+
+    @Override
+    protected void copyValue(int from, int to) {
+        values[to] = values[from];
+        floats[to] = floats[from];
+        intRows.set(to, intRows.get(from));
+    }
+
+    @Override
+    protected void resizeValues(int capacity) {
+        values = Arrays.copyOf(values, capacity);
+        floats = Arrays.copyOf(floats, capacity);
+    }
+
+    @Override
+    protected int getValueSize() {
+        return Double.BYTES + Float.BYTES;
+    }
+
+    // values, then rows comparable as INT. Floats are parsed again from the text on read.
+    @Override
+    protected void writeValues(DataOutputStream out, int[] rows) throws IOException {
+        for (int row : rows) {
+            out.writeDouble(values[row]);
+        }
+        BinaryTableFile.writeBits(out, rows, intRows::get);
+    }
+
+    @Override
+    protected void readValues(ByteBuffer in, int count) {
+        in.asDoubleBuffer().get(values, 0, count);
+        in.position(in.position() + count * Double.BYTES);
+        intRows.or(BinaryTableFile.readBits(in));
+        for (int row = 0; row < count; row++) {
+            if (!nulls.get(row)) floats[row] = Float.parseFloat(getString(row));
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package edu.uob.tables;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Hash index of an attribute, finding records whose value == a reference value without
+// scanning the table. Ids are kept by the exact text of value. As == compares text by the
+// type of reference value (see Value.compareTo), each distinct text is also grouped by
+// what it is as int, float, bool and null, e.g. "1", "+1" and "01" are the same int.
+class HashIndex {
+    private final HashMap<String, IdSet> idsOfText;
+    // Integer, Float, Boolean or Type.NULL -> texts having that value.
+    private final HashMap<Object, Set<String>> textsOfKey;
+
+    HashIndex() {
+        idsOfText = new HashMap<>();
+        textsOfKey = new HashMap<>();
+    }
+
+    static HashIndex create(IndexType type) {
+        return switch (type) {
+            case HASH -> new HashIndex();
+            case ORDERED -> new OrderedIndex();
+            case TRIGRAM -> new TrigramIndex();
+        };
+    }
+
+    IndexType getType() {
+        return IndexType.HASH;
+    }
+
+    // index of the same type holding the same ids, sharing nothing with this one.
+    HashIndex copy() {
+        HashIndex copy = create(getType());
+        for (Map.Entry<String, IdSet> entry : idsOfText.entrySet()) {
+            IdSet ids = new IdSet();
+            ids.addAll(entry.getValue());
+            copy.idsOfText.put(entry.getKey(), ids);
+            copy.addText(entry.getKey());
+        }
+        return copy;
+    }
+
+    void add(String text, int id) {
+        IdSet ids = idsOfText.get(text);
+        if (ids == null) {
+            ids = new IdSet();
+            idsOfText.put(text, ids);
+            addText(text);
+        }
+        ids.add(id);
+    }
+
+    void remove(String text, int id) {
+        IdSet ids = idsOfText.get(text);
+        if (ids == null || !ids.remove(id) || !ids.isEmpty()) return;
+        idsOfText.remove(text);
+        removeText(text);
+    }
+
+    // called once a distinct text is added to or removed from the index.
+    protected void addText(String text) {
+        for (Object key : getKeys(text)) {
+            textsOfKey.computeIfAbsent(key, (k) -> new HashSet<>()).add(text);
+        }
+    }
+
+    protected void removeText(String text) {
+        for (Object key : getKeys(text)) {
+            removeFrom(textsOfKey, key, text);
+        }
+    }
+
+    protected static <K> void removeFrom(Map<K, Set<String>> textsOfKey, K key, String text) {
+        Set<String> texts = textsOfKey.get(key);
+        texts.remove(text);
+        if (texts.isEmpty()) textsOfKey.remove(key);
+    }
+
+    // ids of records whose value is text.
+    protected IdSet getIds(String text) {
+        return idsOfText.get(text);
+    }
+
+    // ids of records whose value compares equal to reference.
+    IdSet find(Value reference) {
+        IdSet result = new IdSet();
+        if (reference.type() == Type.STRING) {
+            IdSet ids = idsOfText.get(reference.valueString());
+            if (ids != null) result.addAll(ids);
+            return result;
+        }
+        Object key = getKey(reference);
+        for (String text : textsOfKey.getOrDefault(key, Set.of())) {
+            result.addAll(idsOfText.get(text));
+        }
+        return result;
+    }
+
+    Map<String, IdSet> getIdsOfText() {
+        return idsOfText;
+    }
+
+    long estimateSize() {
+        long size = 64;
+        for (Map.Entry<String, IdSet> entry : idsOfText.entrySet()) {
+            size += 64 + entry.getKey().length() + entry.getValue().estimateSize();
+        }
+        return size + 64L * textsOfKey.size();
+    }
+
+    private static List<Object> getKeys(String text) {
+        List<Object> keys = new ArrayList<>(2);
+        Integer intValue = Column.parseInt(text);
+        if (intValue != null) keys.add(intValue);
+        Float floatValue = Column.parseFloat(text);
+        if (floatValue != null) keys.add(floatValue);
+        if (Column.isBoolText(text)) keys.add(text.equalsIgnoreCase("TRUE"));
+        if (Column.isNullText(text)) keys.add(Type.NULL);
+        return keys;
+    }
+
+    // key of a reference value other than string, or null if nothing equals it.
+    private static Object getKey(Value reference) {
+        String text = reference.valueString();
+        return switch (reference.type()) {
+            case INT -> Column.parseInt(text); // null if out of range of int.
+            case FLOAT -> Float.parseFloat(text);
+            case BOOL -> text.equalsIgnoreCase("TRUE");
+            case NULL -> Type.NULL;
+            case STRING -> throw new IllegalArgumentException(); // looked up by text.
+        };
+    }
+}
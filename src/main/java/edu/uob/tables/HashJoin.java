@@ -0,0 +1,152 @@
+package edu.uob.tables;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+// Find pairs of rows whose join keys are equal. Keys are given in ascending order of id,
+// and pairs are returned in order of left index then right index, each encoded in a long
+// (see getLeft() and getRight()).
+//     A hash table is built on the smaller input and probed with the larger one. Joins of
+// at least parallelThreshold rows are split across the common ForkJoin pool: the build
+// side is partitioned by hash, each partition built by its own task, and the probe side
+// is split into chunks whose results are concatenated in order.
+public final class HashJoin {
+    // hashing is not worth it once one side has no more rows than this.
+    private static final int NESTED_LOOP_THRESHOLD = 4;
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private HashJoin() {
+    }
+
+    public static long[] join(String[] leftKeys, String[] rightKeys, int parallelThreshold) {
+        if (Math.min(leftKeys.length, rightKeys.length) <= NESTED_LOOP_THRESHOLD) {
+            return nestedLoopJoin(leftKeys, rightKeys);
+        }
+        boolean isParallel = (long) leftKeys.length + rightKeys.length >= parallelThreshold &&
+                             ForkJoinPool.getCommonPoolParallelism() > 1;
+        if (rightKeys.length <= leftKeys.length) {
+            return hashJoin(leftKeys, rightKeys, false, isParallel);
+        }
+        long[] pairs = hashJoin(rightKeys, leftKeys, true, isParallel);
+        // probed in order of right index.
+        if (isParallel) Arrays.parallelSort(pairs);
+        else Arrays.sort(pairs);
+        return pairs;
+    }
+
+    public static int getLeft(long pair) {
+        return (int) (pair >>> 32);
+    }
+
+    public static int getRight(long pair) {
+        return (int) pair;
+    }
+
+    // pair is ordered by left index first.
+    private static long getPair(int left, int right) {
+        return ((long) left << 32) | right;
+    }
+
+    // check whether each key of left is equal with right one.
+    private static long[] nestedLoopJoin(String[] leftKeys, String[] rightKeys) {
+        LongStream.Builder pairs = LongStream.builder();
+        for (int left = 0; left < leftKeys.length; left++) {
+            for (int right = 0; right < rightKeys.length; right++) {
+                if (leftKeys[left].equals(rightKeys[right])) pairs.add(getPair(left, right));
+            }
+        }
+        return pairs.build().toArray();
+    }
+
+    // swapped means build side is the left input, pairs are still (left, right).
+    private static long[] hashJoin(String[] probeKeys, String[] buildKeys, boolean swapped, boolean isParallel) {
+        int partitionCount = isParallel ? ForkJoinPool.getCommonPoolParallelism() : 1;
+        BuildSide buildSide = new BuildSide(buildKeys, partitionCount, isParallel);
+        int chunkCount = isParallel ? partitionCount * CHUNKS_PER_THREAD : 1;
+        int chunkSize = (probeKeys.length + chunkCount - 1) / chunkCount;
+        IntStream chunks = IntStream.range(0, chunkCount);
+        List<long[]> results = (isParallel ? chunks.parallel() : chunks).mapToObj(
+                (chunk) -> buildSide.probe(probeKeys, chunk * chunkSize,
+                                           Math.min(probeKeys.length, (chunk + 1) * chunkSize),
+                                           swapped)).toList();
+        // concatenate in order of chunk.
+        long[] pairs = new long[results.stream().mapToInt((result) -> result.length).sum()];
+        int length = 0;
+        for (long[] result : results) {
+            System.arraycopy(result, 0, pairs, length, result.length);
+            length += result.length;
+        }
+        return pairs;
+    }
+
+    // Hash table of build keys, split into partitions by hash of key. Within a partition,
+    // heads maps a key to its first index and next[index] links to the next index of the
+    // same key, so matches of a key are found in ascending order of index.
+    private static final class BuildSide {
+        private final String[] keys;
+        private final int[] next;
+        private final List<HashMap<String, Integer>> partitions;
+
+        private BuildSide(String[] keys, int partitionCount, boolean isParallel) {
+            this.keys = keys;
+            this.next = new int[keys.length];
+            int[] partitionOf = new int[keys.length];
+            IntUnaryOperator toPartition = (index) -> getPartition(keys[index].hashCode(), partitionCount);
+            if (isParallel) Arrays.parallelSetAll(partitionOf, toPartition);
+            else Arrays.setAll(partitionOf, toPartition);
+            // indexes grouped by partition, ascending within each: those of partition p are
+            // from starts[p] to starts[p + 1] (exclusive).
+            int[] starts = new int[partitionCount + 1];
+            for (int partition : partitionOf) {
+                starts[partition + 1]++;
+            }
+            for (int partition = 0; partition < partitionCount; partition++) {
+                starts[partition + 1] += starts[partition];
+            }
+            int[] indexes = new int[keys.length];
+            int[] ends = Arrays.copyOf(starts, partitionCount);
+            for (int index = 0; index < keys.length; index++) {
+                indexes[ends[partitionOf[index]]++] = index;
+            }
+            // each partition only writes next[] of its own indexes.
+            IntStream range = IntStream.range(0, partitionCount);
+            this.partitions = (isParallel ? range.parallel() : range).mapToObj(
+                    (partition) -> build(indexes, starts[partition], starts[partition + 1])).toList();
+        }
+
+        // hash table of indexes from start to end (exclusive).
+        private HashMap<String, Integer> build(int[] indexes, int start, int end) {
+            HashMap<String, Integer> heads = new HashMap<>();
+            for (int i = end - 1; i >= start; i--) {
+                int index = indexes[i];
+                Integer head = heads.put(keys[index], index);
+                next[index] = head == null ? -1 : head;
+            }
+            return heads;
+        }
+
+        // probe keys from start to end (exclusive).
+        private long[] probe(String[] probeKeys, int start, int end, boolean swapped) {
+            LongStream.Builder pairs = LongStream.builder();
+            for (int probe = start; probe < end; probe++) {
+                String key = probeKeys[probe];
+                Integer head = partitions.get(getPartition(key.hashCode(), partitions.size()))
+                                         .get(key);
+                if (head == null) continue;
+                for (int build = head; build >= 0; build = next[build]) {
+                    pairs.add(swapped ? getPair(build, probe) : getPair(probe, build));
+                }
+            }
+            return pairs.build().toArray();
+        }
+
+        private static int getPartition(int hash, int partitionCount) {
+            return ((hash ^ (hash >>> 16)) & Integer.MAX_VALUE) % partitionCount;
+        }
+    }
+}
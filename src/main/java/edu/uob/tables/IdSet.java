@@ -0,0 +1,490 @@
+package edu.uob.tables;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.IntConsumer;
+
+// Set of ids as a compressed bitmap, after Roaring bitmaps. Ids are split by their high 16
+// bits into chunks of 65536 ids. A chunk of at most ARRAY_LIMIT ids keeps them in a sorted
+// array, a denser one in a bitmap of 1024 words, so a chunk never takes more than 8KB.
+// and(), or() and andNot() work chunk by chunk, on two bitmaps a word at a time.
+//     Ids are iterated in ascending order. As a Set<Integer> it equals any other set of the
+// same ids, but ids should be added and tested as int to avoid boxing.
+public final class IdSet extends AbstractSet<Integer> {
+    private static final int ARRAY_LIMIT = 4096;
+    private static final int WORD_COUNT = 1024; // 65536 bits.
+    private char[] highs; // high 16 bits of ids in each chunk, ascending.
+    private Chunk[] chunks;
+    private int chunkCount;
+    private int size;
+
+    public IdSet() {
+        highs = new char[4];
+        chunks = new Chunk[4];
+        chunkCount = 0;
+        size = 0;
+    }
+
+    public static IdSet of(int... ids) {
+        IdSet set = new IdSet();
+        for (int id : ids) {
+            set.add(id);
+        }
+        return set;
+    }
+
+    public boolean add(int id) {
+        char high = getHigh(id);
+        // ids are mostly added in ascending order, into the last chunk.
+        int index = chunkCount > 0 && highs[chunkCount - 1] == high ? chunkCount - 1 :
+                    findChunk(high);
+        if (index < 0) {
+            index = -index - 1;
+            insertChunk(index, high, new Chunk());
+        }
+        if (!chunks[index].add((char) id)) return false;
+        size++;
+        return true;
+    }
+
+    public boolean remove(int id) {
+        int index = findChunk(getHigh(id));
+        if (index < 0 || !chunks[index].remove((char) id)) return false;
+        if (chunks[index].cardinality == 0) removeChunk(index);
+        size--;
+        return true;
+    }
+
+    public boolean contains(int id) {
+        int index = findChunk(getHigh(id));
+        return index >= 0 && chunks[index].contains((char) id);
+    }
+
+    @Override
+    public boolean add(Integer id) {
+        return add(id.intValue());
+    }
+
+    @Override
+    public boolean remove(Object id) {
+        return id instanceof Integer value && remove(value.intValue());
+    }
+
+    @Override
+    public boolean contains(Object id) {
+        return id instanceof Integer value && contains(value.intValue());
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(chunks, 0, chunkCount, null);
+        chunkCount = 0;
+        size = 0;
+    }
+
+    // ids in both sets.
+    public IdSet and(IdSet other) {
+        IdSet result = new IdSet();
+        int i = 0, j = 0;
+        while (i < chunkCount && j < other.chunkCount) {
+            if (highs[i] < other.highs[j]) i++;
+            else if (highs[i] > other.highs[j]) j++;
+            else {
+                result.appendChunk(highs[i], Chunk.and(chunks[i++], other.chunks[j++]));
+            }
+        }
+        return result;
+    }
+
+    // ids in either set.
+    public IdSet or(IdSet other) {
+        IdSet result = new IdSet();
+        int i = 0, j = 0;
+        while (i < chunkCount || j < other.chunkCount) {
+            if (j == other.chunkCount || i < chunkCount && highs[i] < other.highs[j]) {
+                result.appendChunk(highs[i], chunks[i++].copy());
+            }
+            else if (i == chunkCount || highs[i] > other.highs[j]) {
+                result.appendChunk(other.highs[j], other.chunks[j++].copy());
+            }
+            else {
+                result.appendChunk(highs[i], Chunk.or(chunks[i++], other.chunks[j++]));
+            }
+        }
+        return result;
+    }
+
+    // ids in this set but not in other.
+    public IdSet andNot(IdSet other) {
+        IdSet result = new IdSet();
+        int i = 0, j = 0;
+        while (i < chunkCount) {
+            if (j == other.chunkCount || highs[i] < other.highs[j]) {
+                result.appendChunk(highs[i], chunks[i++].copy());
+            }
+            else if (highs[i] > other.highs[j]) j++;
+            else {
+                result.appendChunk(highs[i], Chunk.andNot(chunks[i++], other.chunks[j++]));
+            }
+        }
+        return result;
+    }
+
+    // In place versions of the above, taken for any collection.
+    @Override
+    public boolean addAll(Collection<? extends Integer> ids) {
+        int oldSize = size;
+        if (!(ids instanceof IdSet other)) return super.addAll(ids);
+        for (int j = 0; j < other.chunkCount; j++) {
+            int index = findChunk(other.highs[j]);
+            if (index < 0) insertChunk(-index - 1, other.highs[j], other.chunks[j].copy());
+            else chunks[index] = Chunk.or(chunks[index], other.chunks[j]);
+        }
+        size = countIds();
+        return size != oldSize;
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> ids) {
+        return replaceWith(and(toIdSet(ids)));
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> ids) {
+        return replaceWith(andNot(toIdSet(ids)));
+    }
+
+    public void forEachId(IntConsumer action) {
+        for (int i = 0; i < chunkCount; i++) {
+            chunks[i].forEach(getBase(highs[i]), action);
+        }
+    }
+
+    public int[] toIntArray() {
+        int[] result = new int[size];
+        int[] length = {0};
+        forEachId((id) -> result[length[0]++] = id);
+        return result;
+    }
+
+    @Override
+    public Iterator<Integer> iterator() {
+        return new Iterator<>() {
+            private int chunk = 0;
+            private int position = -1; // of last id in chunk, index or bit.
+
+            @Override
+            public boolean hasNext() {
+                return chunk < chunkCount && chunks[chunk].next(position) >= 0 ||
+                       chunk + 1 < chunkCount;
+            }
+
+            @Override
+            public Integer next() {
+                while (chunk < chunkCount) {
+                    position = chunks[chunk].next(position);
+                    if (position >= 0) {
+                        return getBase(highs[chunk]) | chunks[chunk].get(position);
+                    }
+                    chunk++;
+                    position = -1;
+                }
+                throw new NoSuchElementException();
+            }
+        };
+    }
+
+    long estimateSize() {
+        long result = 48 + 12L * highs.length;
+        for (int i = 0; i < chunkCount; i++) {
+            Chunk chunk = chunks[i];
+            result += 32 + (chunk.words != null ? 8L * WORD_COUNT : 2L * chunk.values.length);
+        }
+        return result;
+    }
+
+    // high 16 bits with sign flipped, so that chunks of negative ids come first.
+    private static char getHigh(int id) {
+        return (char) ((id >>> 16) ^ 0x8000);
+    }
+
+    private static int getBase(char high) {
+        return (high ^ 0x8000) << 16;
+    }
+
+    private int findChunk(char high) {
+        return Arrays.binarySearch(highs, 0, chunkCount, high);
+    }
+
+    private void insertChunk(int index, char high, Chunk chunk) {
+        if (chunkCount == highs.length) {
+            highs = Arrays.copyOf(highs, chunkCount * 2);
+            chunks = Arrays.copyOf(chunks, chunkCount * 2);
+        }
+        System.arraycopy(highs, index, highs, index + 1, chunkCount - index);
+        System.arraycopy(chunks, index, chunks, index + 1, chunkCount - index);
+        highs[index] = high;
+        chunks[index] = chunk;
+        chunkCount++;
+    }
+
+    private void removeChunk(int index) {
+        System.arraycopy(highs, index + 1, highs, index, chunkCount - index - 1);
+        System.arraycopy(chunks, index + 1, chunks, index, chunkCount - index - 1);
+        chunks[--chunkCount] = null;
+    }
+
+    // append chunk of ids greater than all in this set, or nothing if chunk is empty.
+    private void appendChunk(char high, Chunk chunk) {
+        if (chunk == null) return;
+        insertChunk(chunkCount, high, chunk);
+        size += chunk.cardinality;
+    }
+
+    private int countIds() {
+        int result = 0;
+        for (int i = 0; i < chunkCount; i++) {
+            result += chunks[i].cardinality;
+        }
+        return result;
+    }
+
+    private boolean replaceWith(IdSet other) {
+        boolean isChanged = other.size != size;
+        highs = other.highs;
+        chunks = other.chunks;
+        chunkCount = other.chunkCount;
+        size = other.size;
+        return isChanged;
+    }
+
+    private static IdSet toIdSet(Collection<?> ids) {
+        if (ids instanceof IdSet idSet) return idSet;
+        IdSet result = new IdSet();
+        for (Object id : ids) {
+            if (id instanceof Integer value) result.add(value.intValue());
+        }
+        return result;
+    }
+
+    // Low 16 bits of ids sharing the same high bits: a sorted array of values while there
+    // are at most ARRAY_LIMIT of them, otherwise a bitmap in words.
+    private static final class Chunk {
+        private char[] values;
+        private long[] words;
+        private int cardinality;
+
+        private Chunk() {
+            values = new char[4];
+        }
+
+        private Chunk(char[] values, long[] words, int cardinality) {
+            this.values = values;
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        private Chunk copy() {
+            return new Chunk(values == null ? null : Arrays.copyOf(values, cardinality),
+                             words == null ? null : words.clone(), cardinality);
+        }
+
+        private boolean contains(char low) {
+            if (words != null) return (words[low >>> 6] & (1L << low)) != 0;
+            return Arrays.binarySearch(values, 0, cardinality, low) >= 0;
+        }
+
+        private boolean add(char low) {
+            if (words != null) {
+                long word = words[low >>> 6];
+                words[low >>> 6] = word | (1L << low);
+                if (word == words[low >>> 6]) return false;
+                cardinality++;
+                return true;
+            }
+            int index = cardinality > 0 && values[cardinality - 1] < low ? -cardinality - 1 :
+                        Arrays.binarySearch(values, 0, cardinality, low);
+            if (index >= 0) return false;
+            if (cardinality == ARRAY_LIMIT) {
+                toBitmap();
+                return add(low);
+            }
+            index = -index - 1;
+            if (cardinality == values.length) {
+                values = Arrays.copyOf(values, Math.min(ARRAY_LIMIT, cardinality * 2 + 4));
+            }
+            System.arraycopy(values, index, values, index + 1, cardinality - index);
+            values[index] = low;
+            cardinality++;
+            return true;
+        }
+
+        private boolean remove(char low) {
+            if (words != null) {
+                long word = words[low >>> 6];
+                words[low >>> 6] = word & ~(1L << low);
+                if (word == words[low >>> 6]) return false;
+                if (--cardinality <= ARRAY_LIMIT) toArray();
+                return true;
+            }
+            int index = Arrays.binarySearch(values, 0, cardinality, low);
+            if (index < 0) return false;
+            System.arraycopy(values, index + 1, values, index, cardinality - index - 1);
+            cardinality--;
+            return true;
+        }
+
+        // value at position, see next().
+        private char get(int position) {
+            return words != null ? (char) position : values[position];
+        }
+
+        // position after the given one, or -1 if none: index of values, or bit of words.
+        private int next(int position) {
+            if (words == null) return position + 1 < cardinality ? position + 1 : -1;
+            return nextBit(words, position + 1);
+        }
+
+        private void forEach(int base, IntConsumer action) {
+            if (words == null) {
+                for (int i = 0; i < cardinality; i++) {
+                    action.accept(base | values[i]);
+                }
+                return;
+            }
+            for (int i = 0; i < WORD_COUNT; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    action.accept(base | (i << 6) + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+        }
+
+        private void toBitmap() {
+            words = new long[WORD_COUNT];
+            for (int i = 0; i < cardinality; i++) {
+                words[values[i] >>> 6] |= 1L << values[i];
+            }
+            values = null;
+        }
+
+        private void toArray() {
+            values = new char[cardinality];
+            int length = 0;
+            for (int bit = nextBit(words, 0); bit >= 0; bit = nextBit(words, bit + 1)) {
+                values[length++] = (char) bit;
+            }
+            words = null;
+        }
+
+        private static Chunk and(Chunk a, Chunk b) {
+            if (a.words != null && b.words != null) {
+                long[] words = new long[WORD_COUNT];
+                for (int i = 0; i < WORD_COUNT; i++) {
+                    words[i] = a.words[i] & b.words[i];
+                }
+                return fromWords(words);
+            }
+            // walk the array, testing each value against the other chunk.
+            Chunk array = a.words == null ? a : b;
+            Chunk other = array == a ? b : a;
+            char[] values = new char[array.cardinality];
+            int length = 0;
+            for (int i = 0; i < array.cardinality; i++) {
+                if (other.contains(array.values[i])) values[length++] = array.values[i];
+            }
+            return length == 0 ? null : new Chunk(values, null, length);
+        }
+
+        private static Chunk or(Chunk a, Chunk b) {
+            if (a.words == null && b.words == null &&
+                a.cardinality + b.cardinality <= ARRAY_LIMIT) {
+                char[] values = new char[a.cardinality + b.cardinality];
+                int i = 0, j = 0, length = 0;
+                while (i < a.cardinality || j < b.cardinality) {
+                    if (j == b.cardinality || i < a.cardinality && a.values[i] < b.values[j]) {
+                        values[length++] = a.values[i++];
+                    }
+                    else if (i == a.cardinality || a.values[i] > b.values[j]) {
+                        values[length++] = b.values[j++];
+                    }
+                    else {
+                        values[length++] = a.values[i++];
+                        j++;
+                    }
+                }
+                return new Chunk(values, null, length);
+            }
+            long[] words = new long[WORD_COUNT];
+            for (Chunk chunk : new Chunk[]{a, b}) {
+                if (chunk.words != null) {
+                    for (int i = 0; i < WORD_COUNT; i++) {
+                        words[i] |= chunk.words[i];
+                    }
+                }
+                else {
+                    for (int i = 0; i < chunk.cardinality; i++) {
+                        words[chunk.values[i] >>> 6] |= 1L << chunk.values[i];
+                    }
+                }
+            }
+            return fromWords(words);
+        }
+
+        private static Chunk andNot(Chunk a, Chunk b) {
+            if (a.words == null) {
+                char[] values = new char[a.cardinality];
+                int length = 0;
+                for (int i = 0; i < a.cardinality; i++) {
+                    if (!b.contains(a.values[i])) values[length++] = a.values[i];
+                }
+                return length == 0 ? null : new Chunk(values, null, length);
+            }
+            long[] words = a.words.clone();
+            if (b.words != null) {
+                for (int i = 0; i < WORD_COUNT; i++) {
+                    words[i] &= ~b.words[i];
+                }
+            }
+            else {
+                for (int i = 0; i < b.cardinality; i++) {
+                    words[b.values[i] >>> 6] &= ~(1L << b.values[i]);
+                }
+            }
+            return fromWords(words);
+        }
+
+        // chunk of bits set in words, an array if there are few, or null if none.
+        private static Chunk fromWords(long[] words) {
+            int cardinality = 0;
+            for (long word : words) {
+                cardinality += Long.bitCount(word);
+            }
+            if (cardinality == 0) return null;
+            Chunk chunk = new Chunk(null, words, cardinality);
+            if (cardinality <= ARRAY_LIMIT) chunk.toArray();
+            return chunk;
+        }
+
+        // first bit set from bit on, or -1.
+        private static int nextBit(long[] words, int bit) {
+            int index = bit >>> 6;
+            if (index >= WORD_COUNT) return -1;
+            long word = words[index] & (-1L << bit);
+            while (word == 0) {
+                if (++index == WORD_COUNT) return -1;
+                word = words[index];
+            }
+            return (index << 6) + Long.numberOfTrailingZeros(word);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package edu.uob.tables;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+// Indexes of a table stored next to its table file, so that they are not built again on
+// every load. The file is written together with the table file, first line is the
+// checksum of the table file it belongs to (see getChecksum()). Other lines are:
+//     A <attribute> <type>     start of index of attribute, see IndexType
+//     P <text> <id>,<id>...    ids of records whose value is text
+// fields are separated by tab, same as the table file.
+// Index of a table file not matching the checksum is built again from the table.
+class IndexFile {
+    static final String FILE_SUFFIX = ".idx";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String SEPARATOR = "\t";
+    private static final String ATTRIBUTE = "A";
+    private static final String POSTING = "P";
+
+    static File getIndexFile(File tableFile) {
+        return TableLog.getSiblingFile(tableFile, FILE_SUFFIX);
+    }
+
+    // content of index file, or "" if there is none.
+    static String read(File tableFile) {
+        try {
+            return Files.readString(getIndexFile(tableFile).toPath());
+        } catch (IOException e) {
+            return "";
+        }
+    }
+
+    // Write indexes of table whose table file has checksum. A table without index has no
+    // index file.
+    static void write(File tableFile, Table table, long checksum) throws IOException {
+        File indexFile = getIndexFile(tableFile);
+        if (table.getIndexes().isEmpty()) {
+            Files.deleteIfExists(indexFile.toPath());
+            return;
+        }
+        StringBuilder content = new StringBuilder();
+        content.append(checksum).append('\n');
+        for (Map.Entry<String, HashIndex> index : table.getIndexes().entrySet()) {
+            content.append(ATTRIBUTE).append(SEPARATOR).append(index.getKey())
+                   .append(SEPARATOR)
+                   .append(index.getValue().getType())
+                   .append('\n');
+            for (Map.Entry<String, IdSet> posting : index.getValue().getIdsOfText()
+                                                         .entrySet()) {
+                content.append(POSTING).append(SEPARATOR).append(posting.getKey())
+                       .append(SEPARATOR);
+                posting.getValue().forEachId((id) -> content.append(id).append(','));
+                content.setCharAt(content.length() - 1, '\n');
+            }
+        }
+        Path tempPath = new File(indexFile.getParentFile(),
+                                 indexFile.getName() + TEMP_SUFFIX).toPath();
+        Files.writeString(tempPath, content);
+        Files.move(tempPath, indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Put indexes in content into table loaded from table file of checksum, before the log
+    // is replayed. An index from another version of table file, or broken, is built again.
+    static void load(String content, Table table, long checksum) {
+        if (content.isEmpty()) return;
+        String[] lines = content.split("\n");
+        boolean isMatched = lines[0].equals(Long.toString(checksum));
+        String attribute = null;
+        HashIndex index = null;
+        boolean isBuilt = false;
+        for (int i = 1; i < lines.length; i++) {
+            String[] fields = lines[i].split(SEPARATOR, -1);
+            if (fields[0].equals(ATTRIBUTE) && fields.length == 3) {
+                if (attribute != null) table.putIndex(attribute, index, isBuilt);
+                attribute = fields[1];
+                index = HashIndex.create(getIndexType(fields[2]));
+                isBuilt = isMatched;
+            }
+            else if (isBuilt) {
+                isBuilt = readPosting(fields, index);
+            }
+        }
+        if (attribute != null) table.putIndex(attribute, index, isBuilt);
+    }
+
+    // unknown type is read as HASH, which answers == at least.
+    private static IndexType getIndexType(String type) {
+        try {
+            return IndexType.valueOf(type);
+        } catch (IllegalArgumentException e) {
+            return IndexType.HASH;
+        }
+    }
+
+    // add a posting line to index, return false if line is broken.
+    private static boolean readPosting(String[] fields, HashIndex index) {
+        if (!fields[0].equals(POSTING) || fields.length != 3) return false;
+        try {
+            for (String id : fields[2].split(",")) {
+                index.add(fields[1], Integer.parseInt(id));
+            }
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        return true;
+    }
+
+    // checksum of a text table file, a binary one keeps its checksum in its header.
+    static long getChecksum(String tableString) {
+        CRC32 checksum = new CRC32();
+        checksum.update(tableString.getBytes(StandardCharsets.UTF_8));
+        return checksum.getValue();
+    }
+}
@@ -0,0 +1,6 @@
+package edu.uob.tables;
+
+// HASH answers ==, ORDERED also <, <=, > and >=, TRIGRAM also LIKE.
+public enum IndexType {
+    HASH, ORDERED, TRIGRAM
+}
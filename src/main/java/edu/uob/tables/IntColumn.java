@@ -0,0 +1,99 @@
+package edu.uob.tables;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+public final class IntColumn extends PrimitiveColumn {
+    private int[] values;
+
+    IntColumn(int capacity) {
+        super(capacity);
+        this.values = new int[capacity];
+    }
+
+    // read-only view of an int array, used for the id of rows.
+    static IntColumn wrap(int[] values) {
+        IntColumn column = new IntColumn(0);
+        column.values = values;
+        column.capacity = values.length;
+        return column;
+    }
+
+    public int getInt(int row) {
+        return values[row];
+    }
+
+    @Override
+    public Type getType() {
+        return Type.INT;
+    }
+
+    @Override
+    public int compareInt(int row, int reference) {
+        if (nulls.get(row)) return -1;
+        return Integer.compare(values[row], reference);
+    }
+
+    @Override
+    public int compareFloat(int row, float reference) {
+        if (nulls.get(row)) return -1;
+        return Float.compare((float) values[row], reference);
+    }
+
+    @Override
+    public boolean isBool(int row, boolean reference) {
+        return false;
+    }
+
+    @Override
+    boolean fits(String text) {
+        if (isNullText(text)) return true;
+        if (!isIntegerText(text)) return false;
+        try {
+            Integer.parseInt(text);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    @Override
+    protected String getCanonicalString(int row) {
+        return Integer.toString(values[row]);
+    }
+
+    @Override
+    protected void setValue(int row, String text) {
+        values[row] = Integer.parseInt(text);
+    }
+
+    @Override
+    protected void copyValue(int from, int to) {
+        values[to] = values[from];
+    }
+
+    @Override
+    protected void resizeValues(int capacity) {
+        values = Arrays.copyOf(values, capacity);
+    }
+
+    @Override
+    protected int getValueSize() {
+        return Integer.BYTES;
+    }
+
+    @Override
+    protected void writeValues(DataOutputStream out, int[] rows) throws IOException {
+        for (int row : rows) {
+            out.writeInt(values[row]);
+        }
+    }
+
+    @Override
+    protected void readValues(ByteBuffer in, int count) {
+        in.asIntBuffer().get(values, 0, count);
+        in.position(in.position() + count * Integer.BYTES);
+    }
+}
@@ -0,0 +1,51 @@
+package edu.uob.tables;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Lock of each table, by its table file, held by a command changing the table. A command
+// locks all tables it uses at once, in order of their paths, so commands locking several
+// tables never wait for each other in a cycle. Queries only reading tables take no lock,
+// they read versions no command changes (see TableCache.pin()), so a lock is only ever
+// held by one command and a plain ReentrantLock does.
+public class LockManager {
+    private final ConcurrentHashMap<Path, ReentrantLock> locks;
+
+    public LockManager() {
+        this.locks = new ConcurrentHashMap<>();
+    }
+
+    // locks of files in order of their paths, a file given twice is locked once.
+    private List<ReentrantLock> getLocks(Collection<File> files) {
+        TreeMap<Path, ReentrantLock> ordered = new TreeMap<>();
+        for (File file : files) {
+            Path key = file.toPath().toAbsolutePath().normalize();
+            ordered.put(key, locks.computeIfAbsent(key, (path) -> new ReentrantLock()));
+        }
+        return new ArrayList<>(ordered.values());
+    }
+
+    // block until all files are locked.
+    public Locks lock(Collection<File> files) {
+        List<ReentrantLock> fileLocks = getLocks(files);
+        for (ReentrantLock lock : fileLocks) {
+            lock.lock();
+        }
+        return new Locks(fileLocks);
+    }
+
+    public record Locks(List<ReentrantLock> locks) {
+        // release locks taken by lock(), in reverse order.
+        public void unlock() {
+            for (int i = locks.size() - 1; i >= 0; i--) {
+                locks.get(i).unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package edu.uob.tables;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+// integers not all in range of int.
+public final class LongColumn extends PrimitiveColumn {
+    private long[] values;
+
+    LongColumn(int capacity) {
+        super(capacity);
+        this.values = new long[capacity];
+    }
+
+    public long getLong(int row) {
+        return values[row];
+    }
+
+    @Override
+    public Type getType() {
+        return Type.INT;
+    }
+
+    @Override
+    public int compareInt(int row, int reference) {
+        long value = values[row];
+        // text out of range of int cannot be parsed as INT.
+        if (nulls.get(row) || value != (int) value) return -1;
+        return Integer.compare((int) value, reference);
+    }
+
+    @Override
+    public int compareFloat(int row, float reference) {
+        if (nulls.get(row)) return -1;
+        return Float.compare((float) values[row], reference);
+    }
+
+    @Override
+    public boolean isBool(int row, boolean reference) {
+        return false;
+    }
+
+    @Override
+    boolean fits(String text) {
+        if (isNullText(text)) return true;
+        if (!isIntegerText(text)) return false;
+        try {
+            Long.parseLong(text);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    @Override
+    protected String getCanonicalString(int row) {
+        return Long.toString(values[row]);
+    }
+
+    @Override
+    protected void setValue(int row, String text) {
+        values[row] = Long.parseLong(text);
+    }
+
+    @Override
+    protected void copyValue(int from, int to) {
+        values[to] = values[from];
+    }
+
+    @Override
+    protected void resizeValues(int capacity) {
+        values = Arrays.copyOf(values, capacity);
+    }
+
+    @Override
+    protected int getValueSize() {
+        return Long.BYTES;
+    }
+
+    @Override
+    protected void writeValues(DataOutputStream out, int[] rows) throws IOException {
+        for (int row : rows) {
+            out.writeLong(values[row]);
+        }
+    }
+
+    @Override
+    protected void readValues(ByteBuffer in, int count) {
+        in.asLongBuffer().get(values, 0, count);
+        in.position(in.position() + count * Long.BYTES);
+    }
+}
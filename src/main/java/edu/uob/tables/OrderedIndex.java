@@ -0,0 +1,108 @@
+package edu.uob.tables;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+// Hash index which also keeps values in order as int and as float, answering <, <=, > and
+// >= with a seek and a walk over the range instead of a scan.
+//     A value failing to parse compares as -1 with any reference value (see
+// Value.compareTo), so it is less than every reference value, unless it is null.
+final class OrderedIndex extends HashIndex {
+    private final TreeMap<Integer, Set<String>> textsOfInt;
+    private final TreeMap<Float, Set<String>> textsOfFloat;
+    // texts not null, failing to parse.
+    private final Set<String> textsNotInt;
+    private final Set<String> textsNotFloat;
+
+    OrderedIndex() {
+        textsOfInt = new TreeMap<>();
+        textsOfFloat = new TreeMap<>();
+        textsNotInt = new HashSet<>();
+        textsNotFloat = new HashSet<>();
+    }
+
+    @Override
+    IndexType getType() {
+        return IndexType.ORDERED;
+    }
+
+    @Override
+    protected void addText(String text) {
+        super.addText(text);
+        Integer intValue = Column.parseInt(text);
+        if (intValue != null) {
+            textsOfInt.computeIfAbsent(intValue, (k) -> new HashSet<>()).add(text);
+        }
+        else if (!Column.isNullText(text)) textsNotInt.add(text);
+        Float floatValue = Column.parseFloat(text);
+        if (floatValue != null) {
+            textsOfFloat.computeIfAbsent(floatValue, (k) -> new HashSet<>()).add(text);
+        }
+        else if (!Column.isNullText(text)) textsNotFloat.add(text);
+    }
+
+    @Override
+    protected void removeText(String text) {
+        super.removeText(text);
+        Integer intValue = Column.parseInt(text);
+        if (intValue != null) removeFrom(textsOfInt, intValue, text);
+        else textsNotInt.remove(text);
+        Float floatValue = Column.parseFloat(text);
+        if (floatValue != null) removeFrom(textsOfFloat, floatValue, text);
+        else textsNotFloat.remove(text);
+    }
+
+    // number of records in range, which is cheap to count before finding them.
+    int countRange(Value reference, boolean isGreater, boolean isInclusive) {
+        int count = 0;
+        for (String text : findTexts(reference, isGreater, isInclusive)) {
+            count += getIds(text).size();
+        }
+        return count;
+    }
+
+    // ids of records whose value compared with reference (INT or FLOAT) is greater, or
+    // less, also equal if isInclusive.
+    IdSet findRange(Value reference, boolean isGreater, boolean isInclusive) {
+        IdSet result = new IdSet();
+        for (String text : findTexts(reference, isGreater, isInclusive)) {
+            result.addAll(getIds(text));
+        }
+        return result;
+    }
+
+    private List<String> findTexts(Value reference, boolean isGreater, boolean isInclusive) {
+        List<String> texts = new ArrayList<>();
+        Set<String> failed;
+        if (reference.type() == Type.INT) {
+            Integer number = Column.parseInt(reference.valueString());
+            if (number == null) { // out of range of int, all values compare as -1.
+                if (!isGreater) {
+                    textsOfInt.values().forEach(texts::addAll);
+                    texts.addAll(textsNotInt);
+                }
+                return texts;
+            }
+            addRange(texts, textsOfInt, number, isGreater, isInclusive);
+            failed = textsNotInt;
+        }
+        else {
+            float number = Float.parseFloat(reference.valueString());
+            addRange(texts, textsOfFloat, number, isGreater, isInclusive);
+            failed = textsNotFloat;
+        }
+        if (!isGreater) texts.addAll(failed);
+        return texts;
+    }
+
+    private static <K> void addRange(List<String> texts, NavigableMap<K, Set<String>> textsOfKey, K key, boolean isGreater, boolean isInclusive) {
+        Map<K, Set<String>> range = isGreater ? textsOfKey.tailMap(key, isInclusive) :
+                                    textsOfKey.headMap(key, isInclusive);
+        range.values().forEach(texts::addAll);
+    }
+}
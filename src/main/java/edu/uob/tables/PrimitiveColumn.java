@@ -0,0 +1,136 @@
+package edu.uob.tables;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+
+// Base of columns storing values in a primitive array. NULL is kept in a bitmap. A value
+// whose text is not the canonical text of its type (e.g. "+1", "true" or "null") keeps
+// its text in rawTexts, which is only allocated once such a value is stored.
+abstract class PrimitiveColumn extends Column {
+    protected final BitSet nulls;
+    protected String[] rawTexts;
+    protected int capacity;
+
+    protected PrimitiveColumn(int capacity) {
+        this.nulls = new BitSet();
+        this.capacity = capacity;
+    }
+
+    // text of a non-null value in canonical form.
+    protected abstract String getCanonicalString(int row);
+
+    // store a non-null value, text fits this column.
+    protected abstract void setValue(int row, String text);
+
+    protected abstract void copyValue(int from, int to);
+
+    protected abstract void resizeValues(int capacity);
+
+    protected abstract int getValueSize();
+
+    // write values of rows, NULL or not, in order.
+    protected abstract void writeValues(DataOutputStream out, int[] rows) throws IOException;
+
+    protected abstract void readValues(ByteBuffer in, int count);
+
+    @Override
+    public String getString(int row) {
+        if (rawTexts != null && rawTexts[row] != null) return rawTexts[row];
+        return nulls.get(row) ? NULL_TEXT : getCanonicalString(row);
+    }
+
+    @Override
+    public boolean isNull(int row) {
+        return nulls.get(row);
+    }
+
+    @Override
+    public boolean isCanonical(int row) {
+        return rawTexts == null || rawTexts[row] == null;
+    }
+
+    @Override
+    void set(int row, String text) {
+        if (isNullText(text)) {
+            nulls.set(row);
+        }
+        else {
+            nulls.clear(row);
+            setValue(row, text);
+        }
+        setRawText(row, text.equals(nulls.get(row) ? NULL_TEXT : getCanonicalString(row)) ?
+                        null : text);
+    }
+
+    private void setRawText(int row, String text) {
+        if (text == null) {
+            if (rawTexts != null) rawTexts[row] = null;
+            return;
+        }
+        if (rawTexts == null) rawTexts = new String[capacity];
+        rawTexts[row] = text;
+    }
+
+    @Override
+    void copyRow(int from, int to) {
+        nulls.set(to, nulls.get(from));
+        if (rawTexts != null) rawTexts[to] = rawTexts[from];
+        copyValue(from, to);
+    }
+
+    @Override
+    void clearRow(int row) {
+        if (rawTexts != null) rawTexts[row] = null;
+    }
+
+    @Override
+    void resize(int capacity) {
+        this.capacity = capacity;
+        if (rawTexts != null) rawTexts = Arrays.copyOf(rawTexts, capacity);
+        resizeValues(capacity);
+    }
+
+    // nulls, then raw texts by position, then values.
+    @Override
+    void write(DataOutputStream out, int[] rows) throws IOException {
+        BinaryTableFile.writeBits(out, rows, nulls::get);
+        int rawCount = 0;
+        for (int i = 0; rawTexts != null && i < rows.length; i++) {
+            if (rawTexts[rows[i]] != null) rawCount++;
+        }
+        out.writeInt(rawCount);
+        for (int i = 0; rawCount > 0 && i < rows.length; i++) {
+            if (rawTexts[rows[i]] == null) continue;
+            out.writeInt(i);
+            BinaryTableFile.writeString(out, rawTexts[rows[i]]);
+        }
+        writeValues(out, rows);
+    }
+
+    @Override
+    void read(ByteBuffer in, int count) {
+        nulls.or(BinaryTableFile.readBits(in));
+        int rawCount = in.getInt();
+        if (rawCount > 0) rawTexts = new String[capacity];
+        for (int i = 0; i < rawCount; i++) {
+            int row = in.getInt();
+            rawTexts[row] = BinaryTableFile.readString(in);
+        }
+        readValues(in, count);
+    }
+
+    @Override
+    long estimateSize() {
+        long size = 64 + (long) getValueSize() * capacity + capacity / 8;
+        if (rawTexts != null) {
+            size += 8L * capacity;
+            for (String text : rawTexts) {
+                if (text != null) size += 40 + text.length();
+            }
+        }
+        return size;
+    }
+}
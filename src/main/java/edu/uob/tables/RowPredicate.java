@@ -0,0 +1,7 @@
+package edu.uob.tables;
+
+// test a row of a column, see Table.getRowFilter.
+@FunctionalInterface
+public interface RowPredicate {
+    boolean test(Column column, int row);
+}
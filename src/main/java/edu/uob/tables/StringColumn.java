@@ -0,0 +1,191 @@
+package edu.uob.tables;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+
+// Dictionary encoded column, each row stores the code of its text. Everything a comparison
+// needs to know about a text is worked out once when the text enters the dictionary.
+public final class StringColumn extends Column {
+    private int[] codes;
+    private int capacity;
+    private final ArrayList<String> dictionary;
+    private final HashMap<String, Integer> codeOfText;
+    // properties of each text in dictionary, by code.
+    private int[] intOfCode;
+    private float[] floatOfCode;
+    private final BitSet intCodes;   // Integer.parseInt succeed.
+    private final BitSet floatCodes; // Float.parseFloat succeed.
+    private final BitSet nullCodes;
+    private final BitSet trueCodes;
+    private final BitSet falseCodes;
+
+    StringColumn(int capacity) {
+        this.codes = new int[capacity];
+        this.capacity = capacity;
+        this.dictionary = new ArrayList<>();
+        this.codeOfText = new HashMap<>();
+        this.intOfCode = new int[16];
+        this.floatOfCode = new float[16];
+        this.intCodes = new BitSet();
+        this.floatCodes = new BitSet();
+        this.nullCodes = new BitSet();
+        this.trueCodes = new BitSet();
+        this.falseCodes = new BitSet();
+    }
+
+    public int getCode(int row) {
+        return codes[row];
+    }
+
+    public String getText(int code) {
+        return dictionary.get(code);
+    }
+
+    public int getDictionarySize() {
+        return dictionary.size();
+    }
+
+    @Override
+    public Type getType() {
+        return Type.STRING;
+    }
+
+    @Override
+    public String getString(int row) {
+        return dictionary.get(codes[row]);
+    }
+
+    @Override
+    public boolean isNull(int row) {
+        return nullCodes.get(codes[row]);
+    }
+
+    @Override
+    public boolean isCanonical(int row) {
+        return !isNull(row) || getString(row).equals(NULL_TEXT);
+    }
+
+    @Override
+    public int compareInt(int row, int reference) {
+        int code = codes[row];
+        if (!intCodes.get(code)) return -1;
+        return Integer.compare(intOfCode[code], reference);
+    }
+
+    @Override
+    public int compareFloat(int row, float reference) {
+        int code = codes[row];
+        if (!floatCodes.get(code)) return -1;
+        return Float.compare(floatOfCode[code], reference);
+    }
+
+    @Override
+    public boolean isBool(int row, boolean reference) {
+        return (reference ? trueCodes : falseCodes).get(codes[row]);
+    }
+
+    @Override
+    boolean fits(String text) {
+        return true;
+    }
+
+    @Override
+    void set(int row, String text) {
+        codes[row] = getOrAddCode(text);
+    }
+
+    private int getOrAddCode(String text) {
+        Integer code = codeOfText.get(text);
+        if (code != null) return code;
+        int newCode = dictionary.size();
+        dictionary.add(text);
+        codeOfText.put(text, newCode);
+        if (newCode == intOfCode.length) {
+            intOfCode = Arrays.copyOf(intOfCode, newCode * 2);
+            floatOfCode = Arrays.copyOf(floatOfCode, newCode * 2);
+        }
+        nullCodes.set(newCode, isNullText(text));
+        trueCodes.set(newCode, text.equalsIgnoreCase("TRUE"));
+        falseCodes.set(newCode, text.equalsIgnoreCase("FALSE"));
+        parseNumber(newCode, text);
+        return newCode;
+    }
+
+    private void parseNumber(int code, String text) {
+        Integer intValue = parseInt(text);
+        if (intValue != null) {
+            intOfCode[code] = intValue;
+            intCodes.set(code);
+        }
+        Float floatValue = parseFloat(text);
+        if (floatValue != null) {
+            floatOfCode[code] = floatValue;
+            floatCodes.set(code);
+        }
+    }
+
+    @Override
+    void copyRow(int from, int to) {
+        codes[to] = codes[from];
+    }
+
+    @Override
+    void clearRow(int row) {
+        // codes hold nothing.
+    }
+
+    @Override
+    void resize(int capacity) {
+        this.capacity = capacity;
+        codes = Arrays.copyOf(codes, capacity);
+    }
+
+    // dictionary of texts used by rows, coded again in order of first use, then codes.
+    @Override
+    void write(DataOutputStream out, int[] rows) throws IOException {
+        int[] newCodes = new int[dictionary.size()];
+        Arrays.fill(newCodes, -1);
+        ArrayList<String> texts = new ArrayList<>();
+        int[] rowCodes = new int[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            int code = codes[rows[i]];
+            if (newCodes[code] < 0) {
+                newCodes[code] = texts.size();
+                texts.add(dictionary.get(code));
+            }
+            rowCodes[i] = newCodes[code];
+        }
+        out.writeInt(texts.size());
+        for (String text : texts) {
+            BinaryTableFile.writeString(out, text);
+        }
+        for (int code : rowCodes) {
+            out.writeInt(code);
+        }
+    }
+
+    // each text is parsed once when it enters the dictionary, rows only read codes.
+    @Override
+    void read(ByteBuffer in, int count) {
+        int size = in.getInt();
+        for (int i = 0; i < size; i++) {
+            getOrAddCode(BinaryTableFile.readString(in));
+        }
+        in.asIntBuffer().get(codes, 0, count);
+        in.position(in.position() + count * Integer.BYTES);
+    }
+
+    @Override
+    long estimateSize() {
+        long size = 64 + 4L * capacity + 8L * intOfCode.length;
+        for (String text : dictionary) {
+            size += 80 + text.length(); // entry in dictionary and map.
+        }
+        return size;
+    }
+}
@@ -2,25 +2,120 @@ package edu.uob.tables;
 
 import edu.uob.exceptions.TableException;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.function.BiPredicate;
+import java.util.function.IntPredicate;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.IntStream;
 
 
+// Records are stored column by column, each attribute in a Column of its inferred type.
+// Rows are kept in ascending order of id. A deleted row stays in place until enough rows
+// are deleted to compact the table.
 public class Table {
-    private final static String TABLE_SEPARATOR = "\t";
-    private final HashMap<String, Integer> attributesMap;
-    private final TreeMap<Integer, ArrayList<String>> records;
+    final static String TABLE_SEPARATOR = "\t";
+    private final static int INITIAL_CAPACITY = 16;
+    private final static int MORSEL_SIZE = 16 * 1024; // rows scanned by one task.
+    private final HashMap<String, Integer> attributesMap; // attribute -> index of column.
+    private final ArrayList<String> attributes;
+    private final ArrayList<Column> columns;
+    private final BitSet liveRows;
+    private int[] ids; // id of each row.
+    private int rowCount; // rows in use, include deleted ones.
+    private int liveCount;
+    private final ArrayList<String> journal; // changes since last save, see TableLog.
+    private final LinkedHashMap<String, HashIndex> indexes; // attribute -> index.
+    private boolean isJournaling;
+    private boolean isSchemaChanged;
     private int lastId;
+    // For a table loaded with only some of its attributes (see TableIO.load()): column of
+    // each value of a stored record, -1 if its attribute is not loaded. null if all are.
+    private int[] recordColumns;
+    private final HashSet<String> skippedAttributes;
 
     public Table() {
         lastId = 0;
         attributesMap = new HashMap<>();
-        records = new TreeMap<>();
+        attributes = new ArrayList<>();
+        columns = new ArrayList<>();
+        liveRows = new BitSet();
+        ids = new int[INITIAL_CAPACITY];
+        rowCount = 0;
+        liveCount = 0;
+        journal = new ArrayList<>();
+        indexes = new LinkedHashMap<>();
+        isJournaling = false;
+        isSchemaChanged = false;
+        recordColumns = null;
+        skippedAttributes = new HashSet<>();
     }
 
     public Table(String tableString) throws TableException {
+        this(tableString, Map.of());
+    }
+
+    // column types are known before reading records, so no column need to be widened.
+    Table(String tableString, Map<String, Type> columnTypes) throws TableException {
+        this(tableString, columnTypes, null);
+    }
+
+    // only attributes in projection are loaded if it is not null, fields of others are
+    // skipped without being copied.
+    Table(String tableString, Map<String, Type> columnTypes, Set<String> projection) throws TableException {
+        this();
+        fromString(tableString, columnTypes, projection);
+    }
+
+    // table read from a binary table file, see BinaryTableFile. The first rowCount rows
+    // are all in use, columns have the same capacity as ids. An attribute whose column is
+    // null is not loaded.
+    Table(List<String> attributes, List<Column> columns, int[] ids, int rowCount, int lastId) {
         this();
-        fromString(tableString);
+        for (int i = 0; i < attributes.size(); i++) {
+            if (columns.get(i) == null) continue;
+            attributesMap.put(attributes.get(i), this.attributes.size());
+            this.attributes.add(attributes.get(i));
+            this.columns.add(columns.get(i));
+        }
+        setRecordColumns(attributes);
+        this.ids = ids;
+        this.rowCount = rowCount;
+        this.liveRows.set(0, rowCount);
+        this.liveCount = rowCount;
+        this.lastId = lastId;
+    }
+
+    int getLastId() {
+        return lastId;
+    }
+
+    // called once loaded attributes are added, with all attributes of the table file.
+    private void setRecordColumns(List<String> storedAttributes) {
+        if (storedAttributes.size() == attributes.size()) return; // all loaded.
+        recordColumns = new int[storedAttributes.size()];
+        for (int i = 0; i < recordColumns.length; i++) {
+            Integer column = attributesMap.get(storedAttributes.get(i));
+            recordColumns[i] = column == null ? -1 : column;
+            if (column == null) skippedAttributes.add(storedAttributes.get(i));
+        }
+    }
+
+    // a table missing some attributes only answers queries, it is never changed or saved.
+    boolean isProjected() {
+        return recordColumns != null;
+    }
+
+    // whether none of attributes is left out by loading only some attributes.
+    boolean isLoaded(Collection<String> attributes) {
+        for (String attribute : attributes) {
+            if (skippedAttributes.contains(attribute)) return false;
+        }
+        return true;
     }
 
     private int getIndexOfAttribute(String attributeName) throws TableException {
@@ -30,30 +125,339 @@ public class Table {
         return attributesMap.get(attributeName);
     }
 
+    // row of id, or (-(insertion point) - 1) if there is no such row.
+    private int findRow(int id) {
+        return Arrays.binarySearch(ids, 0, rowCount, id);
+    }
+
+    // row of a record not deleted, or -1.
+    private int findLiveRow(int id) {
+        int row = findRow(id);
+        return row >= 0 && liveRows.get(row) ? row : -1;
+    }
+
+    private int getLiveRow(int id) throws TableException {
+        int row = findLiveRow(id);
+        if (row < 0) throw new TableException.IdNotFoundException(id);
+        return row;
+    }
+
+    public Column getColumn(String attribute) throws TableException {
+        if (attribute.equals("id")) return IntColumn.wrap(ids);
+        return columns.get(getIndexOfAttribute(attribute));
+    }
+
+    public Type getColumnType(String attribute) throws TableException {
+        return getColumn(attribute).getType();
+    }
+
+    // type of each attribute in sequence, 'id' not included.
+    public Map<String, Type> getColumnTypes() {
+        LinkedHashMap<String, Type> types = new LinkedHashMap<>();
+        for (int i = 0; i < attributes.size(); i++) {
+            types.put(attributes.get(i), columns.get(i).getType());
+        }
+        return types;
+    }
+
     // if predicate return true then include that id.
-    public Set<Integer> getIdsByMethod(String attribute, Value referenceValue, BiPredicate<Value, Value> compareMethod) throws TableException {
-        Set<Integer> ids = new TreeSet<>(); // result set
-        // if attribute is id.
-        for (Map.Entry<Integer, ArrayList<String>> record : records.entrySet()) {
-            String valueString = attribute.equals("id") ? //
-                    record.getKey().toString() : //
-                    record.getValue().get(getIndexOfAttribute(attribute));
-            if (compareMethod.test(new Value(valueString, referenceValue.type()),
+    public IdSet getIdsByMethod(String attribute, Value referenceValue, BiPredicate<Value, Value> compareMethod) throws TableException {
+        Column column = getColumn(attribute);
+        IdSet ids = new IdSet(); // result set
+        for (int row = liveRows.nextSetBit(0); row >= 0; row = liveRows.nextSetBit(row + 1)) {
+            if (compareMethod.test(new Value(column.getString(row), referenceValue.type()),
                                    referenceValue)) {
-                ids.add(record.getKey()); // add id to result set
+                ids.add(this.ids[row]); // add id to result set
+            }
+        }
+        return ids;
+    }
+
+    // Bind predicate to the column of attribute, giving a filter of rows of this table.
+    // The filter is only valid until the table is changed.
+    public IntPredicate getRowFilter(String attribute, RowPredicate predicate) throws TableException {
+        Column column = getColumn(attribute);
+        return (row) -> predicate.test(column, row);
+    }
+
+    // ids of rows passing filter, scanning the table once.
+    public IdSet getIdsByFilter(IntPredicate filter) {
+        IdSet ids = new IdSet(); // result set
+        for (int row = liveRows.nextSetBit(0); row >= 0; row = liveRows.nextSetBit(row + 1)) {
+            if (filter.test(row)) {
+                ids.add(this.ids[row]);
+            }
+        }
+        return ids;
+    }
+
+    // Same as getIdsByFilter(filter), but a table of at least parallelThreshold records
+    // is split into morsels of consecutive rows, which are tested on the common ForkJoin
+    // pool and merged in order of id.
+    public IdSet getIdsByFilter(IntPredicate filter, int parallelThreshold) {
+        if (liveCount < parallelThreshold || rowCount <= MORSEL_SIZE) {
+            return getIdsByFilter(filter);
+        }
+        int morselCount = (rowCount + MORSEL_SIZE - 1) / MORSEL_SIZE;
+        List<int[]> morsels = IntStream.range(0, morselCount).parallel().mapToObj(
+                (morsel) -> filterMorsel(filter, morsel * MORSEL_SIZE,
+                                         Math.min(rowCount, (morsel + 1) * MORSEL_SIZE)))
+                                       .toList();
+        IdSet ids = new IdSet(); // result set
+        for (int[] morsel : morsels) {
+            for (int id : morsel) {
+                ids.add(id);
             }
         }
         return ids;
     }
 
-    public Set<Integer> getIds() {
-        return records.keySet();
+    // ids of candidates passing filter, without scanning other rows.
+    public IdSet getIdsByFilter(IdSet candidates, IntPredicate filter) {
+        IdSet ids = new IdSet(); // result set
+        candidates.forEachId((id) -> {
+            int row = findLiveRow(id);
+            if (row >= 0 && filter.test(row)) {
+                ids.add(id);
+            }
+        });
+        return ids;
+    }
+
+    // ids of rows from start to end (exclusive) passing filter.
+    private int[] filterMorsel(IntPredicate filter, int start, int end) {
+        IntStream.Builder result = IntStream.builder();
+        for (int row = liveRows.nextSetBit(start); row >= 0 && row < end;
+             row = liveRows.nextSetBit(row + 1)) {
+            if (filter.test(row)) {
+                result.add(ids[row]);
+            }
+        }
+        return result.build().toArray();
+    }
+
+    // Index attribute for conditions comparing with ==, see HashIndex. An ordered index
+    // also answers <, <=, > and >=, see OrderedIndex, and a trigram index also answers
+    // LIKE, see TrigramIndex.
+    public void createIndex(String attribute, IndexType type) throws TableException {
+        if (attribute.equals("id")) {
+            throw new TableException.InvalidTableOperationException(
+                    "Primary key is indexed already.");
+        }
+        if (indexes.containsKey(attribute)) {
+            throw new TableException.InvalidTableOperationException(
+                    "Index on " + attribute + " exists.");
+        }
+        getIndexOfAttribute(attribute); // check existence.
+        indexes.put(attribute, buildIndex(attribute, type));
+        isSchemaChanged = true;
+    }
+
+    public void createIndex(String attribute) throws TableException {
+        createIndex(attribute, IndexType.HASH);
+    }
+
+    public boolean hasIndex(String attribute) {
+        return indexes.containsKey(attribute);
+    }
+
+    // ids of records whose value of attribute == referenceValue, or null if attribute is
+    // not indexed. 'id' is always indexed, see findIdRows().
+    public IdSet getIdsByIndex(String attribute, Value referenceValue) {
+        if (attribute.equals("id")) {
+            int[] rows = findIdRows(referenceValue, false, false, true);
+            return rows == null ? new IdSet() : getIdsOfRows(rows[0], rows[1]);
+        }
+        HashIndex index = indexes.get(attribute);
+        return index == null ? null : index.find(referenceValue);
+    }
+
+    // Number of records whose value of attribute compared with referenceValue (INT or
+    // FLOAT) is greater, or less, also equal if isInclusive. Return -1 if attribute has no
+    // ordered index, 'id' always has.
+    public int countIdsByRange(String attribute, Value referenceValue, boolean isGreater, boolean isInclusive) {
+        if (attribute.equals("id")) {
+            int[] rows = findIdRows(referenceValue, isGreater, !isGreater, isInclusive);
+            return liveRows.get(rows[0], rows[1]).cardinality();
+        }
+        if (!(indexes.get(attribute) instanceof OrderedIndex index)) return -1;
+        return index.countRange(referenceValue, isGreater, isInclusive);
+    }
+
+    // ids of those records, or null if attribute has no ordered index.
+    public IdSet getIdsByRange(String attribute, Value referenceValue, boolean isGreater, boolean isInclusive) {
+        if (attribute.equals("id")) {
+            int[] rows = findIdRows(referenceValue, isGreater, !isGreater, isInclusive);
+            return getIdsOfRows(rows[0], rows[1]);
+        }
+        if (!(indexes.get(attribute) instanceof OrderedIndex index)) return null;
+        return index.findRange(referenceValue, isGreater, isInclusive);
+    }
+
+    // ids of records whose value of attribute contains pattern, or null if attribute has
+    // no trigram index or pattern is too short for it.
+    public IdSet getIdsByLike(String attribute, String pattern) {
+        if (!(indexes.get(attribute) instanceof TrigramIndex index)) return null;
+        return index.findLike(pattern);
+    }
+
+    // Rows from start to end (exclusive) whose id compared with reference is equal if
+    // isInclusive, also greater if isGreater, or less if isLess. As rows are in ascending order of id, they
+    // are found by binary search, comparing ids as a scan does (see Condition). Return
+    // null if reference is not a number, then only == may match, by the text of id.
+    private int[] findIdRows(Value reference, boolean isGreater, boolean isLess, boolean isInclusive) {
+        IntColumn column = IntColumn.wrap(ids);
+        IntUnaryOperator compare;
+        if (reference.type() == Type.INT) {
+            Integer number = Column.parseInt(reference.valueString());
+            // out of range of int, all ids compare as -1.
+            compare = number == null ? (row) -> -1 : (row) -> column.compareInt(row, number);
+        }
+        else if (reference.type() == Type.FLOAT) {
+            float number = Float.parseFloat(reference.valueString());
+            compare = (row) -> column.compareFloat(row, number);
+        }
+        else if (reference.type() == Type.STRING) {
+            Integer number = Column.parseInt(reference.valueString());
+            if (number == null || !number.toString().equals(reference.valueString())) {
+                return null;
+            }
+            compare = (row) -> Integer.compare(ids[row], number);
+        }
+        else return null; // BOOL or NULL never equals an id.
+        int firstEqual = searchRow(compare, 0);
+        int firstGreater = searchRow(compare, 1);
+        int start = isLess ? 0 : isInclusive ? firstEqual : firstGreater;
+        int end = isGreater ? rowCount : isInclusive ? firstGreater : firstEqual;
+        return new int[]{start, Math.max(start, end)};
+    }
+
+    // first row of which compare is at least limit, compare ascends with row.
+    private int searchRow(IntUnaryOperator compare, int limit) {
+        int low = 0, high = rowCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (Integer.signum(compare.applyAsInt(middle)) < limit) low = middle + 1;
+            else high = middle;
+        }
+        return low;
+    }
+
+    // ids of live rows from start to end (exclusive).
+    private IdSet getIdsOfRows(int start, int end) {
+        IdSet result = new IdSet();
+        for (int row = liveRows.nextSetBit(start); row >= 0 && row < end;
+             row = liveRows.nextSetBit(row + 1)) {
+            result.add(ids[row]);
+        }
+        return result;
+    }
+
+    Map<String, HashIndex> getIndexes() {
+        return indexes;
+    }
+
+    // Copy sharing nothing with this table, so that one is changed while the other is read
+    // (see TableCache). Columns are copied as BinaryTableFile stores them, so deleted rows
+    // are left out. A table loaded with only some attributes is never copied.
+    Table copy() {
+        int[] rows = getRows();
+        int capacity = Math.max(rows.length, INITIAL_CAPACITY);
+        int[] copiedIds = new int[capacity];
+        List<Column> copiedColumns = new ArrayList<>(columns.size());
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            for (int i = 0; i < rows.length; i++) {
+                copiedIds[i] = ids[rows[i]];
+            }
+            for (Column column : columns) {
+                bytes.reset();
+                column.write(out, rows);
+                out.flush();
+                Column copied = Column.create(Column.getKind(column), capacity);
+                copied.read(ByteBuffer.wrap(bytes.toByteArray()), rows.length);
+                copiedColumns.add(copied);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // never thrown by ByteArrayOutputStream.
+        }
+        Table copy = new Table(attributes, copiedColumns, copiedIds, rows.length, lastId);
+        for (Map.Entry<String, HashIndex> index : indexes.entrySet()) {
+            copy.indexes.put(index.getKey(), index.getValue().copy());
+        }
+        copy.journal.addAll(journal);
+        copy.isJournaling = isJournaling;
+        copy.isSchemaChanged = isSchemaChanged;
+        return copy;
+    }
+
+    // index read by IndexFile, or an empty one to be built from the table.
+    void putIndex(String attribute, HashIndex index, boolean isBuilt) {
+        if (!attributesMap.containsKey(attribute)) return; // dropped.
+        indexes.put(attribute, isBuilt ? index : buildIndex(attribute, index.getType()));
+    }
+
+    private HashIndex buildIndex(String attribute, IndexType type) {
+        Column column = columns.get(attributesMap.get(attribute));
+        HashIndex index = HashIndex.create(type);
+        for (int row = liveRows.nextSetBit(0); row >= 0; row = liveRows.nextSetBit(row + 1)) {
+            index.add(column.getString(row), ids[row]);
+        }
+        return index;
+    }
+
+    // add values of a live row to indexes, or remove them.
+    private void indexRow(int row, boolean isAdding) {
+        for (Map.Entry<String, HashIndex> entry : indexes.entrySet()) {
+            String value = columns.get(attributesMap.get(entry.getKey())).getString(row);
+            if (isAdding) entry.getValue().add(value, ids[row]);
+            else entry.getValue().remove(value, ids[row]);
+        }
+    }
+
+    // set a value of a live row, keeping index of its attribute.
+    private void updateCell(int index, int row, String value) {
+        HashIndex hashIndex = indexes.get(attributes.get(index));
+        if (hashIndex != null) hashIndex.remove(columns.get(index).getString(row), ids[row]);
+        setCell(index, row, value);
+        if (hashIndex != null) hashIndex.add(value, ids[row]);
+    }
+
+    public IdSet getIds() {
+        IdSet result = new IdSet();
+        for (int row = liveRows.nextSetBit(0); row >= 0; row = liveRows.nextSetBit(row + 1)) {
+            result.add(ids[row]);
+        }
+        return result;
+    }
+
+    // rows of records not deleted, in ascending order of id. Rows are valid until the
+    // table is changed, see getColumn() and getRowValues().
+    public int[] getRows() {
+        return liveRows.stream().toArray();
+    }
+
+    // rows of records of ids not deleted, in ascending order of id.
+    public int[] getRows(IdSet ids) {
+        int[] rows = new int[ids.size()];
+        int[] count = {0};
+        ids.forEachId((id) -> {
+            int row = findLiveRow(id);
+            if (row >= 0) rows[count[0]++] = row;
+        });
+        return count[0] == rows.length ? rows : Arrays.copyOf(rows, count[0]);
+    }
+
+    public int getRecordCount() {
+        return liveCount;
     }
 
     // insert record with provided id.
     public void insertRecord(List<String> record, int id) throws TableException {
         // attributes of a record should be matched. 'id' not included.
-        if (records.containsKey(id)) {
+        int row = findRow(id);
+        if (row >= 0 && liveRows.get(row)) {
             throw new TableException.InvalidTableOperationException(
                     "Duplicate primary key.");
         }
@@ -62,20 +466,145 @@ public class Table {
                     attributesMap.size() + " value(s) expected but " + record.size() +
                     " value(s) inserted.");
         }
-        records.put(id, new ArrayList<>(record));
+        if (row < 0) row = insertRow(-row - 1, id);
+        setRow(row, record);
         // update lastId.
         this.lastId = Math.max(id, this.lastId);
+        if (isJournaling) journal.add(TableLog.insertRecord(id, record));
     }
 
     // insert record with generated id.
     public void insertRecord(List<String> record) throws TableException {
-        insertRecord(record, ++lastId);
+        insertRecord(record, lastId + 1); // lastId is only updated on success.
+    }
+
+    // Append records read by BulkLoader after the last row, with ids following the last
+    // id. fitMasks[i] holds the column types accepting every value of attribute i (see
+    // Column.getFitMask()), so a column is widened at most once, and values are set column
+    // by column in parallel. Records are not journaled, the table file is rewritten once.
+    void appendRecords(List<List<String[]>> chunks, int[] fitMasks) {
+        int count = chunks.stream().mapToInt(List::size).sum();
+        int start = rowCount;
+        if (start + count > ids.length) {
+            ids = Arrays.copyOf(ids, start + count);
+            for (Column column : columns) {
+                column.resize(ids.length);
+            }
+        }
+        for (int index = 0; index < columns.size(); index++) {
+            columns.set(index, Column.widen(columns.get(index), fitMasks[index], liveRows,
+                                            ids.length));
+        }
+        for (int row = start; row < start + count; row++) {
+            ids[row] = ++lastId;
+        }
+        IntStream columnIndexes = IntStream.range(0, columns.size());
+        (count >= MORSEL_SIZE ? columnIndexes.parallel() : columnIndexes).forEach((index) -> {
+            Column column = columns.get(index);
+            int row = start;
+            for (List<String[]> chunk : chunks) {
+                for (String[] record : chunk) {
+                    column.set(row++, record[index]);
+                }
+            }
+        });
+        rowCount += count;
+        liveRows.set(start, rowCount);
+        liveCount += count;
+        for (int row = start; row < rowCount; row++) {
+            indexRow(row, true);
+        }
+        isSchemaChanged = true;
+    }
+
+    // insert records with generated ids, all or none of them.
+    public void insertRecords(List<List<String>> records) throws TableException {
+        for (List<String> record : records) {
+            if (record.size() != attributesMap.size()) {
+                throw new TableException.InvalidTableOperationException(
+                        attributesMap.size() + " value(s) expected but " + record.size() +
+                        " value(s) inserted.");
+            }
+        }
+        for (List<String> record : records) {
+            insertRecord(record);
+        }
+    }
+
+    private void setRow(int row, List<String> record) {
+        if (liveRows.get(row)) indexRow(row, false);
+        for (int column = 0; column < record.size(); column++) {
+            setCell(column, row, record.get(column));
+        }
+        if (!liveRows.get(row)) {
+            liveRows.set(row);
+            liveCount++;
+        }
+        indexRow(row, true);
+    }
+
+    private void setCell(int index, int row, String value) {
+        Column column = columns.get(index);
+        if (!column.fits(value)) {
+            column = Column.widen(column, value, liveRows, ids.length);
+            columns.set(index, column);
+        }
+        column.set(row, value);
+    }
+
+    // make room for a new row at position, rows after it move one step back.
+    private int insertRow(int position, int id) {
+        if (rowCount == ids.length) {
+            int capacity = Column.grow(ids.length, rowCount + 1);
+            ids = Arrays.copyOf(ids, capacity);
+            for (Column column : columns) {
+                column.resize(capacity);
+            }
+        }
+        for (int row = rowCount; row > position; row--) {
+            moveRow(row - 1, row);
+        }
+        ids[position] = id;
+        liveRows.clear(position);
+        rowCount++;
+        return position;
+    }
+
+    private void moveRow(int from, int to) {
+        ids[to] = ids[from];
+        liveRows.set(to, liveRows.get(from));
+        for (Column column : columns) {
+            column.copyRow(from, to);
+        }
     }
 
     public void deleteRecord(int id) throws TableException {
-        if (!records.containsKey(id))
+        int row = findLiveRow(id);
+        if (row < 0)
             throw new TableException.InvalidTableOperationException("Id not exist.");
-        records.remove(id);
+        indexRow(row, false);
+        liveRows.clear(row);
+        liveCount--;
+        if (isJournaling) journal.add(TableLog.deleteRecord(id));
+        compactIfSparse();
+    }
+
+    // remove deleted rows once they are more than half of all rows.
+    private void compactIfSparse() {
+        int deletedCount = rowCount - liveCount;
+        if (deletedCount <= INITIAL_CAPACITY || deletedCount <= liveCount) return;
+        int target = 0;
+        for (int row = liveRows.nextSetBit(0); row >= 0; row = liveRows.nextSetBit(row + 1)) {
+            if (row != target) moveRow(row, target);
+            target++;
+        }
+        for (int row = target; row < rowCount; row++) {
+            for (Column column : columns) {
+                column.clearRow(row);
+            }
+        }
+        liveRows.clear(target, rowCount);
+        rowCount = target;
     }
 
     public void addAttribute(String name) throws TableException {
@@ -83,10 +612,13 @@ public class Table {
         if (attributesMap.containsKey(name) || name.equals("id")) {
             throw new TableException.AttributeDuplicatedException(name);
         }
-        attributesMap.put(name, attributesMap.size());
-        for (ArrayList<String> record : records.values()) {
+        attributesMap.put(name, attributes.size());
+        attributes.add(name);
+        columns.add(Column.create(Type.NULL, ids.length));
+        isSchemaChanged = true;
+        for (int row = 0; row < rowCount; row++) {
             // new attribute created but no value put in yet.
-            record.add("NULL");
+            setCell(columns.size() - 1, row, "NULL");
         }
     }
 
@@ -100,53 +632,145 @@ public class Table {
         if (!attributesMap.containsKey(name)) {
             throw new TableException.AttributeMissingException(name);
         }
-        // remove this column in all records.
+        // remove this column.
         int column = attributesMap.remove(name);
-        for (ArrayList<String> record : records.values()) {
-            record.remove(column);
+        indexes.remove(name);
+        isSchemaChanged = true;
+        attributes.remove(column);
+        columns.remove(column);
+        for (int i = column; i < attributes.size(); i++) {
+            attributesMap.put(attributes.get(i), i);
         }
     }
 
     public void setValue(String attribute, String value, int id) throws TableException {
+        checkSettable(attribute);
+        int row = getLiveRow(id);
+        updateCell(getIndexOfAttribute(attribute), row, value);
+        if (isJournaling) journal.add(TableLog.updateRecord(id, attribute, value));
+    }
+
+    // throw if values of attribute cannot be set.
+    public void checkSettable(String attribute) throws TableException {
         if (attribute.equals("id")) {
             throw new TableException.InvalidTableOperationException(
                     "Cannot update primary key.");
         }
-        if (!records.containsKey(id)) throw new TableException.IdNotFoundException(id);
-        records.get(id).set(getIndexOfAttribute(attribute), value);
+        getIndexOfAttribute(attribute);
+    }
+
+    // Start recording changes from the current state, which is what the table file and its
+    // log contain. Called by TableIO after loading or saving.
+    void beginJournal() {
+        journal.clear();
+        isJournaling = true;
+        isSchemaChanged = false;
+    }
+
+    List<String> getJournal() {
+        return journal;
+    }
+
+    // the table file has to be rewritten if changes cannot be expressed by log records.
+    boolean needsRewrite() {
+        return !isJournaling || isSchemaChanged;
+    }
+
+    // === replay of TableLog, a record not matching the attributes of the table throws. ===
+
+    void replayInsert(int id, List<String> record) throws TableException {
+        if (recordColumns != null) record = getLoadedValues(record);
+        if (record == null || record.size() != attributesMap.size()) {
+            throw new TableException.InvalidImportStringException(
+                    "Log record of " + id + " does not match attributes of table");
+        }
+        int row = findRow(id);
+        if (row < 0) row = insertRow(-row - 1, id);
+        setRow(row, record);
+        lastId = Math.max(id, lastId);
+    }
+
+    void replayUpdate(int id, String attribute, String value) throws TableException {
+        Integer column = attributesMap.get(attribute);
+        if (column == null) {
+            if (skippedAttributes.contains(attribute)) return;
+            throw new TableException.InvalidImportStringException(
+                    "Log record of " + id + " updates unknown attribute " + attribute);
+        }
+        int row = findLiveRow(id);
+        if (row < 0) return;
+        updateCell(column, row, value);
+    }
+
+    // values of loaded attributes in a stored record, null if the record does not match.
+    private List<String> getLoadedValues(List<String> record) {
+        if (record.size() != recordColumns.length) return null;
+        String[] values = new String[attributes.size()];
+        for (int i = 0; i < recordColumns.length; i++) {
+            if (recordColumns[i] >= 0) values[recordColumns[i]] = record.get(i);
+        }
+        return Arrays.asList(values);
+    }
+
+    void replayDelete(int id) {
+        int row = findLiveRow(id);
+        if (row < 0) return;
+        indexRow(row, false);
+        liveRows.clear(row);
+        liveCount--;
+        compactIfSparse();
     }
 
     public String getValue(String attribute, int id) throws TableException {
         String value;
-        if (!records.containsKey(id)) throw new TableException.IdNotFoundException(id);
+        int row = getLiveRow(id);
         if (attribute.equals("id")) value = "" + id;
-        else value = records.get(id).get(getIndexOfAttribute(attribute));
+        else value = columns.get(getIndexOfAttribute(attribute)).getString(row);
         return value;
     }
 
     public List<String> getValues(int id) throws TableException {
-        if (!records.containsKey(id)) throw new TableException.IdNotFoundException(id);
-        return new ArrayList<>(records.get(id));
+        return getRowValues(getLiveRow(id));
     }
 
-    public List<String> getAttributeList() {
-        // make sure attributes are in correct sequence.
-        TreeMap<Integer, String> sortedMap = new TreeMap<>();
-        for (Map.Entry<String, Integer> pair : attributesMap.entrySet()) {
-            sortedMap.put(pair.getValue(), pair.getKey());
+    // values of a row from getRows(), 'id' not included.
+    public List<String> getRowValues(int row) {
+        ArrayList<String> values = new ArrayList<>(columns.size());
+        for (Column column : columns) {
+            values.add(column.getString(row));
         }
+        return values;
+    }
+
+    public List<String> getAttributeList() {
         ArrayList<String> result = new ArrayList<>();
         result.add("id");
-        result.addAll(sortedMap.values());
+        result.addAll(attributes);
         return result;
     }
 
+    // rough heap usage of this table in bytes, used by TableCache to keep within capacity.
+    public long estimateSize() {
+        final int objectHeader = 16;
+        long size = objectHeader + (long) Integer.BYTES * ids.length + ids.length / 8;
+        for (String attribute : attributes) {
+            size += objectHeader * 3 + attribute.length();
+        }
+        for (Column column : columns) {
+            size += column.estimateSize();
+        }
+        for (HashIndex index : indexes.values()) {
+            size += index.estimateSize();
+        }
+        return size;
+    }
+
     private String generateRecordsString() {
         StringBuilder result = new StringBuilder();
-        for (Map.Entry<Integer, ArrayList<String>> record : records.entrySet()) {
-            result.append(record.getKey());
-            for (String value : record.getValue()) {
-                result.append(TABLE_SEPARATOR).append(value);
+        for (int row = liveRows.nextSetBit(0); row >= 0; row = liveRows.nextSetBit(row + 1)) {
+            result.append(ids[row]);
+            for (Column column : columns) {
+                result.append(TABLE_SEPARATOR).append(column.getString(row));
             }
             result.append('\n');
         }
@@ -154,14 +778,8 @@ public class Table {
     }
 
     private String generateAttributesString() {
-        // make sure attributes are in correct sequence.
-        TreeMap<Integer, String> sortedMap = new TreeMap<>();
-        for (Map.Entry<String, Integer> pair : attributesMap.entrySet()) {
-            sortedMap.put(pair.getValue(), pair.getKey());
-        }
-        // append string
         StringBuilder result = new StringBuilder("id");
-        for (String attribute : sortedMap.values()) {
+        for (String attribute : attributes) {
             result.append(TABLE_SEPARATOR).append(attribute);
         }
         return result.append('\n').toString();
@@ -173,14 +791,8 @@ public class Table {
     }
 
     private String generateAttributeStringNoId() {
-        // make sure attributes are in correct sequence.
-        TreeMap<Integer, String> sortedMap = new TreeMap<>();
-        for (Map.Entry<String, Integer> pair : attributesMap.entrySet()) {
-            sortedMap.put(pair.getValue(), pair.getKey());
-        }
-        // append string
         StringBuilder result = new StringBuilder();
-        for (String attribute : sortedMap.values()) {
+        for (String attribute : attributes) {
             result.append(attribute).append(TABLE_SEPARATOR);
         }
         return result.deleteCharAt(result.length() - 1).append("\n").toString();
@@ -188,9 +800,9 @@ public class Table {
 
     private String generateRecordsStringNoId() {
         StringBuilder result = new StringBuilder();
-        for (ArrayList<String> record : records.values()) {
-            for (String value : record) {
-                result.append(value).append(TABLE_SEPARATOR);
+        for (int row = liveRows.nextSetBit(0); row >= 0; row = liveRows.nextSetBit(row + 1)) {
+            for (Column column : columns) {
+                result.append(column.getString(row)).append(TABLE_SEPARATOR);
             }
             result.deleteCharAt(result.length() - 1).append("\n");
         }
@@ -202,42 +814,75 @@ public class Table {
     }
 
     private void readRecordsFormLine(String recordsLine) throws TableException {
+        if (recordColumns != null) {
+            readLoadedValuesFromLine(recordsLine);
+            return;
+        }
         ArrayList<String> values = new ArrayList<>(
                 Arrays.asList(recordsLine.split(TABLE_SEPARATOR)));
         // first value should be id.
         int id = Integer.parseInt(values.remove(0));
         // insert values. check duplicated id first.
-        if (records.containsKey(id)) {
+        if (findLiveRow(id) >= 0) {
             throw new TableException.InvalidImportStringException(
                     "Duplicated key: " + id + ".");
         }
         insertRecord(values, id);
     }
 
-    private void readAttributeFromLine(String attributesLine) throws TableException {
+    // fields of attributes not loaded are skipped without being copied.
+    private void readLoadedValuesFromLine(String recordsLine) throws TableException {
+        int end = recordsLine.indexOf(TABLE_SEPARATOR);
+        int id = Integer.parseInt(end < 0 ? recordsLine : recordsLine.substring(0, end));
+        String[] values = new String[attributes.size()];
+        int field = 0;
+        while (end >= 0) {
+            int start = end + 1;
+            end = recordsLine.indexOf(TABLE_SEPARATOR, start);
+            if (field < recordColumns.length && recordColumns[field] >= 0) {
+                values[recordColumns[field]] = end < 0 ? recordsLine.substring(start) :
+                                               recordsLine.substring(start, end);
+            }
+            field++;
+        }
+        if (field != recordColumns.length) {
+            throw new TableException.InvalidTableOperationException(
+                    recordColumns.length + " value(s) expected but " + field +
+                    " value(s) inserted.");
+        }
+        if (findLiveRow(id) >= 0) {
+            throw new TableException.InvalidImportStringException(
+                    "Duplicated key: " + id + ".");
+        }
+        insertRecord(Arrays.asList(values), id);
+    }
+
+    private void readAttributeFromLine(String attributesLine, Set<String> projection) throws TableException {
         ArrayList<String> attributes = new ArrayList<>(
                 Arrays.asList(attributesLine.split(TABLE_SEPARATOR)));
         // remove first attribute which is id.
         if (attributes.remove(0).equals("id")) {
             for (String attribute : attributes) {
-                addAttribute(attribute);
+                if (projection == null || projection.contains(attribute)) addAttribute(attribute);
             }
+            setRecordColumns(attributes);
         }
         else {
             throw new TableException.InvalidImportStringException("Missing primary key.");
         }
     }
 
-    private void fromString(String tableString) throws TableException {
-        // erase all data first.
-        attributesMap.clear();
-        records.clear();
-        lastId = 0;
+    private void fromString(String tableString, Map<String, Type> columnTypes, Set<String> projection) throws TableException {
         // trim all trailing line or space
         Scanner scanner = new Scanner(tableString.trim());
         // get first line as attributes.
         if (scanner.hasNextLine()) {
-            readAttributeFromLine(scanner.nextLine());
+            readAttributeFromLine(scanner.nextLine(), projection);
+        }
+        // create columns of known type.
+        for (Map.Entry<String, Type> columnType : columnTypes.entrySet()) {
+            Integer index = attributesMap.get(columnType.getKey());
+            if (index != null) columns.set(index, Column.create(columnType.getValue(), ids.length));
         }
         // other lines are records.
         while (scanner.hasNextLine()) {
@@ -245,4 +890,3 @@ public class Table {
         }
     }
 }
-
@@ -0,0 +1,238 @@
+package edu.uob.tables;
+
+import edu.uob.exceptions.TableException;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+// Server-wide buffer pool of parsed tables. Tables are kept in least-recently-used order and
+// evicted once the estimated size of all cached tables exceeds the capacity.
+//     Queries read versions of tables pinned by pin(), which are never changed: a command
+// changing a pinned table changes a copy of it (copy-on-write), which is seen by queries
+// starting after it is saved. A table not pinned is changed in place, then queries wait
+// until it is saved. An old version is left to the garbage collector once no query pins
+// it and a newer version replaced it in the cache.
+//     The monitor of the cache only guards its maps: tables are read from and written to
+// file, and copied, without it, so that a slow table never holds up the others. A table
+// is read by one thread at a time, others wanting it wait for that read (see Read).
+public class TableCache {
+    public static final long DEFAULT_CAPACITY = 64L * 1024 * 1024; // 64 MiB
+
+    private final LinkedHashMap<Path, Entry> entries;
+    private final long capacity;
+    private final TableCheckpointer checkpointer; // nullable
+    private long usedBytes;
+    // tables pinned by queries running -> number of queries.
+    private final IdentityHashMap<Table, Integer> readers;
+    // tables being changed in place, not to be read until saved or invalidated.
+    private final HashSet<Path> changing;
+    // tables being read from file.
+    private final HashMap<Path, Read> reads;
+
+    public TableCache(long capacity, TableCheckpointer checkpointer) {
+        this.entries = new LinkedHashMap<>(16, 0.75f, true); // access order
+        this.capacity = capacity;
+        this.checkpointer = checkpointer;
+        this.usedBytes = 0;
+        this.readers = new IdentityHashMap<>();
+        this.changing = new HashSet<>();
+        this.reads = new HashMap<>();
+    }
+
+    public TableCache(long capacity) {
+        this(capacity, null);
+    }
+
+    public TableCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    private static Path getKey(File file) {
+        return file.toPath().toAbsolutePath().normalize();
+    }
+
+    // get a cached table, or read it from file if it is not cached yet.
+    public Table load(File file) throws TableException {
+        return load(file, null, false);
+    }
+
+    // Get a cached table having at least attributes in projection, or read only those
+    // attributes from file. The table read is cached until a query needs other attributes,
+    // then they are read together with those cached, or until the whole table is needed.
+    // It must not be changed.
+    public Table load(File file, Set<String> projection) throws TableException {
+        return load(file, projection, false);
+    }
+
+    // Get a version of table to be read by a query, with at least attributes in projection
+    // (all if it is null), and keep it unchanged until unpin().
+    public Table pin(File file, Set<String> projection) throws TableException {
+        return load(file, projection, true);
+    }
+
+    public synchronized void unpin(Table table) {
+        readers.computeIfPresent(table, (key, count) -> count > 1 ? count - 1 : null);
+    }
+
+    // Get table to be changed and saved by a command, the only one changing it. A pinned
+    // table is copied, otherwise it is changed in place until save(), invalidate() or
+    // endChange(). The copy is made without the monitor, as a pinned table never changes.
+    public Table loadForChange(File file) throws TableException {
+        Table table = load(file);
+        synchronized (this) {
+            if (!readers.containsKey(table)) {
+                changing.add(getKey(file));
+                return table;
+            }
+        }
+        return table.copy();
+    }
+
+    // A table of projection (all attributes if it is null) pinned in the same step it is
+    // taken from the cache, or read from file, so that loadForChange() sees the pin.
+    private Table load(File file, Set<String> projection, boolean isPinned) throws TableException {
+        Path key = getKey(file);
+        Read read;
+        synchronized (this) {
+            while ((isPinned && changing.contains(key)) || reads.containsKey(key)) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new TableException.ReadTableFailedException(file.toString());
+                }
+            }
+            Entry entry = entries.get(key);
+            if (entry != null && (projection == null ? !entry.table.isProjected() :
+                                  entry.table.isLoaded(projection))) {
+                if (isPinned) readers.merge(entry.table, 1, Integer::sum);
+                return entry.table;
+            }
+            if (entry != null && projection != null) {
+                projection = new HashSet<>(projection);
+                projection.addAll(entry.table.getAttributeList());
+            }
+            read = new Read();
+            reads.put(key, read);
+        }
+        Table table = null;
+        try {
+            table = TableIO.load(file, projection);
+        } finally {
+            synchronized (this) {
+                reads.remove(key);
+                if (table != null) {
+                    if (!read.isStale) put(key, table);
+                    if (isPinned) readers.merge(table, 1, Integer::sum);
+                }
+                notifyAll();
+            }
+        }
+        return table;
+    }
+
+    // A command changing table of file ends, a table changed in place but not saved may be
+    // partly changed, and is read again next time.
+    public synchronized void endChange(File file) {
+        if (changing.contains(getKey(file))) invalidate(file);
+    }
+
+    // Write table to file and keep the written version in cache. Saves of a table are made
+    // one at a time by the command changing it, see DBServer.
+    public void save(Table table, File file) throws TableException {
+        Path key = getKey(file);
+        try {
+            long logSize = TableIO.save(table, file);
+            if (logSize > 0 && checkpointer != null) checkpointer.logAppended(file, logSize);
+        } catch (TableException e) {
+            // cached table is ahead of the file now, read it again next time.
+            invalidate(file);
+            throw e;
+        }
+        synchronized (this) {
+            markStale(key);
+            put(key, table);
+            if (changing.remove(key)) notifyAll();
+        }
+    }
+
+    public synchronized void invalidate(File file) {
+        Path key = getKey(file);
+        markStale(key);
+        remove(key);
+        if (changing.remove(key)) notifyAll();
+    }
+
+    // drop all tables stored under the directory, used when a database get dropped.
+    public synchronized void invalidateDirectory(File directory) {
+        Path directoryKey = getKey(directory);
+        Iterator<Map.Entry<Path, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Path, Entry> entry = iterator.next();
+            if (entry.getKey().startsWith(directoryKey)) {
+                usedBytes -= entry.getValue().size;
+                iterator.remove();
+            }
+        }
+        for (Map.Entry<Path, Read> read : reads.entrySet()) {
+            if (read.getKey().startsWith(directoryKey)) read.getValue().isStale = true;
+        }
+        if (changing.removeIf((key) -> key.startsWith(directoryKey))) notifyAll();
+    }
+
+    public synchronized boolean contains(File file) {
+        return entries.containsKey(getKey(file));
+    }
+
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+
+    private void put(Path key, Table table) {
+        remove(key);
+        Entry entry = new Entry(table, table.estimateSize());
+        entries.put(key, entry);
+        usedBytes += entry.size;
+        evict();
+    }
+
+    private void remove(Path key) {
+        Entry entry = entries.remove(key);
+        if (entry != null) usedBytes -= entry.size;
+    }
+
+    // remove least recently used tables until cache fit in capacity.
+    private void evict() {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (usedBytes > capacity && iterator.hasNext()) {
+            usedBytes -= iterator.next().size;
+            iterator.remove();
+        }
+    }
+
+    // a table read meanwhile may be older than the file, it is not cached.
+    private void markStale(Path key) {
+        Read read = reads.get(key);
+        if (read != null) read.isStale = true;
+    }
+
+    private record Entry(Table table, long size) {
+    }
+
+    // A table being read from file, guarded by the cache. It is stale once the file is
+    // saved or invalidated before the read ends.
+    private static final class Read {
+        private boolean isStale;
+    }
+}
@@ -0,0 +1,123 @@
+package edu.uob.tables;
+
+import edu.uob.exceptions.TableException;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Folds table logs into table files on a background thread. A table is checkpointed once
+// its log grows over the size threshold, or once its oldest pending change is older than
+// the interval. Queries never wait for a checkpoint, see TableIO.checkpoint.
+public class TableCheckpointer implements AutoCloseable {
+    public static final long DEFAULT_SIZE_THRESHOLD = 1024 * 1024; // 1 MiB
+    public static final long DEFAULT_INTERVAL_MILLIS = 10_000;
+
+    private final long sizeThreshold;
+    private final long intervalNanos;
+    private final ScheduledExecutorService executor;
+    // table file -> time of its first change not checkpointed yet.
+    private final ConcurrentHashMap<File, Long> pendingTables;
+    // metrics
+    private final AtomicLong checkpointCount = new AtomicLong();
+    private final AtomicLong totalDurationNanos = new AtomicLong();
+    private final AtomicLong lastDurationNanos = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final AtomicLong failureCount = new AtomicLong();
+
+    public TableCheckpointer(long sizeThreshold, long intervalMillis) {
+        this.sizeThreshold = sizeThreshold;
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+        this.pendingTables = new ConcurrentHashMap<>();
+        this.executor = Executors.newSingleThreadScheduledExecutor((runnable) -> {
+            Thread thread = new Thread(runnable, "table-checkpointer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::checkpointExpired, intervalMillis,
+                                        intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public TableCheckpointer() {
+        this(DEFAULT_SIZE_THRESHOLD, DEFAULT_INTERVAL_MILLIS);
+    }
+
+    // called after changes of table have been appended to its log.
+    public void logAppended(File tableFile, long logSize) {
+        File key = tableFile.getAbsoluteFile();
+        pendingTables.putIfAbsent(key, System.nanoTime());
+        if (logSize >= sizeThreshold) {
+            executor.execute(() -> checkpoint(key));
+        }
+    }
+
+    // checkpoint all pending tables and wait until they are done.
+    public void checkpointAll() throws InterruptedException {
+        try {
+            executor.submit(() -> {
+                for (File tableFile : pendingTables.keySet()) {
+                    checkpoint(tableFile);
+                }
+            }).get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private void checkpointExpired() {
+        long now = System.nanoTime();
+        for (Map.Entry<File, Long> entry : pendingTables.entrySet()) {
+            if (now - entry.getValue() >= intervalNanos) {
+                checkpoint(entry.getKey());
+            }
+        }
+    }
+
+    private void checkpoint(File tableFile) {
+        // changes appended from now on wait for the next checkpoint.
+        if (pendingTables.remove(tableFile) == null) return;
+        long start = System.nanoTime();
+        try {
+            long bytes = TableIO.checkpoint(tableFile);
+            if (bytes < 0) return; // nothing to fold.
+            long duration = System.nanoTime() - start;
+            checkpointCount.incrementAndGet();
+            totalDurationNanos.addAndGet(duration);
+            lastDurationNanos.set(duration);
+            bytesWritten.addAndGet(bytes);
+        } catch (TableException e) {
+            failureCount.incrementAndGet();
+            pendingTables.putIfAbsent(tableFile, start); // retry later.
+        }
+    }
+
+    public long getCheckpointCount() {
+        return checkpointCount.get();
+    }
+
+    public long getTotalDurationNanos() {
+        return totalDurationNanos.get();
+    }
+
+    public long getLastDurationNanos() {
+        return lastDurationNanos.get();
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    public long getFailureCount() {
+        return failureCount.get();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
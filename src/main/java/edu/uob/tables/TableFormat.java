@@ -0,0 +1,30 @@
+package edu.uob.tables;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+// Format in which the table files of a database are written, TEXT unless the database
+// directory holds a format file saying otherwise. Table files of both formats are read
+// whatever the format of their database is, see TableIO.
+public enum TableFormat {
+    TEXT,  // see Table.toString()
+    BINARY; // see BinaryTableFile
+
+    private static final String FILE_NAME = ".format";
+
+    public static TableFormat of(File databaseDirectory) {
+        try {
+            String name = Files.readString(new File(databaseDirectory, FILE_NAME).toPath());
+            return valueOf(name.trim());
+        } catch (IOException | IllegalArgumentException e) {
+            return TEXT;
+        }
+    }
+
+    public static void set(File databaseDirectory, TableFormat format) throws IOException {
+        File file = new File(databaseDirectory, FILE_NAME);
+        if (format == TEXT) Files.deleteIfExists(file.toPath());
+        else Files.writeString(file.toPath(), format.name());
+    }
+}
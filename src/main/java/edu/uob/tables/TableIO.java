@@ -4,25 +4,329 @@ import edu.uob.exceptions.TableException;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
+// A table is stored in up to three files:
+//     <table>.tab       the table file written by the last rewrite or checkpoint.
+//     <table>.log.ckpt  changes being folded into the table file by a checkpoint.
+//     <table>.log       changes appended since then.
+// and <table>.schema holding the column type of each attribute, which lets a table be
+// loaded into columns of the right type at once. It is only a hint: a missing or stale
+// schema is corrected by widening columns while loading. Indexes are kept in <table>.idx,
+// see IndexFile.
+// Renaming and deleting these files is guarded by a lock per table, so a checkpoint
+// running in background never loses a change appended or rewritten meanwhile.
+//     A table file is text (see Table.toString()) or binary (see BinaryTableFile), told
+// apart by its first bytes. It is written in the format of its database, see TableFormat.
 public class TableIO {
     public static final String FILE_SUFFIX = ".tab";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String CHECKPOINT_TEMP_SUFFIX = ".ckpt.tmp";
+    private static final String SCHEMA_SUFFIX = ".schema";
+    private static final ConcurrentHashMap<Path, FileState> fileStates = new ConcurrentHashMap<>();
 
-    public static void save(Table table, File file) throws TableException {
+    private static FileState getFileState(File file) {
+        return fileStates.computeIfAbsent(file.toPath().toAbsolutePath().normalize(),
+                                          (path) -> new FileState());
+    }
+
+    // Changes of a table loaded by this class are appended to its log. The table file
+    // itself is only rewritten when the schema changed. Return size of the log after
+    // saving, which is 0 if table file has been rewritten.
+    public static long save(Table table, File file) throws TableException {
+        long logSize = 0;
+        if (table.isProjected()) {
+            throw new TableException.InvalidTableOperationException(
+                    "table loaded with only some attributes cannot be saved.");
+        }
+        if (table.needsRewrite() || !file.exists()) {
+            rewrite(table, file);
+        }
+        else if (!table.getJournal().isEmpty()) {
+            FileState state = getFileState(file);
+            synchronized (state) {
+                if (state.checksum == null) state.checksum = readContent(file, Set.of()).checksum();
+                logSize = TableLog.append(TableLog.getLogFile(file), state.checksum,
+                                          table.getJournal());
+            }
+        }
+        table.beginJournal();
+        return logSize;
+    }
+
+    public static Table load(File file) throws TableException {
+        return load(file, null);
+    }
+
+    // Load only attributes in projection and id, for a query not changing the table. Other
+    // attributes are skipped in the table file and in records replayed from the logs.
+    public static Table load(File file, Set<String> projection) throws TableException {
+        TableContent content;
+        String records;
+        Map<String, Type> columnTypes;
+        String indexes;
+        FileState state = getFileState(file);
+        synchronized (state) { // read a consistent set of files.
+            content = readContent(file, projection);
+            state.checksum = content.checksum();
+            records = getPendingRecords(content.checksum(),
+                                        TableLog.read(TableLog.getCheckpointLogFile(file)),
+                                        TableLog.read(TableLog.getLogFile(file)));
+            columnTypes = readSchema(file);
+            indexes = IndexFile.read(file);
+        }
+        Table table = content.toTable(columnTypes, indexes, projection);
+        TableLog.replay(records, table);
+        table.beginJournal();
+        return table;
+    }
+
+    // Fold the log into the table file. Only moving the log aside and installing the new
+    // table file hold the lock, reading and writing the table happen without it.
+    // Return number of bytes written, or -1 if there is nothing to fold.
+    public static long checkpoint(File file) throws TableException {
+        FileState state = getFileState(file);
+        File logFile = TableLog.getLogFile(file);
+        File checkpointLogFile = TableLog.getCheckpointLogFile(file);
+        long generation;
+        TableContent content;
+        String records;
+        Map<String, Type> columnTypes;
+        String indexes;
+        synchronized (state) {
+            if (!file.exists()) return -1; // table dropped.
+            content = readContent(file, null);
+            state.checksum = content.checksum();
+            TableLog.Content log = TableLog.read(logFile);
+            try {
+                if (!checkpointLogFile.exists() && log.isBasedOn(content.checksum())) {
+                    if (!logFile.exists()) return -1;
+                    Files.move(logFile.toPath(), checkpointLogFile.toPath(),
+                               StandardCopyOption.ATOMIC_MOVE);
+                    records = log.records();
+                }
+                else { // left by an interrupted checkpoint or rewrite.
+                    records = getPendingRecords(content.checksum(),
+                                                TableLog.read(checkpointLogFile), log);
+                    if (!records.isEmpty()) {
+                        TableLog.write(checkpointLogFile, content.checksum(), records);
+                    }
+                    else Files.deleteIfExists(checkpointLogFile.toPath());
+                    Files.deleteIfExists(logFile.toPath());
+                    if (records.isEmpty()) return -1;
+                }
+            } catch (IOException e) {
+                throw new TableException.WriteTableFailedException(file.toString());
+            }
+            columnTypes = readSchema(file);
+            indexes = IndexFile.read(file);
+            generation = state.generation;
+        }
+        // merge.
+        Table table = content.toTable(columnTypes, indexes, null);
+        TableLog.replay(records, table);
+        Path tempPath = getTempPath(file, CHECKPOINT_TEMP_SUFFIX);
+        long bytesWritten;
         try {
-            Files.writeString(file.toPath(), table.toString());
+            long checksum = writeTable(table, tempPath, file);
+            bytesWritten = Files.size(tempPath);
+            synchronized (state) {
+                // table file rewritten or deleted meanwhile, which already contains all changes.
+                if (state.generation != generation) {
+                    Files.deleteIfExists(tempPath);
+                    return -1;
+                }
+                // the log appended meanwhile is started over on the new file before the
+                // checkpoint log goes, until then it is told from the F line.
+                TableLog.fold(checkpointLogFile, content.checksum(), records, checksum);
+                Files.move(tempPath, file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                           StandardCopyOption.ATOMIC_MOVE);
+                forceDirectory(file.getParentFile());
+                state.checksum = checksum;
+                if (logFile.exists()) {
+                    TableLog.write(logFile, checksum, TableLog.read(logFile).records());
+                }
+                Files.delete(checkpointLogFile.toPath());
+                writeSchema(table, file);
+                IndexFile.write(file, table, checksum);
+                state.generation++;
+            }
         } catch (IOException e) {
             throw new TableException.WriteTableFailedException(file.toString());
         }
+        return bytesWritten;
+    }
 
+    // delete table file with its logs, return false if table not exist.
+    public static boolean delete(File file) {
+        FileState state = getFileState(file);
+        synchronized (state) {
+            state.generation++;
+            state.checksum = null;
+            boolean isDeleted = file.delete();
+            for (File logFile : new File[]{TableLog.getLogFile(file),
+                    TableLog.getCheckpointLogFile(file), getSchemaFile(file),
+                    IndexFile.getIndexFile(file)}) {
+                if (logFile.exists() && !logFile.delete()) isDeleted = false;
+            }
+            return isDeleted;
+        }
     }
 
-    public static Table load(File file) throws TableException {
+    // Records of the logs beside a table file of checksum which are not in it yet, in order.
+    // A crash can leave logs started on a replaced table file: after a rewrite moved its
+    // file in, or after a checkpoint moved in the file its log is folded into, the log
+    // appended meanwhile is started on the file before it, like the checkpoint log.
+    private static String getPendingRecords(long checksum, TableLog.Content checkpointLog,
+                                            TableLog.Content log) {
+        if (checkpointLog.isFoldedInto(checksum)) {
+            boolean isPending = log.isBasedOn(checksum) ||
+                                Objects.equals(log.base(), checkpointLog.base());
+            return isPending ? log.records() : "";
+        }
+        return (checkpointLog.isBasedOn(checksum) ? checkpointLog.records() : "") +
+               (log.isBasedOn(checksum) ? log.records() : "");
+    }
+
+    private static Path getTempPath(File file, String suffix) {
+        return new File(file.getParentFile(), file.getName() + suffix).toPath();
+    }
+
+    // Write the whole table to a temporary file and move it over the table file, then
+    // drop the logs. Logs left by a crash in between are started on the replaced file, and
+    // not replayed onto the new one.
+    private static void rewrite(Table table, File file) throws TableException {
+        FileState state = getFileState(file);
+        synchronized (state) {
+            Path tempPath = getTempPath(file, TEMP_SUFFIX);
+            try {
+                long checksum = writeTable(table, tempPath, file);
+                Files.move(tempPath, file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                           StandardCopyOption.ATOMIC_MOVE);
+                forceDirectory(file.getParentFile());
+                state.checksum = checksum;
+                Files.deleteIfExists(TableLog.getLogFile(file).toPath());
+                Files.deleteIfExists(TableLog.getCheckpointLogFile(file).toPath());
+                writeSchema(table, file);
+                IndexFile.write(file, table, checksum);
+                state.generation++;
+            } catch (IOException e) {
+                throw new TableException.WriteTableFailedException(file.toString());
+            }
+        }
+    }
+
+    // Write the whole table in the format of its database, with its logs folded in. Used
+    // to convert a table file after the format of its database is changed.
+    public static void convert(Table table, File file) throws TableException {
+        rewrite(table, file);
+        table.beginJournal();
+    }
+
+    // Write table to path in the format of the database of file, return its checksum. It
+    // is on the disk when this returns, so it can be moved over the table file.
+    private static long writeTable(Table table, Path path, File file) throws IOException, TableException {
+        long checksum;
+        if (TableFormat.of(file.getParentFile()) == TableFormat.BINARY) {
+            checksum = BinaryTableFile.write(table, path);
+        }
+        else {
+            String tableString = table.toString();
+            Files.writeString(path, tableString);
+            checksum = IndexFile.getChecksum(tableString);
+        }
+        forceFile(path);
+        return checksum;
+    }
+
+    // wait until content of the file at path reaches the disk.
+    static void forceFile(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+    }
+
+    // Wait until files moved into directory stay there after a crash, before the files they
+    // replace are dropped. Where a directory cannot be opened this is up to the file system.
+    static void forceDirectory(File directory) {
+        try (FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException ignored) {
+        }
+    }
+
+    // read table file in either format, a binary one is decoded at once.
+    private static TableContent readContent(File file, Set<String> projection) throws TableException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (BinaryTableFile.isBinary(channel)) {
+                BinaryTableFile.Loaded loaded = BinaryTableFile.read(channel, file, projection);
+                return new TableContent(null, loaded.table(), loaded.checksum());
+            }
+            String tableString = Files.readString(file.toPath());
+            return new TableContent(tableString, null, IndexFile.getChecksum(tableString));
+        } catch (IOException | RuntimeException e) {
+            throw new TableException.ReadTableFailedException(file.toString());
+        }
+    }
+
+    private static File getSchemaFile(File file) {
+        return TableLog.getSiblingFile(file, SCHEMA_SUFFIX);
+    }
+
+    // one line for each attribute: <attribute> <type>, separated by tab.
+    private static void writeSchema(Table table, File file) throws IOException {
+        StringBuilder schema = new StringBuilder();
+        for (Map.Entry<String, Type> columnType : table.getColumnTypes().entrySet()) {
+            schema.append(columnType.getKey()).append('\t')
+                  .append(columnType.getValue()).append('\n');
+        }
+        Files.writeString(getSchemaFile(file).toPath(), schema);
+    }
+
+    // unreadable lines are skipped, it is only a hint.
+    private static Map<String, Type> readSchema(File file) {
+        Map<String, Type> columnTypes = new HashMap<>();
+        List<String> lines;
         try {
-            return new Table(Files.readString(file.toPath()));
+            lines = Files.readAllLines(getSchemaFile(file).toPath());
         } catch (IOException e) {
-            throw new TableException.ReadTableFailedException(file.toString());
+            return columnTypes;
         }
+        for (String line : lines) {
+            String[] fields = line.split("\t");
+            if (fields.length != 2) continue;
+            try {
+                columnTypes.put(fields[0], Type.valueOf(fields[1]));
+            } catch (IllegalArgumentException ignored) {
+            }
+        }
+        return columnTypes;
+    }
+
+    // text of a text table file, or the table of a binary one.
+    private record TableContent(String tableString, Table table, long checksum) {
+        Table toTable(Map<String, Type> columnTypes, String indexes, Set<String> projection) throws TableException {
+            Table result = table != null ? table :
+                           new Table(tableString, columnTypes, projection);
+            IndexFile.load(indexes, result, checksum);
+            return result;
+        }
+    }
+
+    private static final class FileState {
+        // incremented whenever the table file is replaced or deleted.
+        private long generation;
+        // of the table file, which a new log is started on. null until read or written.
+        private Long checksum;
     }
 }
@@ -0,0 +1,234 @@
+package edu.uob.tables;
+
+import edu.uob.exceptions.TableException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Append-only change log stored next to a table file. Its first line names the table file
+// the log was started on, then each line is one change:
+//     B <checksum>             checksum of the table file the records apply to
+//     I <id> <value>...        insert record
+//     U <id> <attribute> <value> update value
+//     D <id>                   delete record
+// A checkpoint log gets a last line before the table file it is folded into is installed:
+//     F <checksum>             checksum of that table file
+// fields are separated by tab, same as the table file.
+// A line without trailing '\n' was not completely written and is ignored on replay.
+// A crash can leave a log beside another table file than the one it was started on, whose
+// records are already in that file, see TableIO.getPendingRecords().
+public class TableLog {
+    public static final String FILE_SUFFIX = ".log";
+    // log being folded into the table file by a checkpoint.
+    public static final String CHECKPOINT_SUFFIX = ".log.ckpt";
+    private static final String SEPARATOR = "\t";
+    private static final String INSERT = "I";
+    private static final String UPDATE = "U";
+    private static final String DELETE = "D";
+    private static final String BASE = "B";
+    private static final String FOLDED = "F";
+    private static final String TEMP_SUFFIX = ".tmp";
+    // bytes read at a time looking back for the end of the last complete line.
+    private static final int SEARCH_SIZE = 4096;
+
+    public static File getLogFile(File tableFile) {
+        return getSiblingFile(tableFile, FILE_SUFFIX);
+    }
+
+    public static File getCheckpointLogFile(File tableFile) {
+        return getSiblingFile(tableFile, CHECKPOINT_SUFFIX);
+    }
+
+    static File getSiblingFile(File tableFile, String suffix) {
+        String name = tableFile.getName();
+        if (name.endsWith(TableIO.FILE_SUFFIX)) {
+            name = name.substring(0, name.length() - TableIO.FILE_SUFFIX.length());
+        }
+        return new File(tableFile.getParentFile(), name + suffix);
+    }
+
+    static String insertRecord(int id, List<String> values) {
+        StringBuilder record = new StringBuilder(INSERT).append(SEPARATOR).append(id);
+        for (String value : values) {
+            record.append(SEPARATOR).append(value);
+        }
+        return record.toString();
+    }
+
+    static String updateRecord(int id, String attribute, String value) {
+        return UPDATE + SEPARATOR + id + SEPARATOR + attribute + SEPARATOR + value;
+    }
+
+    static String deleteRecord(int id) {
+        return DELETE + SEPARATOR + id;
+    }
+
+    // Append records and wait until they reach the disk, a new log is started on the table
+    // file of base. A line left incomplete by a crash is cut off first, so that records
+    // appended are not joined onto it. return size of log after appending.
+    static long append(File logFile, long base, List<String> records) throws TableException {
+        try (FileChannel channel = FileChannel.open(logFile.toPath(),
+                                                    StandardOpenOption.CREATE,
+                                                    StandardOpenOption.READ,
+                                                    StandardOpenOption.WRITE)) {
+            long end = getCompleteLength(channel);
+            if (end < channel.size()) channel.truncate(end);
+            StringBuilder content = new StringBuilder();
+            if (end == 0) content.append(BASE).append(SEPARATOR).append(base).append('\n');
+            for (String record : records) {
+                content.append(record).append('\n');
+            }
+            ByteBuffer buffer = StandardCharsets.UTF_8.encode(content.toString());
+            while (buffer.hasRemaining()) {
+                end += channel.write(buffer, end);
+            }
+            channel.force(false);
+            return channel.size();
+        } catch (IOException e) {
+            throw new TableException.WriteTableFailedException(logFile.toString());
+        }
+    }
+
+    // length of the complete lines of channel, up to its last '\n'.
+    private static long getCompleteLength(FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SEARCH_SIZE);
+        long end = channel.size();
+        while (end > 0) {
+            long start = Math.max(0, end - SEARCH_SIZE);
+            buffer.clear().limit((int) (end - start));
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, start + buffer.position()) < 0) break;
+            }
+            for (int i = buffer.position() - 1; i >= 0; i--) {
+                if (buffer.get(i) == '\n') return start + i + 1;
+            }
+            end = start;
+        }
+        return 0;
+    }
+
+    // Replace logFile by a log started on the table file of base holding records, which
+    // are complete lines. The new log is on the disk when this returns.
+    static void write(File logFile, long base, String records) throws TableException {
+        writeText(logFile, BASE + SEPARATOR + base + "\n" + records);
+    }
+
+    // Replace a checkpoint log by one holding records, marked as folded into the table file
+    // of checksum.
+    static void fold(File logFile, long base, String records, long checksum) throws TableException {
+        writeText(logFile, BASE + SEPARATOR + base + "\n" + records +
+                           FOLDED + SEPARATOR + checksum + "\n");
+    }
+
+    private static void writeText(File logFile, String text) throws TableException {
+        Path tempPath = new File(logFile.getParentFile(), logFile.getName() + TEMP_SUFFIX).toPath();
+        try {
+            Files.writeString(tempPath, text);
+            TableIO.forceFile(tempPath);
+            Files.move(tempPath, logFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+            TableIO.forceDirectory(logFile.getParentFile());
+        } catch (IOException e) {
+            throw new TableException.WriteTableFailedException(logFile.toString());
+        }
+    }
+
+    // return content of log, empty if there is no log.
+    static Content read(File logFile) throws TableException {
+        if (!logFile.exists()) return Content.EMPTY;
+        String text;
+        try {
+            text = Files.readString(logFile.toPath());
+        } catch (IOException e) {
+            throw new TableException.ReadTableFailedException(logFile.toString());
+        }
+        // only complete lines.
+        text = text.substring(0, text.lastIndexOf('\n') + 1);
+        Long base = null;
+        Long folded = null;
+        int start = 0;
+        int end = text.length();
+        if (text.startsWith(BASE + SEPARATOR)) {
+            start = text.indexOf('\n') + 1;
+            base = parseChecksum(text.substring(0, start - 1));
+        }
+        int lastStart = text.lastIndexOf('\n', end - 2) + 1;
+        if (lastStart >= start && text.startsWith(FOLDED + SEPARATOR, lastStart)) {
+            folded = parseChecksum(text.substring(lastStart, end - 1));
+            end = lastStart;
+        }
+        return new Content(base, folded, text.substring(start, end));
+    }
+
+    private static long parseChecksum(String line) throws TableException {
+        try {
+            return Long.parseLong(line.substring(line.indexOf(SEPARATOR) + 1));
+        } catch (NumberFormatException e) {
+            throw new TableException.InvalidImportStringException("Invalid log record: " + line);
+        }
+    }
+
+    // A log as read from its file: base and folded are the checksums of its B and F line,
+    // null if it has none. records are its complete change lines.
+    record Content(Long base, Long folded, String records) {
+        static final Content EMPTY = new Content(null, null, "");
+
+        // whether the records apply to the table file of checksum. A log without B line
+        // was written before logs were started on a table file.
+        boolean isBasedOn(long checksum) {
+            return base == null || base == checksum;
+        }
+
+        boolean isFoldedInto(long checksum) {
+            return folded != null && folded == checksum;
+        }
+    }
+
+    // Apply all complete records to the table, which has to be the table file the records
+    // apply to. A record not matching its attributes throws InvalidImportStringException.
+    static void replay(String content, Table table) throws TableException {
+        int lineStart = 0;
+        int lineEnd;
+        while ((lineEnd = content.indexOf('\n', lineStart)) >= 0) {
+            replayRecord(content.substring(lineStart, lineEnd), table);
+            lineStart = lineEnd + 1;
+        }
+    }
+
+    private static void replayRecord(String line, Table table) throws TableException {
+        ArrayList<String> fields = new ArrayList<>(Arrays.asList(line.split(SEPARATOR, -1)));
+        if (fields.size() < 2) {
+            throw new TableException.InvalidImportStringException("Invalid log record: " + line);
+        }
+        String type = fields.remove(0);
+        int id;
+        try {
+            id = Integer.parseInt(fields.remove(0));
+        } catch (NumberFormatException e) {
+            throw new TableException.InvalidImportStringException("Invalid log record: " + line);
+        }
+        switch (type) {
+            case INSERT -> table.replayInsert(id, fields);
+            case UPDATE -> {
+                if (fields.size() != 2) {
+                    throw new TableException.InvalidImportStringException(
+                            "Invalid log record: " + line);
+                }
+                table.replayUpdate(id, fields.get(0), fields.get(1));
+            }
+            case DELETE -> table.replayDelete(id);
+            default -> throw new TableException.InvalidImportStringException(
+                    "Invalid log record: " + line);
+        }
+    }
+}
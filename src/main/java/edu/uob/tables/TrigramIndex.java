@@ -0,0 +1,84 @@
+package edu.uob.tables;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// Hash index which also keeps the distinct texts containing each trigram (3 consecutive
+// characters), answering LIKE without a scan. Texts containing every trigram of the
+// pattern are candidates, which are verified with contains. Patterns shorter than 3
+// characters have no trigram and are left to a scan.
+final class TrigramIndex extends HashIndex {
+    static final int GRAM_LENGTH = 3;
+    private final HashMap<String, Set<String>> textsOfGram;
+
+    TrigramIndex() {
+        textsOfGram = new HashMap<>();
+    }
+
+    @Override
+    IndexType getType() {
+        return IndexType.TRIGRAM;
+    }
+
+    @Override
+    protected void addText(String text) {
+        super.addText(text);
+        for (String gram : getGrams(text)) {
+            textsOfGram.computeIfAbsent(gram, (k) -> new HashSet<>()).add(text);
+        }
+    }
+
+    @Override
+    protected void removeText(String text) {
+        super.removeText(text);
+        for (String gram : getGrams(text)) {
+            removeFrom(textsOfGram, gram, text);
+        }
+    }
+
+    // ids of records whose value contains pattern, or null if pattern is too short.
+    IdSet findLike(String pattern) {
+        if (pattern.length() < GRAM_LENGTH) return null;
+        List<Set<String>> postings = new ArrayList<>();
+        for (String gram : getGrams(pattern)) {
+            Set<String> texts = textsOfGram.get(gram);
+            if (texts == null) return new IdSet(); // no text has this gram.
+            postings.add(texts);
+        }
+        // intersect from the shortest posting.
+        postings.sort(Comparator.comparingInt(Set::size));
+        IdSet result = new IdSet();
+        for (String text : postings.get(0)) {
+            if (isInAll(text, postings) && text.contains(pattern)) result.addAll(getIds(text));
+        }
+        return result;
+    }
+
+    @Override
+    long estimateSize() {
+        long size = super.estimateSize();
+        for (Set<String> texts : textsOfGram.values()) {
+            size += 96 + 40L * texts.size();
+        }
+        return size;
+    }
+
+    private static boolean isInAll(String text, List<Set<String>> postings) {
+        for (int i = 1; i < postings.size(); i++) {
+            if (!postings.get(i).contains(text)) return false;
+        }
+        return true;
+    }
+
+    private static Set<String> getGrams(String text) {
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + GRAM_LENGTH <= text.length(); i++) {
+            grams.add(text.substring(i, i + GRAM_LENGTH));
+        }
+        return grams;
+    }
+}
@@ -4,25 +4,44 @@ import edu.uob.exceptions.ValueException;
 
 // this class don't check the type of value, just store it.
 public record Value(String valueString, Type type) implements Comparable<Value> {
-    private final static String REGEX_FLOAT = "^[+-]?[0-9]+[.][0-9]+$";
-    private final static String REGEX_INTEGER = "^[+-]?[0-9]+$";
-    private final static String REGEX_STRING = "^'.*'$";
-
     // This method is used to match value from a token generate by Tokenizer. Which means
-    // a token surround by \' is a string. Other type should also match their regex.
+    // a token surround by \' is a string. Other type should also match their pattern, see
+    // getValueType().
     public static Type matchValueType(String value) throws ValueException {
-        Type type;
-        switch (value.toUpperCase()) {
-            case "TRUE", "FALSE" -> type = Type.BOOL;
-            case "NULL" -> type = Type.NULL;
-            default -> {
-                if (value.matches(REGEX_STRING)) type = Type.STRING;
-                else if (value.matches(REGEX_FLOAT)) type = Type.FLOAT;
-                else if (value.matches(REGEX_INTEGER)) type = Type.INT;
-                else throw new ValueException.ValueTypeMatchingFailedException(value);
+        Type type = getValueType(value);
+        if (type == null) throw new ValueException.ValueTypeMatchingFailedException(value);
+        return type;
+    }
+
+    // Type of a value token, or null if it is not a value. Checked character by character:
+    //     BOOL    TRUE or FALSE, ignoring case
+    //     NULL    NULL, ignoring case
+    //     STRING  '...' within a line
+    //     FLOAT   [+-]?[0-9]+[.][0-9]+
+    //     INT     [+-]?[0-9]+
+    public static Type getValueType(String value) {
+        if (value.equalsIgnoreCase("TRUE") || value.equalsIgnoreCase("FALSE")) return Type.BOOL;
+        if (value.equalsIgnoreCase("NULL")) return Type.NULL;
+        int length = value.length();
+        if (length >= 2 && value.charAt(0) == '\'' && value.charAt(length - 1) == '\'') {
+            for (int i = 1; i < length - 1; i++) {
+                if (isLineTerminator(value.charAt(i))) return null;
             }
+            return Type.STRING;
         }
-        return type;
+        int start = length > 0 && (value.charAt(0) == '+' || value.charAt(0) == '-') ? 1 : 0;
+        int point = -1;
+        for (int i = start; i < length; i++) {
+            char c = value.charAt(i);
+            if (c == '.' && point < 0) point = i;
+            else if (c < '0' || c > '9') return null;
+        }
+        if (point < 0) return length > start ? Type.INT : null;
+        return point > start && point < length - 1 ? Type.FLOAT : null;
+    }
+
+    private static boolean isLineTerminator(char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
     }
 
     // when value is NULL, compare with INT or FLOAT will cause error.
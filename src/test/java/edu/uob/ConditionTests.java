@@ -1,5 +1,6 @@
 package edu.uob;
 
+import edu.uob.conditions.ConditionNode;
 import edu.uob.conditions.ConditionSolver;
 import edu.uob.exceptions.ConditionException;
 import edu.uob.exceptions.TableException;
@@ -9,8 +10,11 @@ import edu.uob.tables.Table;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.IntPredicate;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -95,4 +99,79 @@ public class ConditionTests {
         assertTrue(result.containsAll(List.of(1, 2, 5)));
         assertEquals(3, result.size());
     }
+
+    @Test
+    void testShortCircuit() throws ConditionException, TableException, ValueException {
+        ConditionNode young = ConditionSolver.compile(Tokenizer.getTokens("age<30"));
+        ConditionNode isTrue = ConditionSolver.compile(Tokenizer.getTokens("bool==true"));
+        // counts rows right side is tested on.
+        int[] tested = {0};
+        ConditionNode counted = new ConditionNode() {
+            @Override
+            public IntPredicate bind(Table table) throws TableException {
+                IntPredicate filter = isTrue.bind(table);
+                return (row) -> {
+                    tested[0]++;
+                    return filter.test(row);
+                };
+            }
+
+            @Override
+            public void addAttributes(Collection<String> attributes) {
+                isTrue.addAttributes(attributes);
+            }
+        };
+        // AND tests right side only on the 2 young rows, OR on the other 4.
+        result = new ConditionSolver(table, ConditionSolver.combine(young, "and", counted)).solve();
+        assertArrayEquals(List.of(1, 3).toArray(), result.toArray());
+        assertEquals(2, tested[0]);
+        tested[0] = 0;
+        result = new ConditionSolver(table, ConditionSolver.combine(young, "or", counted)).solve();
+        assertArrayEquals(List.of(1, 3).toArray(), result.toArray());
+        assertEquals(4, tested[0]);
+        // nested conditions give the same as both sides solved in full and combined.
+        assertEquals(or(and(solve("age<30"), solve("bool==true")),
+                        and(solve("name like 'pe'"), solve("age>40"))),
+                     solve("((age<30)and(bool==true))or((name like 'pe')and(age>40))"));
+        assertEquals(and(or(solve("id<3"), solve("age>40")),
+                         or(solve("bool==false"), solve("string!=null"))),
+                     solve("((id<3)or(age>40))and((bool==false)or(string!=null))"));
+        assertEquals(and(or(and(solve("id>1"), solve("id<6")), solve("name=='desmond'")),
+                         solve("age!=null")),
+                     solve("(((id>1)and(id<6))or(name=='desmond'))and(age!=null)"));
+    }
+
+    private Set<Integer> solve(String condition) throws ConditionException, TableException, ValueException {
+        return new TreeSet<>(new ConditionSolver(table, Tokenizer.getTokens(condition)).solve());
+    }
+
+    private static Set<Integer> and(Set<Integer> left, Set<Integer> right) {
+        Set<Integer> ids = new TreeSet<>(left);
+        ids.retainAll(right);
+        return ids;
+    }
+
+    private static Set<Integer> or(Set<Integer> left, Set<Integer> right) {
+        Set<Integer> ids = new TreeSet<>(left);
+        ids.addAll(right);
+        return ids;
+    }
+
+    @Test
+    void testCompiledCondition() throws ConditionException, TableException, ValueException {
+        // compiled once, solved against any table.
+        ConditionNode condition = ConditionSolver.compile(
+                Tokenizer.getTokens("(age>=+30)and(bool==FALSE)"));
+        result = new ConditionSolver(table, condition).solve();
+        assertArrayEquals(List.of(2, 4, 5).toArray(), result.toArray());
+        table.setValue("age", "unknown", 4);
+        result = new ConditionSolver(table, condition).solve();
+        assertArrayEquals(List.of(2, 5).toArray(), result.toArray());
+        // reference value out of range of int never matches.
+        condition = ConditionSolver.compile(Tokenizer.getTokens("age==99999999999"));
+        assertTrue(condition.solve(table).isEmpty());
+        // operator not valid for value is found when compiling.
+        assertThrows(ConditionException.OperatorValueTypeNotMatchException.class,
+                     () -> ConditionSolver.compile(Tokenizer.getTokens("bool>false")));
+    }
 }
@@ -1,12 +1,38 @@
 package edu.uob;
 
+import edu.uob.commands.ResultSink;
 import edu.uob.exceptions.QueryException;
+import edu.uob.tables.Column;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -33,6 +59,18 @@ final class DBTests {
         server = new DBServer(dbDir);
     }
 
+    @AfterEach
+    void teardown() {
+        server.close();
+    }
+
+    // result of command on a new server reading the same directory, as after a restart.
+    private String handleRestarted(String command) {
+        try (DBServer restarted = new DBServer(server.getDatabaseDirectory())) {
+            return restarted.handleCommand(command);
+        }
+    }
+
     @Test
     void testUse() throws QueryException {
         assertTrue(server.handleCommand("create database office;").startsWith("[OK]"));
@@ -154,6 +192,136 @@ final class DBTests {
                          .startsWith("[ERROR]"));
         assertTrue(server.handleCommand("insert into school values('jack','123124');")
                          .startsWith("[ERROR]"));
+        // several rows, none inserted if one of them does not match.
+        assertTrue(server.handleCommand("insert into student values('kate','1'), ('tom','2');")
+                         .startsWith("[OK]"));
+        assertTrue(server.handleCommand("insert into student values('ann','3'), ('bob');")
+                         .startsWith("[ERROR]"));
+        assertEquals("""
+                             [OK] 4 record(s) found.
+                             id\tname\tphoneNumber
+                             1\tdesmond\t123123
+                             2\tjack\t123124
+                             3\tkate\t1
+                             4\ttom\t2
+                             """, server.handleCommand("select*from student;"));
+    }
+
+    @Test
+    void testCopy() throws IOException {
+        createTablesWithContent();
+        File directory = server.getDatabaseDirectory();
+        Files.writeString(new File(directory, "grades.tab").toPath(), """
+                id\tname\tgrade
+                7\tKate\t1
+                8\tTom\t5
+                """);
+        assertEquals("[OK] 2 record(s) loaded.",
+                     server.handleCommand("copy student from 'grades.tab';"));
+        assertEquals("""
+                             [OK] 2 record(s) found.
+                             id\tname\tgrade
+                             1\tJack\t4
+                             6\tTom\t5
+                             """, server.handleCommand("select * from student where grade >= 4;"));
+        // an existing table file is imported into a new table.
+        assertTrue(server.handleCommand("create table copied;").startsWith("[OK]"));
+        assertTrue(server.handleCommand("copy copied from 'school/student.tab';")
+                         .startsWith("[OK]"));
+        assertEquals(server.handleCommand("select * from student;"),
+                     server.handleCommand("select * from copied;"));
+        // saved, read again by a new server.
+        assertTrue(handleRestarted("use school; select * from copied;").contains("6\tTom\t5\n"));
+        // records still in the log of a table file are imported as well.
+        assertTrue(server.handleCommand("create table pending(name); insert into pending values('Ann');" +
+                                        "insert into pending values('Bob'); create table logged;")
+                         .endsWith("[OK]"));
+        assertEquals("[OK] 2 record(s) loaded.",
+                     server.handleCommand("copy logged from 'school/pending.tab';"));
+        assertEquals(server.handleCommand("select * from pending;"),
+                     server.handleCommand("select * from logged;"));
+        // invalid
+        Path outside = Files.createTempFile("grades", ".tab");
+        try {
+            Files.copy(new File(directory, "grades.tab").toPath(), outside,
+                       StandardCopyOption.REPLACE_EXISTING);
+            Files.createSymbolicLink(new File(directory, "link.tab").toPath(), outside);
+            assertTrue(server.handleCommand("copy student from 'link.tab';").startsWith("[ERROR]"));
+        } finally {
+            Files.delete(outside);
+        }
+        assertTrue(server.handleCommand("copy student from 'nothing.tab';").startsWith("[ERROR]"));
+        assertTrue(server.handleCommand("copy student from '../grades.tab';").startsWith("[ERROR]"));
+        assertTrue(server.handleCommand("copy transcript from 'grades.tab';").startsWith("[ERROR]"));
+        assertTrue(server.handleCommand("copy student from grades;").startsWith("[ERROR]"));
+    }
+
+    @Test
+    void testConvert() throws IOException {
+        createTablesWithContent();
+        String students = server.handleCommand("select * from student where grade < 4;");
+        String transcripts = server.handleCommand("select * from transcript;");
+        assertEquals("[OK] 2 table(s) converted.",
+                     server.handleCommand("convert database school to binary;"));
+        File tableFile = new File(server.getDatabaseDirectory(), "school/student.tab");
+        assertFalse(Files.readString(tableFile.toPath(), StandardCharsets.ISO_8859_1)
+                         .startsWith("id"));
+        // read back from binary files, and new tables are binary as well.
+        DBServer restarted = new DBServer(server.getDatabaseDirectory());
+        assertTrue(restarted.handleCommand("use school;").startsWith("[OK]"));
+        assertEquals(students, restarted.handleCommand("select * from student where grade < 4;"));
+        assertEquals(transcripts, restarted.handleCommand("select * from transcript;"));
+        assertTrue(restarted.handleCommand("create table teacher(name); insert into teacher values('Ann');")
+                            .startsWith("[OK]"));
+        assertFalse(Files.readString(new File(server.getDatabaseDirectory(), "school/teacher.tab")
+                                             .toPath(), StandardCharsets.ISO_8859_1)
+                         .startsWith("id"));
+        // converted back to text.
+        assertEquals("[OK] 3 table(s) converted.",
+                     restarted.handleCommand("convert database school to text;"));
+        assertTrue(Files.readString(tableFile.toPath()).startsWith("id\tname\tgrade"));
+        restarted.close();
+        assertTrue(handleRestarted("use school; select * from teacher;").contains("1\tAnn"));
+        // invalid
+        assertTrue(server.handleCommand("convert database nothing to binary;").startsWith("[ERROR]"));
+        assertTrue(server.handleCommand("convert database school to json;").startsWith("[ERROR]"));
+    }
+
+    @Test
+    void testBatch() {
+        String result = server.handleCommand("""
+                create database school; use school; create table student(name, grade);
+                insert into student values('Jack', 4), ('Marty', 2);
+                insert into student values('Dany', 2);
+                update student set grade = 3 where name == 'Dany';
+                select * from student where grade < 4;""");
+        assertEquals("""
+                             [OK]
+                             [OK]
+                             [OK]
+                             [OK]
+                             [OK]
+                             [OK] Attributes of 1 record(s) have been updated.
+                             [OK] 2 record(s) found.
+                             id\tname\tgrade
+                             2\tMarty\t2
+                             3\tDany\t3
+                             """, result);
+        // saved at the end of the batch, a new server reads the same.
+        assertEquals(server.handleCommand("select * from student;"),
+                     handleRestarted("use school; select * from student;")
+                             .substring("[OK]\n".length()));
+        // the batch stops at the first error, changes before it are kept.
+        result = server.handleCommand("""
+                insert into student values('Kate', 1); select * from nothing;
+                insert into student values('Tom', 1);""");
+        assertTrue(result.startsWith("[OK]\n[ERROR]"));
+        assertFalse(result.contains("\n[OK]"));
+        assertTrue(handleRestarted("use school; select * from student;").contains("4\tKate\t1\n"));
+        // a table dropped in a batch is not saved again.
+        assertTrue(server.handleCommand("insert into student values('Tom', 1); drop table student;")
+                         .endsWith("[OK]"));
+        assertTrue(server.handleCommand("select * from student;").startsWith("[ERROR]"));
     }
 
     @Test
@@ -196,6 +364,24 @@ final class DBTests {
         // not match operator and value
         assertTrue(server.handleCommand("select*from transcript where test >='JAVA';")
                          .startsWith("[ERROR]"));
+        // only attributes referenced are read by a server not having the table cached, and
+        // a later change reads the whole table.
+        DBServer restarted = new DBServer(server.getDatabaseDirectory());
+        restarted.handleCommand("use school;");
+        assertEquals("""
+                             [OK] 2 record(s) found.
+                             name
+                             Marty
+                             Dany
+                             """, restarted.handleCommand("select name from student where grade < 3;"));
+        assertTrue(restarted.handleCommand("update student set grade = 1 where name == 'Dany';")
+                            .startsWith("[OK]"));
+        assertEquals("""
+                             [OK] 1 record(s) found.
+                             id\tname\tgrade
+                             4\tDany\t1
+                             """, restarted.handleCommand("select * from student where grade < 2;"));
+        restarted.close();
     }
 
     @Test
@@ -294,6 +480,468 @@ final class DBTests {
                              """, result);
     }
 
+    @Test
+    void testHashJoin() {
+        assertTrue(server.handleCommand("create database shop;").startsWith("[OK]"));
+        assertTrue(server.handleCommand("use shop;").startsWith("[OK]"));
+        assertTrue(server.handleCommand("create table item(kind,price);").startsWith("[OK]"));
+        assertTrue(server.handleCommand("create table kind(kid,label);").startsWith("[OK]"));
+        for (int i = 1; i <= 12; i++) {
+            assertTrue(server.handleCommand("insert into item values(" + i % 5 + "," + i +
+                                            ");").startsWith("[OK]"));
+        }
+        for (int i = 1; i <= 7; i++) {
+            assertTrue(server.handleCommand("insert into kind values(" + i % 3 + ",'k" + i +
+                                            "');").startsWith("[OK]"));
+        }
+        // rows in order of left id then right id, whichever side is hashed.
+        StringBuilder expected = new StringBuilder("[OK]\nid\tprice\tlabel\n");
+        int id = 0;
+        for (int i = 1; i <= 12; i++) {
+            for (int j = 1; j <= 7; j++) {
+                if (i % 5 == j % 3) expected.append(++id).append('\t').append(i)
+                                            .append("\tk").append(j).append('\n');
+            }
+        }
+        assertEquals(expected.toString(),
+                     server.handleCommand("join item and kind on kind and kid;"));
+        expected = new StringBuilder("[OK]\nid\tlabel\tprice\n");
+        id = 0;
+        for (int j = 1; j <= 7; j++) {
+            for (int i = 1; i <= 12; i++) {
+                if (i % 5 == j % 3) expected.append(++id).append("\tk").append(j)
+                                            .append('\t').append(i).append('\n');
+            }
+        }
+        assertEquals(expected.toString(),
+                     server.handleCommand("join kind and item on kid and kind;"));
+        // same result once split across cores.
+        server.setParallelThreshold(1);
+        assertEquals(expected.toString(),
+                     server.handleCommand("join kind and item on kid and kind;"));
+    }
+
+    @Test
+    void testIndex() {
+        createTablesWithContent();
+        assertTrue(server.handleCommand("create index on student(grade);").startsWith("[OK]"));
+        assertTrue(server.handleCommand("create index on student(grade);")
+                         .startsWith("[ERROR]"));
+        assertTrue(server.handleCommand("create index on student(id);").startsWith("[ERROR]"));
+        assertTrue(server.handleCommand("create index on student(age);").startsWith("[ERROR]"));
+        // index is kept by changes.
+        assertTrue(server.handleCommand("update student set grade=3 where name=='Jack';")
+                         .startsWith("[OK]"));
+        assertTrue(server.handleCommand("insert into student values('Tom',+3);")
+                         .startsWith("[OK]"));
+        assertTrue(server.handleCommand("delete from student where name=='Desmond';")
+                         .startsWith("[OK]"));
+        String expected = """
+                [OK] 2 record(s) found.
+                id\tname\tgrade
+                1\tJack\t3
+                5\tTom\t+3
+                """;
+        assertEquals(expected, server.handleCommand("select * from student where grade==3;"));
+        assertEquals(expected, server.handleCommand(
+                "select * from student where (grade==3)and(name!='x');"));
+        assertEquals("""
+                             [OK] 2 record(s) found.
+                             id\tname\tgrade
+                             3\tMarty\t2
+                             4\tDany\t2
+                             """, server.handleCommand("select * from student where grade!=3;"));
+        // and after a restart.
+        server.close();
+        server = new DBServer(server.getDatabaseDirectory());
+        assertTrue(server.handleCommand("use school;").startsWith("[OK]"));
+        assertEquals(expected, server.handleCommand("select * from student where grade==3;"));
+        // ranges by ordered index.
+        String query = "select * from transcript where (score>=60)or(score<40);";
+        String scanned = server.handleCommand(query);
+        assertTrue(server.handleCommand("create ordered index on transcript(score);")
+                         .startsWith("[OK]"));
+        assertEquals(scanned, server.handleCommand(query));
+        // FLOAT compared as the float of its text, never rounded through a double first.
+        assertTrue(server.handleCommand("create table reading(value);").startsWith("[OK]"));
+        assertTrue(server.handleCommand("insert into reading values(1.0000000596046448), (1.0);")
+                         .startsWith("[OK]"));
+        query = "select * from reading where value == 1.0000001;";
+        scanned = server.handleCommand(query);
+        assertTrue(scanned.startsWith("[OK] 1 record(s)"));
+        assertTrue(server.handleCommand("create index on reading(value);").startsWith("[OK]"));
+        assertEquals(scanned, server.handleCommand(query));
+        // LIKE by trigram index.
+        query = "select * from student where name like 'art';";
+        scanned = server.handleCommand(query);
+        assertTrue(scanned.contains("Marty"));
+        assertTrue(server.handleCommand("create trigram index on student(name);")
+                         .startsWith("[OK]"));
+        assertEquals(scanned, server.handleCommand(query));
+        // dropped with its attribute.
+        assertTrue(server.handleCommand("alter table student drop grade;").startsWith("[OK]"));
+        assertTrue(server.handleCommand("select * from student where grade==3;")
+                         .startsWith("[ERROR]"));
+    }
+
+    @Test
+    void testPreparedStatement() {
+        createTablesWithContent();
+        assertTrue(server.handleCommand(
+                "prepare byGrade as select id,name from student where (grade == ?) or (name like ?);")
+                         .startsWith("[OK]"));
+        assertEquals("""
+                             [OK] 2 record(s) found.
+                             id\tname
+                             3\tMarty
+                             4\tDany
+                             """, server.handleCommand("execute byGrade(2, 'Marty');"));
+        assertEquals("""
+                             [OK] 1 record(s) found.
+                             id\tname
+                             1\tJack
+                             """, server.handleCommand("execute byGrade(4, 'Jack');"));
+        // values are bound into INSERT and UPDATE as well.
+        assertTrue(server.handleCommand("prepare add as insert into student values(?, ?);")
+                         .startsWith("[OK]"));
+        assertTrue(server.handleCommand("execute add('Kate', true);").startsWith("[OK]"));
+        assertTrue(server.handleCommand("select * from student where name == 'Kate';")
+                         .contains("Kate\tTRUE"));
+        // a condition on a value and one on "?", bound each time.
+        assertTrue(server.handleCommand(
+                "prepare promote as update student set grade = ? where (grade == 2) and (name == ?);")
+                         .startsWith("[OK]"));
+        assertTrue(server.handleCommand("execute promote(3, 'Dany');").startsWith("[OK]"));
+        assertTrue(server.handleCommand("execute promote(5, 'Dany');").startsWith("[OK]"));
+        assertTrue(server.handleCommand("execute promote(5, 'Marty');").startsWith("[OK]"));
+        assertEquals("""
+                             [OK] 3 record(s) found.
+                             name\tgrade
+                             Desmond\t3
+                             Marty\t5
+                             Dany\t3
+                             """, server.handleCommand(
+                "select name, grade from student where (grade == 3) or (grade == 5);"));
+        // wrong number of values, unknown statement.
+        assertTrue(server.handleCommand("execute add('Kate');").startsWith("[ERROR]"));
+        assertTrue(server.handleCommand("execute nothing;").startsWith("[ERROR]"));
+    }
+
+    @Test
+    void testPlanCache() {
+        createTablesWithContent();
+        String query = "select id,name from student where grade == 2;";
+        String expected = """
+                [OK] 2 record(s) found.
+                id\tname
+                3\tMarty
+                4\tDany
+                """;
+        // the same command is run again from the cache, and gives the same result.
+        assertEquals(expected, server.handleCommand(query));
+        int size = server.getPlanCache().size();
+        assertEquals(expected, server.handleCommand("  " + query));
+        // keywords match in any case, whitespace between tokens does not matter.
+        assertEquals(expected, server.handleCommand("SELECT id, name FROM student WHERE grade==2;"));
+        assertEquals(size, server.getPlanCache().size());
+        // the same as "select*from student;" run before.
+        assertEquals(server.handleCommand("select * from student;"),
+                     server.handleCommand("select * from student;"));
+        assertEquals(size, server.getPlanCache().size());
+        // names are case sensitive, a command kept for other names is not used.
+        assertTrue(server.handleCommand("select * from STUDENT;").startsWith("[ERROR]"));
+        assertTrue(server.handleCommand("select * from student;").startsWith("[OK]"));
+        // a cached command sees later changes of the table.
+        assertTrue(server.handleCommand("update student set grade = 3 where name == 'Dany';")
+                         .startsWith("[OK]"));
+        assertEquals("""
+                             [OK] 1 record(s) found.
+                             id\tname
+                             3\tMarty
+                             """, server.handleCommand(query));
+        // failed commands are not kept, nor EXECUTE.
+        assertTrue(server.handleCommand("select from;").startsWith("[ERROR]"));
+        assertEquals(size + 1, server.getPlanCache().size());
+        assertTrue(server.handleCommand("prepare byGrade as select name from student where grade == ?;")
+                         .startsWith("[OK]"));
+        assertTrue(server.handleCommand("execute byGrade(2);").startsWith("[OK] 1 record(s)"));
+        assertTrue(server.handleCommand("execute byGrade(4);").startsWith("[OK] 1 record(s)"));
+        assertEquals(size + 2, server.getPlanCache().size());
+    }
+
+    @Test
+    void testSessions() throws Exception {
+        createTablesWithContent();
+        // USE and prepared statements belong to a session.
+        Session session = new Session();
+        assertTrue(server.handleCommand(session, "select * from student;").startsWith("[ERROR]"));
+        assertTrue(server.handleCommand("create database library;").startsWith("[OK]"));
+        assertTrue(server.handleCommand(session, "use library;").startsWith("[OK]"));
+        assertTrue(server.handleCommand("select * from student;").startsWith("[OK]"));
+        assertTrue(server.handleCommand(session, "prepare p as select * from student;")
+                         .startsWith("[OK]"));
+        assertTrue(server.handleCommand("execute p;").startsWith("[ERROR]"));
+        // sessions changing and reading a table at once.
+        ExecutorService clients = Executors.newFixedThreadPool(8);
+        List<Future<?>> results = new ArrayList<>();
+        for (int client = 0; client < 8; client++) {
+            results.add(clients.submit(() -> {
+                Session clientSession = new Session();
+                assertTrue(server.handleCommand(clientSession, "use school;").startsWith("[OK]"));
+                for (int i = 0; i < 50; i++) {
+                    assertTrue(server.handleCommand(clientSession, "insert into student values('Bob', 5);")
+                                     .startsWith("[OK]"));
+                    assertTrue(server.handleCommand(clientSession, "select name from student where grade == 5;")
+                                     .startsWith("[OK]"));
+                }
+            }));
+        }
+        for (Future<?> result : results) {
+            result.get();
+        }
+        clients.shutdown();
+        assertTrue(server.handleCommand("select id from student where grade == 5;")
+                         .startsWith("[OK] 400 record(s) found."));
+        // a client is served while another one stays connected.
+        ServerSocket serverSocket = new ServerSocket(0);
+        Thread listener = new Thread(() -> server.blockingListenOn(serverSocket));
+        listener.start();
+        try (Socket idle = new Socket("localhost", serverSocket.getLocalPort());
+             Socket socket = new Socket("localhost", serverSocket.getLocalPort())) {
+            new PrintWriter(idle.getOutputStream(), true).println("use school;");
+            socket.setSoTimeout(10_000);
+            PrintWriter writer = new PrintWriter(socket.getOutputStream(), true);
+            BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream()));
+            writer.println("use school; select name from student where id == 1;");
+            assertEquals("[OK]", reader.readLine());
+            assertEquals("[OK] 1 record(s) found.", reader.readLine());
+        } finally {
+            serverSocket.close();
+        }
+        listener.join(10_000);
+        assertFalse(listener.isAlive());
+    }
+
+    @Test
+    void testTableLocks() throws Exception {
+        createTablesWithContent();
+        // joins locking both tables in either order, while both tables are changed.
+        List<String> commands = List.of(
+                "join transcript and student on studentId and id;",
+                "join student and transcript on id and studentId;",
+                "insert into transcript values('SQL', 70, 2, TRUE);",
+                "update student set grade = 3 where name == 'Marty';",
+                "select name from student where grade >= 3;");
+        ExecutorService clients = Executors.newFixedThreadPool(commands.size());
+        List<Future<?>> results = new ArrayList<>();
+        for (String command : commands) {
+            results.add(clients.submit(() -> {
+                Session session = new Session();
+                server.handleCommand(session, "use school;");
+                for (int i = 0; i < 100; i++) {
+                    assertTrue(server.handleCommand(session, command).startsWith("[OK]"), command);
+                }
+            }));
+        }
+        for (Future<?> result : results) {
+            result.get(60, TimeUnit.SECONDS);
+        }
+        clients.shutdown();
+        assertTrue(server.handleCommand("select id from transcript where test == 'SQL';")
+                         .startsWith("[OK] 100 record(s) found."));
+        // commands on a whole database wait for commands on its tables.
+        assertTrue(server.handleCommand("drop database school;").startsWith("[OK]"));
+    }
+
+    @Test
+    void testSelectorListener() throws Exception {
+        createTablesWithContent();
+        ServerSocketChannel serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress("localhost", 0));
+        int port = ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+        Thread listener = new Thread(() -> {
+            try {
+                server.selectorListenOn(serverChannel);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        listener.start();
+        List<Socket> idle = new ArrayList<>();
+        try {
+            for (int i = 0; i < 200; i++) {
+                idle.add(new Socket("localhost", port));
+            }
+            try (Socket socket = new Socket("localhost", port)) {
+                socket.setSoTimeout(10_000);
+                var out = socket.getOutputStream();
+                BufferedReader reader = new BufferedReader(
+                        new InputStreamReader(socket.getInputStream()));
+                // two commands in one write, then one command in two writes.
+                out.write("use school;\r\nselect name from student where id == 1;\nselect na"
+                                  .getBytes(StandardCharsets.UTF_8));
+                out.flush();
+                assertEquals("[OK]", reader.readLine());
+                assertEquals("" + DBServer.END_OF_TRANSMISSION, reader.readLine());
+                assertEquals("[OK] 1 record(s) found.", reader.readLine());
+                assertEquals("name", reader.readLine());
+                assertEquals("Jack", reader.readLine());
+                assertEquals("", reader.readLine());
+                assertEquals("" + DBServer.END_OF_TRANSMISSION, reader.readLine());
+                out.write("me from student where id == 2;\n".getBytes(StandardCharsets.UTF_8));
+                out.flush();
+                assertEquals("[OK] 1 record(s) found.", reader.readLine());
+                assertEquals("name", reader.readLine());
+                assertEquals("Desmond", reader.readLine());
+            }
+        } finally {
+            for (Socket socket : idle) {
+                socket.close();
+            }
+            listener.interrupt();
+            listener.join(10_000);
+            serverChannel.close();
+        }
+        assertFalse(listener.isAlive());
+    }
+
+    @Test
+    void testBinaryProtocol() throws Exception {
+        createTablesWithContent();
+        // enough rows for several ROWS frames, and more bytes than a connection queues.
+        StringBuilder batch = new StringBuilder("create table notes(note, ratio);");
+        for (int i = 0; i < 3000; i++) {
+            batch.append("insert into notes values('").append("x".repeat(100)).append("', ")
+                 .append(i).append(".5);");
+        }
+        batch.append("insert into notes values(NULL, NULL), (+1, 1.50), (007, 2.0);");
+        assertTrue(server.handleCommand(batch.toString()).startsWith("[OK]"));
+        ServerSocket serverSocket = new ServerSocket(0);
+        Thread listener = new Thread(() -> server.blockingListenOn(serverSocket));
+        listener.start();
+        try (Socket socket = new Socket("localhost", serverSocket.getLocalPort())) {
+            checkBinaryProtocol(socket);
+        } finally {
+            serverSocket.close();
+        }
+        listener.join(10_000);
+        assertFalse(listener.isAlive());
+        // the same with the selector listener.
+        ServerSocketChannel serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress("localhost", 0));
+        Thread selectorListener = new Thread(() -> {
+            try {
+                server.selectorListenOn(serverChannel);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        selectorListener.start();
+        try (Socket socket = new Socket("localhost", ((InetSocketAddress) serverChannel.getLocalAddress()).getPort())) {
+            checkBinaryProtocol(socket);
+        } finally {
+            selectorListener.interrupt();
+            selectorListener.join(10_000);
+            serverChannel.close();
+        }
+        assertFalse(selectorListener.isAlive());
+    }
+
+    @Test
+    void testStreamedRowsHoldNoLock() throws Exception {
+        createTablesWithContent();
+        // a client not reading its rows holds off nothing but the version it reads.
+        CountDownLatch isStreaming = new CountDownLatch(1);
+        CountDownLatch isRead = new CountDownLatch(1);
+        List<String> rows = new ArrayList<>();
+        Session session = new Session();
+        server.handleCommand(session, "use school;");
+        Thread reader = new Thread(() -> server.handleCommand(session, "select name from student;", new ResultSink() {
+            private List<Column> columns;
+
+            @Override
+            public void begin(String message, List<String> attributes, List<Column> columns) {
+                this.columns = columns;
+            }
+
+            @Override
+            public void row(int row) {
+                isStreaming.countDown();
+                try {
+                    isRead.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                rows.add(columns.get(0).getString(row));
+            }
+
+            @Override
+            public void end() {
+            }
+        }));
+        reader.start();
+        assertTrue(isStreaming.await(10, TimeUnit.SECONDS));
+        ExecutorService clients = Executors.newSingleThreadExecutor();
+        Future<String> changes = clients.submit(
+                () -> server.handleCommand("create database library; update student set name = 'Amy' where id == 1;"));
+        assertTrue(changes.get(10, TimeUnit.SECONDS).startsWith("[OK]"));
+        assertTrue(server.handleCommand("select name from student where id == 1;").contains("Amy"));
+        clients.shutdown();
+        isRead.countDown();
+        reader.join(10_000);
+        assertEquals(List.of("Jack", "Desmond", "Marty", "Dany"), rows);
+    }
+
+    private void checkBinaryProtocol(Socket socket) throws IOException {
+        socket.setSoTimeout(10_000);
+        DataInputStream in = new DataInputStream(
+                new BufferedInputStream(socket.getInputStream()));
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(socket.getOutputStream()));
+        out.write(BinaryProtocol.PREFACE);
+        assertEquals(List.of("[OK]", List.of()), queryBinary(in, out, "use school;"));
+        // values are typed, id comes first.
+        assertEquals(List.of("[OK] 2 record(s) found.", List.of("id", "test", "score", "pass"),
+                             List.of(1, "JAVA", 85, true), List.of(3, "POSE", 45, false)),
+                     queryBinary(in, out, "select test, score, id, pass from transcript where studentId == 1;"));
+        List<Object> result = queryBinary(in, out, "select * from notes;");
+        assertEquals(2 + 3003, result.size());
+        assertEquals("[OK] 3003 record(s) found.", result.get(0));
+        assertEquals(List.of("id", "note", "ratio"), result.get(1));
+        assertEquals(List.of(1, "x".repeat(100), 0.5), result.get(2));
+        assertEquals(List.of(3000, "x".repeat(100), 2999.5), result.get(3001));
+        assertEquals(Arrays.asList(3001, null, null), result.get(3002));
+        // values not in canonical text are sent as the text stored.
+        assertEquals(List.of(3002, "+1", "1.50"), result.get(3003));
+        assertEquals(List.of(3003, "007", 2.0), result.get(3004));
+        // errors and batches are sent as messages.
+        result = queryBinary(in, out, "select * from nothing;");
+        assertTrue(((String) result.get(0)).startsWith("[ERROR]"));
+        assertEquals(List.of(), result.get(1));
+        result = queryBinary(in, out, "select name from student where id == 1; select name from student where id == 2;");
+        assertEquals(List.of("[OK] 1 record(s) found.\nname\nJack\n[OK] 1 record(s) found.\nname\nDesmond\n", List.of()), result);
+    }
+
+    // message and attributes of the result of command, then its rows.
+    private static List<Object> queryBinary(DataInputStream in, DataOutputStream out, String command) throws IOException {
+        List<Object> result = new ArrayList<>();
+        BinaryProtocol.writeQuery(out, command);
+        BinaryProtocol.readResult(in, new BinaryProtocol.ResultReader() {
+            @Override
+            public void header(String message, List<String> attributes) {
+                result.add(message);
+                result.add(attributes);
+            }
+
+            @Override
+            public void row(List<Object> values) {
+                result.add(values);
+            }
+        });
+        return result;
+    }
+
     @Test
     void testInvalidCommandIsAnError() {
         assertTrue(server.handleCommand("foo").startsWith("[ERROR]"));
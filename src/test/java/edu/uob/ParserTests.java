@@ -163,6 +163,16 @@ public class ParserTests {
         parser = new Parser(tokens);
         assertThrows(ParserException.class, () -> parser.getCommand());
 
+        // valid, several rows
+        parser = new Parser("insert into table values('a', 1), ('b', 2) ,(null,false);");
+        assertEquals(CommandINSERT.class, parser.getCommand().getClass());
+        // invalid ----------------------------------↓
+        parser = new Parser("insert into table values('a', 1) ('b', 2);");
+        assertThrows(ParserException.class, () -> parser.getCommand());
+        // invalid ----------------------------------↓
+        parser = new Parser("insert into table values('a', 1),;");
+        assertThrows(ParserException.class, () -> parser.getCommand());
+
         // invalid -----------------------↓
         input = "insert into table values();";
         tokens = Tokenizer.getTokens(input);
@@ -202,4 +212,29 @@ public class ParserTests {
         parser = new Parser(tokens);
         assertEquals(CommandJOIN.class, parser.getCommand().getClass());
     }
+
+    @Test
+    void testPrepare() throws ParserException {
+        // valid
+        parser = new Parser("prepare byName as select * from t where (name == ?) or (id > ?);");
+        assertEquals(CommandPREPARE.class, parser.getCommand().getClass());
+        parser = new Parser("prepare add as insert into t values(?, 'a', ?);");
+        assertEquals(CommandPREPARE.class, parser.getCommand().getClass());
+        parser = new Parser("execute byName('Jack', 2);");
+        assertEquals(CommandEXECUTE.class, parser.getCommand().getClass());
+        parser = new Parser("execute all;");
+        assertEquals(CommandEXECUTE.class, parser.getCommand().getClass());
+        // invalid, "?" out of PREPARE
+        parser = new Parser("select * from t where a == ?;");
+        assertThrows(ParserException.class, () -> parser.getCommand());
+        // invalid, "?" in place of a name
+        parser = new Parser("prepare p as select * from ?;");
+        assertThrows(ParserException.class, () -> parser.getCommand());
+        // invalid, nested
+        parser = new Parser("prepare p as execute q;");
+        assertThrows(ParserException.class, () -> parser.getCommand());
+        // invalid, missing ')'
+        parser = new Parser("execute p(1, 2;");
+        assertThrows(ParserException.class, () -> parser.getCommand());
+    }
 }
@@ -1,8 +1,17 @@
 package edu.uob;
 
 import edu.uob.exceptions.TableException;
+import edu.uob.tables.BulkLoader;
+import edu.uob.tables.HashJoin;
+import edu.uob.tables.IdSet;
+import edu.uob.tables.IndexType;
+import edu.uob.tables.LockManager;
 import edu.uob.tables.Table;
+import edu.uob.tables.TableCache;
+import edu.uob.tables.TableCheckpointer;
+import edu.uob.tables.TableFormat;
 import edu.uob.tables.TableIO;
+import edu.uob.tables.TableLog;
 import edu.uob.tables.Type;
 import edu.uob.tables.Value;
 import org.junit.jupiter.api.BeforeEach;
@@ -13,10 +22,15 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.function.BiPredicate;
+import java.util.function.IntPredicate;
+import java.util.stream.LongStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -113,10 +127,134 @@ final class TableTests {
         table = TableIO.load(file); // load table
         table.setValue("Age", "32", 2);
         TableIO.save(table, file);
+        // change is in log until checkpoint.
+        assertTrue(TableLog.getLogFile(file).exists());
+        TableIO.checkpoint(file);
+        assertFalse(TableLog.getLogFile(file).exists());
         assertEquals("id\tName\tAge\tWhatever\n1\tJack\t19\tbar\n2\tMicky\t32\tfoo\n",
                      Files.readString(file.toPath()));
     }
 
+    @Test
+    void testTableLogReplay() throws TableException, IOException {
+        File file = new File(directory + File.separator + "tempTable.tab");
+        String base = "id\tName\tAge\n1\tJack\t19\n2\tMicky\t28\n";
+        Files.writeString(file.toPath(), base);
+        table = TableIO.load(file);
+        table.insertRecord(List.of("Tom", "40"));
+        table.setValue("Age", "20", 1);
+        table.deleteRecord(2);
+        TableIO.save(table, file);
+        // table file untouched, changes replayed from log.
+        assertEquals(base, Files.readString(file.toPath()));
+        String expected = "id\tName\tAge\n1\tJack\t20\n3\tTom\t40\n";
+        assertEquals(expected, TableIO.load(file).toString());
+        // incomplete record from a crash is ignored.
+        File logFile = TableLog.getLogFile(file);
+        Files.writeString(logFile.toPath(), "I\t4\tBob", StandardOpenOption.APPEND);
+        assertEquals(expected, TableIO.load(file).toString());
+        // and cut off before appending, so the table still loads with later changes.
+        table = TableIO.load(file);
+        table.setValue("Age", "21", 1);
+        TableIO.save(table, file);
+        expected = "id\tName\tAge\n1\tJack\t21\n3\tTom\t40\n";
+        assertEquals(expected, TableIO.load(file).toString());
+        assertFalse(Files.readString(logFile.toPath()).contains("Bob"));
+        // a log started on the table file before the checkpoint is not replayed.
+        String log = Files.readString(logFile.toPath());
+        TableIO.checkpoint(file);
+        Files.writeString(logFile.toPath(), log);
+        assertEquals(expected, TableIO.load(file).toString());
+        // schema change rewrites the table file.
+        table = TableIO.load(file);
+        table.addAttribute("Email");
+        TableIO.save(table, file);
+        assertFalse(logFile.exists());
+        assertEquals("id\tName\tAge\tEmail\n1\tJack\t21\tNULL\n3\tTom\t40\tNULL\n",
+                     Files.readString(file.toPath()));
+    }
+
+    @Test
+    void testStaleLogDiscarded() throws TableException, IOException {
+        File file = new File(directory, "tempTable.tab");
+        File logFile = TableLog.getLogFile(file);
+        File checkpointLogFile = TableLog.getCheckpointLogFile(file);
+        Files.writeString(file.toPath(), "id\tName\tAge\n1\tJack\t19\n");
+        table = TableIO.load(file);
+        table.setValue("Age", "20", 1);
+        TableIO.save(table, file);
+        String log = Files.readString(logFile.toPath());
+        String base = log.substring(0, log.indexOf('\n') + 1);
+        // a crash after a checkpoint moved in its file, before its logs were dropped.
+        TableIO.checkpoint(file);
+        table = TableIO.load(file);
+        table.setValue("Name", "Tom", 1);
+        TableIO.save(table, file);
+        String newLog = Files.readString(logFile.toPath());
+        String folded = "F" + newLog.substring(1, newLog.indexOf('\n') + 1);
+        Files.writeString(checkpointLogFile.toPath(), log + folded);
+        Files.writeString(logFile.toPath(), base + "U\t1\tName\tTom\n");
+        String expected = "id\tName\tAge\n1\tTom\t20\n";
+        assertEquals(expected, TableIO.load(file).toString());
+        TableIO.checkpoint(file);
+        assertFalse(checkpointLogFile.exists());
+        assertEquals(expected, Files.readString(file.toPath()));
+        // a crash after a rewrite moved in its file: the log is not replayed onto the new
+        // column of the same name.
+        table = TableIO.load(file);
+        table.dropAttribute("Age");
+        table.addAttribute("Age");
+        TableIO.save(table, file);
+        Files.writeString(logFile.toPath(), log);
+        expected = "id\tName\tAge\n1\tTom\tNULL\n";
+        assertEquals(expected, TableIO.load(file).toString());
+        assertEquals(-1, TableIO.checkpoint(file));
+        assertFalse(logFile.exists());
+        // records not matching the table are refused.
+        table = TableIO.load(file);
+        table.setValue("Name", "Amy", 1);
+        TableIO.save(table, file);
+        log = Files.readString(logFile.toPath());
+        Files.writeString(logFile.toPath(), log + "I\t2\tBob\n");
+        assertThrows(TableException.InvalidImportStringException.class, () -> TableIO.load(file));
+        Files.writeString(logFile.toPath(), log + "U\t1\tEmail\tb@a.com\n");
+        assertThrows(TableException.InvalidImportStringException.class, () -> TableIO.load(file));
+    }
+
+    @Test
+    void testProjectedLoad() throws TableException, IOException {
+        File file = new File(directory, "wide.tab");
+        Files.writeString(file.toPath(), "id\tName\tAge\tEmail\n1\tJack\t19\tj@a.com\n" +
+                                         "2\tMicky\t28\tm@a.com\n");
+        table = TableIO.load(file);
+        table.insertRecord(List.of("Tom", "40", "t@a.com"));
+        table.setValue("Name", "Jacky", 1);
+        table.setValue("Age", "20", 1);
+        TableIO.save(table, file);
+        // only Age is read, records replayed from log included.
+        for (TableFormat format : TableFormat.values()) {
+            TableFormat.set(directory, format);
+            Table projected = TableIO.load(file, Set.of("Age"));
+            assertEquals(List.of("id", "Age"), projected.getAttributeList());
+            assertEquals("id\tAge\n1\t20\n2\t28\n3\t40\n", projected.toString());
+            assertThrows(TableException.class, () -> TableIO.save(projected, file));
+            TableIO.convert(TableIO.load(file), file);
+        }
+        // a projection of all attributes is the whole table.
+        assertEquals(table.toString(),
+                     TableIO.load(file, Set.of("Name", "Age", "Email")).toString());
+        // cache keeps the projected table until other attributes are needed.
+        TableCache cache = new TableCache();
+        Table projected = cache.load(file, Set.of("Age"));
+        assertSame(projected, cache.load(file, Set.of("Age")));
+        Table widened = cache.load(file, Set.of("Email"));
+        assertEquals(List.of("id", "Age", "Email"), widened.getAttributeList());
+        assertSame(widened, cache.load(file, Set.of("Age")));
+        Table whole = cache.load(file);
+        assertEquals(table.toString(), whole.toString());
+        assertSame(whole, cache.load(file, Set.of("Name")));
+    }
+
     @Test
     void testConditionSearch() throws TableException {
         table = new Table("""
@@ -134,4 +272,458 @@ final class TableTests {
                                                    biggerOrEqual);
         assertArrayEquals(List.of(2, 4, 5).toArray(), result.toArray());
     }
+
+    @Test
+    void testColumnTypes() throws TableException {
+        table = new Table("""
+                                  id\tage\tscore\tbool\tname
+                                  1\t+20\t1.50\ttrue\tnull
+                                  2\tnull\t3\tFALSE\tJack
+                                  """);
+        assertEquals(Type.INT, table.getColumnType("age"));
+        assertEquals(Type.FLOAT, table.getColumnType("score"));
+        assertEquals(Type.BOOL, table.getColumnType("bool"));
+        assertEquals(Type.STRING, table.getColumnType("name"));
+        // text of values kept as it is.
+        assertEquals("id\tage\tscore\tbool\tname\n1\t+20\t1.50\ttrue\tnull\n" +
+                     "2\tnull\t3\tFALSE\tJack\n", table.toString());
+        // column is widened once a value not fitting it is set.
+        table.setValue("age", "unknown", 2);
+        assertEquals(Type.STRING, table.getColumnType("age"));
+        assertEquals("+20", table.getValue("age", 1));
+        assertEquals("unknown", table.getValue("age", 2));
+    }
+
+    @Test
+    void testTableCache() throws TableException, IOException {
+        File first = new File(directory + File.separator + "first.tab");
+        File second = new File(directory + File.separator + "second.tab");
+        Files.writeString(first.toPath(), "id\tName\n1\tJack\n");
+        Files.writeString(second.toPath(), "id\tName\n1\tMicky\n");
+        // hit returns the same parsed table.
+        TableCache cache = new TableCache();
+        table = cache.load(first);
+        assertSame(table, cache.load(first));
+        // invalidated table will be read again.
+        Files.writeString(first.toPath(), "id\tName\n1\tTom\n");
+        cache.invalidate(first);
+        assertEquals("Tom", cache.load(first).getValue("Name", 1));
+        // saved table is written through.
+        table = cache.load(first);
+        table.setValue("Name", "Bob", 1);
+        cache.save(table, first);
+        assertEquals("id\tName\n1\tBob\n", TableIO.load(first).toString());
+        // least recently used table get evicted once capacity is exceeded.
+        long capacity = table.estimateSize() + table.estimateSize() / 2;
+        cache = new TableCache(capacity);
+        cache.load(first);
+        cache.load(second);
+        assertFalse(cache.contains(first));
+        assertTrue(cache.contains(second));
+        assertTrue(cache.getUsedBytes() <= capacity);
+        // whole database dropped.
+        cache.invalidateDirectory(directory);
+        assertFalse(cache.contains(second));
+        assertEquals(0, cache.getUsedBytes());
+    }
+
+    @Test
+    void testBackgroundCheckpoint() throws TableException, IOException, InterruptedException {
+        File file = new File(directory + File.separator + "tempTable.tab");
+        Files.writeString(file.toPath(), "id\tName\tAge\n");
+        try (TableCheckpointer checkpointer = new TableCheckpointer(64, 60_000)) {
+            TableCache cache = new TableCache(TableCache.DEFAULT_CAPACITY, checkpointer);
+            // keep appending while log get folded in background.
+            for (int i = 0; i < 200; i++) {
+                table = cache.load(file);
+                table.insertRecord(List.of("name" + i, "" + i));
+                cache.save(table, file);
+            }
+            checkpointer.checkpointAll();
+            assertFalse(TableLog.getLogFile(file).exists());
+            assertFalse(TableLog.getCheckpointLogFile(file).exists());
+            assertEquals(table.toString(), Files.readString(file.toPath()));
+            assertTrue(checkpointer.getCheckpointCount() > 0);
+            assertTrue(checkpointer.getBytesWritten() > 0);
+            assertTrue(checkpointer.getTotalDurationNanos() > 0);
+        }
+    }
+
+    @Test
+    void testParallelHashJoin() {
+        Random random = new Random(42);
+        String[] leftKeys = new String[5000];
+        String[] rightKeys = new String[3000];
+        Arrays.setAll(leftKeys, (i) -> "" + random.nextInt(1000));
+        Arrays.setAll(rightKeys, (i) -> "" + random.nextInt(1000));
+        // pairs in order of left index then right index.
+        LongStream.Builder expected = LongStream.builder();
+        for (int left = 0; left < leftKeys.length; left++) {
+            for (int right = 0; right < rightKeys.length; right++) {
+                if (leftKeys[left].equals(rightKeys[right]))
+                    expected.add(((long) left << 32) | right);
+            }
+        }
+        long[] pairs = expected.build().toArray();
+        // serial and parallel, build on either side.
+        assertArrayEquals(pairs, HashJoin.join(leftKeys, rightKeys, Integer.MAX_VALUE));
+        assertArrayEquals(pairs, HashJoin.join(leftKeys, rightKeys, 0));
+        long[] swapped = Arrays.stream(pairs)
+                               .map((pair) -> ((long) HashJoin.getRight(pair) << 32) |
+                                              HashJoin.getLeft(pair))
+                               .sorted().toArray();
+        assertArrayEquals(swapped, HashJoin.join(rightKeys, leftKeys, 0));
+    }
+
+    @Test
+    void testParallelScan() throws TableException {
+        table = new Table();
+        table.addAttribute("value");
+        for (int i = 0; i < 50_000; i++) {
+            table.insertRecord(List.of("" + i % 97));
+        }
+        for (int id = 1; id <= 50_000; id += 3) {
+            table.deleteRecord(id);
+        }
+        IntPredicate filter = table.getRowFilter("value", (column, row) ->
+                column.compareInt(row, 50) > 0);
+        Set<Integer> expected = table.getIdsByFilter(filter);
+        assertFalse(expected.isEmpty());
+        // morsels merged in order of id.
+        assertArrayEquals(expected.toArray(), table.getIdsByFilter(filter, 0).toArray());
+    }
+
+    @Test
+    void testLockManager() {
+        LockManager lockManager = new LockManager();
+        File a = new File(directory, "a.tab");
+        File b = new File(directory, "b.tab");
+        // files are locked in the same order whatever order they are given.
+        LockManager.Locks ab = lockManager.lock(List.of(a, b));
+        assertTrue(ab.locks().get(0).isHeldByCurrentThread());
+        ab.unlock();
+        LockManager.Locks ba = lockManager.lock(List.of(b, a, b));
+        assertEquals(ab.locks(), ba.locks());
+        ba.unlock();
+        assertFalse(ab.locks().get(0).isLocked());
+    }
+
+    @Test
+    void testTableVersions() throws TableException, IOException {
+        File file = new File(directory, "versions.tab");
+        Files.writeString(file.toPath(), "id\tName\tAge\n1\tJack\t19\n2\tMicky\t28\n");
+        TableCache cache = new TableCache();
+        // a table not read is changed in place.
+        Table table = cache.loadForChange(file);
+        assertSame(table, cache.load(file));
+        table.createIndex("Name");
+        cache.save(table, file);
+        // a pinned table is copied, the copy is seen once saved.
+        Table pinned = cache.pin(file, null);
+        Table changed = cache.loadForChange(file);
+        assertNotSame(pinned, changed);
+        changed.deleteRecord(1);
+        changed.insertRecord(List.of("Tom", "40"));
+        assertEquals("id\tName\tAge\n1\tJack\t19\n2\tMicky\t28\n", pinned.toString());
+        assertEquals(Set.of(1), pinned.getIdsByIndex("Name", new Value("Jack", Type.STRING)));
+        assertSame(pinned, cache.pin(file, null));
+        cache.save(changed, file);
+        assertSame(changed, cache.pin(file, null));
+        assertEquals("id\tName\tAge\n2\tMicky\t28\n3\tTom\t40\n", changed.toString());
+        assertEquals(Set.of(3), changed.getIdsByIndex("Name", new Value("Tom", Type.STRING)));
+        assertEquals(changed.toString(), TableIO.load(file).toString());
+        // a table changed in place but not saved is read again.
+        for (Table reader : List.of(pinned, pinned, changed, changed)) {
+            cache.unpin(reader);
+        }
+        table = cache.loadForChange(file);
+        assertSame(changed, table);
+        table.deleteRecord(2);
+        cache.endChange(file);
+        assertEquals("id\tName\tAge\n2\tMicky\t28\n3\tTom\t40\n", cache.pin(file, null).toString());
+    }
+
+    @Test
+    void testIdSet() {
+        // sparse and dense chunks, negative ids and ids across chunks.
+        Random random = new Random(13);
+        List<TreeSet<Integer>> expected = List.of(new TreeSet<>(), new TreeSet<>());
+        List<IdSet> sets = List.of(new IdSet(), new IdSet());
+        for (int i = 0; i < 60000; i++) {
+            int set = random.nextInt(2);
+            int id = switch (random.nextInt(4)) {
+                case 0 -> random.nextInt(1 << 20) - (1 << 19);
+                case 1 -> random.nextInt(8000) + (set << 12); // dense, partly shared.
+                default -> random.nextInt(200000);
+            };
+            if (random.nextInt(5) == 0) {
+                assertEquals(expected.get(set).remove(id), sets.get(set).remove(id));
+            }
+            else assertEquals(expected.get(set).add(id), sets.get(set).add(id));
+        }
+        TreeSet<Integer> left = expected.get(0), right = expected.get(1);
+        IdSet leftIds = sets.get(0), rightIds = sets.get(1);
+        assertEquals(List.copyOf(left), List.copyOf(leftIds));
+        assertEquals(left.size(), leftIds.size());
+        assertTrue(leftIds.contains(left.first()));
+        TreeSet<Integer> and = new TreeSet<>(left), or = new TreeSet<>(left),
+                andNot = new TreeSet<>(left);
+        and.retainAll(right);
+        or.addAll(right);
+        andNot.removeAll(right);
+        assertEquals(List.copyOf(and), List.copyOf(leftIds.and(rightIds)));
+        assertEquals(List.copyOf(or), List.copyOf(leftIds.or(rightIds)));
+        assertEquals(List.copyOf(andNot), List.copyOf(leftIds.andNot(rightIds)));
+        assertArrayEquals(or.stream().mapToInt(Integer::intValue).toArray(),
+                          leftIds.or(rightIds).toIntArray());
+        // in place.
+        leftIds.addAll(rightIds);
+        assertEquals(or, leftIds);
+        leftIds.removeAll(rightIds);
+        assertEquals(andNot, leftIds);
+        Set<Integer> kept = Set.of(andNot.first(), andNot.last());
+        leftIds.retainAll(kept);
+        assertEquals(kept, leftIds);
+    }
+
+    @Test
+    void testPrimaryKey() throws TableException {
+        table = new Table("id\tvalue\n2\ta\n3\tb\n5\tc\n8\td\n13\te\n21\tf\n");
+        table.deleteRecord(8);
+        // same as comparing each id, see Condition.
+        List<Value> references = List.of(new Value("5", Type.INT), new Value("8", Type.INT),
+                                          new Value("99999999999", Type.INT),
+                                          new Value("4.5", Type.FLOAT),
+                                          new Value("13.0", Type.FLOAT),
+                                          new Value("5", Type.STRING),
+                                          new Value("05", Type.STRING),
+                                          new Value("true", Type.BOOL),
+                                          new Value("null", Type.NULL));
+        for (Value reference : references) {
+            assertEquals(table.getIdsByMethod("id", reference, (value, ref) ->
+                                 value.compareTo(ref) == 0),
+                         table.getIdsByIndex("id", reference));
+            if (reference.type() != Type.INT && reference.type() != Type.FLOAT) continue;
+            for (boolean isGreater : new boolean[]{true, false}) {
+                for (boolean isInclusive : new boolean[]{true, false}) {
+                    BiPredicate<Value, Value> inRange = (value, ref) -> {
+                        int result = value.compareTo(ref);
+                        return isInclusive && result == 0 ||
+                               (isGreater ? result > 0 : result < 0);
+                    };
+                    Set<Integer> expected = table.getIdsByMethod("id", reference, inRange);
+                    assertEquals(expected, table.getIdsByRange("id", reference, isGreater,
+                                                               isInclusive));
+                    assertEquals(expected.size(), table.countIdsByRange(
+                            "id", reference, isGreater, isInclusive));
+                }
+            }
+        }
+    }
+
+    @Test
+    void testHashIndex() throws TableException, IOException {
+        File file = new File(directory + File.separator + "indexed.tab");
+        Files.writeString(file.toPath(), """
+                id\tvalue
+                1\t1
+                2\t+1
+                3\t1.0
+                4\tTrue
+                5\tnull
+                6\t'1'
+                7\t99999999999
+                """);
+        table = TableIO.load(file);
+        table.createIndex("value");
+        table.setValue("value", "01", 6);
+        table.insertRecord(List.of("NULL"));
+        table.deleteRecord(1);
+        TableIO.save(table, file);
+        // same as comparing each value, whatever type of reference value.
+        List<Value> references = List.of(new Value("1", Type.INT), new Value("1.0", Type.FLOAT),
+                                          new Value("1", Type.STRING),
+                                          new Value("true", Type.BOOL),
+                                          new Value("NULL", Type.NULL),
+                                          new Value("99999999999", Type.INT));
+        BiPredicate<Value, Value> equal = (value, reference) -> value.compareTo(reference) == 0;
+        for (Table loaded : List.of(table, TableIO.load(file))) {
+            assertTrue(loaded.hasIndex("value"));
+            for (Value reference : references) {
+                assertEquals(loaded.getIdsByMethod("value", reference, equal),
+                             loaded.getIdsByIndex("value", reference));
+            }
+        }
+        // kept in its own file, built again once table file is changed behind it.
+        assertTrue(new File(directory + File.separator + "indexed.idx").exists());
+        Files.writeString(file.toPath(), "id\tvalue\n3\t1\n");
+        assertEquals(Set.of(3), TableIO.load(file).getIdsByIndex("value",
+                                                                  new Value("1", Type.INT)));
+    }
+
+    @Test
+    void testOrderedIndex() throws TableException, IOException {
+        File file = new File(directory + File.separator + "ordered.tab");
+        Files.writeString(file.toPath(), """
+                id\tvalue
+                1\t5
+                2\t+10
+                3\t2.5
+                4\tabc
+                5\tNULL
+                6\t-3
+                7\t10.0
+                8\t99999999999
+                """);
+        table = TableIO.load(file);
+        table.createIndex("value", IndexType.ORDERED);
+        table.setValue("value", "7", 1);
+        table.deleteRecord(6);
+        TableIO.save(table, file);
+        // same as comparing each value, see Condition.
+        List<Value> references = List.of(new Value("7", Type.INT), new Value("10", Type.INT),
+                                          new Value("2.5", Type.FLOAT),
+                                          new Value("99999999999", Type.INT));
+        for (Table loaded : List.of(table, TableIO.load(file))) {
+            for (Value reference : references) {
+                for (boolean isGreater : new boolean[]{true, false}) {
+                    for (boolean isInclusive : new boolean[]{true, false}) {
+                        BiPredicate<Value, Value> inRange = (value, ref) -> {
+                            int result = value.compareTo(ref);
+                            return !value.valueString().equalsIgnoreCase("null") &&
+                                   (isInclusive && result == 0 ||
+                                    (isGreater ? result > 0 : result < 0));
+                        };
+                        Set<Integer> expected = loaded.getIdsByMethod("value", reference,
+                                                                      inRange);
+                        assertEquals(expected, loaded.getIdsByRange("value", reference,
+                                                                    isGreater, isInclusive));
+                        assertEquals(expected.size(), loaded.countIdsByRange(
+                                "value", reference, isGreater, isInclusive));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void testTrigramIndex() throws TableException, IOException {
+        File file = new File(directory + File.separator + "trigram.tab");
+        Files.writeString(file.toPath(), """
+                id\tvalue
+                1\tbanana
+                2\tbandana
+                3\tcabana
+                4\tanna
+                5\tNULL
+                6\tnanaban
+                """);
+        table = TableIO.load(file);
+        table.createIndex("value", IndexType.TRIGRAM);
+        table.setValue("value", "ananas", 4);
+        table.insertRecord(List.of("banana"));
+        table.deleteRecord(2);
+        TableIO.save(table, file);
+        BiPredicate<Value, Value> like = (value, ref) -> value.valueString()
+                                                              .contains(ref.valueString());
+        for (Table loaded : List.of(table, TableIO.load(file))) {
+            // same as a scan, though a text may have every gram of pattern but not pattern.
+            for (String pattern : List.of("ana", "nana", "anab", "bana", "xyz", "ULL")) {
+                Value reference = new Value(pattern, Type.STRING);
+                assertEquals(loaded.getIdsByMethod("value", reference, like),
+                             loaded.getIdsByLike("value", pattern));
+            }
+            // too short to have a gram.
+            assertNull(loaded.getIdsByLike("value", "an"));
+            // still answering ==.
+            assertEquals(Set.of(1, 7), loaded.getIdsByIndex("value",
+                                                            new Value("banana", Type.STRING)));
+        }
+    }
+
+    @Test
+    void testBulkLoad() throws TableException, IOException {
+        // large enough to be split into chunks.
+        File source = new File(directory, "source.tab");
+        StringBuilder content = new StringBuilder("id\tname\tscore\n");
+        int count = 400_000;
+        for (int i = 1; i <= count; i++) {
+            content.append(i).append("\tname").append(i).append('\t').append(i % 100)
+                   .append('\n');
+        }
+        content.append(count + 1).append("\tlast\t0.5\n");
+        Files.writeString(source.toPath(), content);
+        // a table without attributes takes those of the file.
+        table = new Table();
+        assertEquals(count + 1, BulkLoader.load(table, source));
+        assertEquals(List.of("id", "name", "score"), table.getAttributeList());
+        assertEquals(Type.FLOAT, table.getColumnType("score"));
+        assertEquals(List.of("name7", "7"), table.getValues(7));
+        assertEquals(List.of("last", "0.5"), table.getValues(count + 1));
+        // new ids follow the last one.
+        table.deleteRecord(count + 1);
+        table.createIndex("name");
+        Files.writeString(source.toPath(), "id\tname\tscore\n1\tagain\tTRUE\n");
+        assertEquals(1, BulkLoader.load(table, source));
+        assertEquals(List.of("again", "TRUE"), table.getValues(count + 2));
+        assertEquals(Type.STRING, table.getColumnType("score"));
+        assertEquals(Set.of(count + 2), table.getIdsByIndex("name", new Value("again", Type.STRING)));
+        // nothing is loaded from an invalid file.
+        Files.writeString(source.toPath(), "id\tname\tscore\n1\ta\t1\nx\tb\t2\n");
+        assertThrows(TableException.class, () -> BulkLoader.load(table, source));
+        Files.writeString(source.toPath(), "id\tname\n1\ta\n");
+        assertThrows(TableException.class, () -> BulkLoader.load(table, source));
+        assertEquals(count + 1, table.getRecordCount());
+    }
+
+    @Test
+    void testBinaryTableFile() throws TableException, IOException {
+        TableFormat.set(directory, TableFormat.BINARY);
+        File file = new File(directory, "binary.tab");
+        table = new Table("""
+                id\tsmall\tlarge\tnumber\tflag\tname
+                1\t1\t10000000000\t1.5\tTRUE\tBob
+                2\t+2\tNULL\t3\ttrue\tHarry
+                3\tnull\t-1\t0.25\tFALSE\tAmy
+                5\t-7\t7\tNULL\tNULL\tnull
+                """);
+        table.deleteRecord(2);
+        table.createIndex("name", IndexType.TRIGRAM);
+        String expected = table.toString();
+        TableIO.save(table, file);
+        // written in binary, read back the same.
+        try (var in = Files.newInputStream(file.toPath())) {
+            assertEquals('T', in.read());
+        }
+        Table loaded = TableIO.load(file);
+        assertEquals(expected, loaded.toString());
+        assertEquals(table.getColumnTypes(), loaded.getColumnTypes());
+        assertEquals(Set.of(5), loaded.getIdsByLike("name", "ull"));
+        // changes are logged, then folded by a checkpoint, still in binary.
+        loaded.insertRecord(List.of("4", "4", "4.5", "FALSE", "Chris"));
+        TableIO.save(loaded, file);
+        assertTrue(TableIO.checkpoint(file) > 0);
+        Table checkpointed = TableIO.load(file);
+        assertEquals(loaded.toString(), checkpointed.toString());
+        // new ids follow the last id, even if it is deleted.
+        checkpointed.deleteRecord(6);
+        TableIO.save(checkpointed, file);
+        checkpointed = TableIO.load(file);
+        checkpointed.insertRecord(List.of("8", "8", "8.5", "TRUE", "Dany"));
+        assertEquals(List.of("8", "8", "8.5", "TRUE", "Dany"), checkpointed.getValues(7));
+        // a body not matching its checksum is refused, also for a projection.
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        bytes[bytes.length - 1] ^= 1;
+        Files.write(file.toPath(), bytes);
+        assertThrows(TableException.ReadTableFailedException.class, () -> TableIO.load(file));
+        assertThrows(TableException.ReadTableFailedException.class,
+                     () -> TableIO.load(file, Set.of("small")));
+        bytes[bytes.length - 1] ^= 1;
+        Files.write(file.toPath(), bytes);
+        // converted back to text.
+        TableFormat.set(directory, TableFormat.TEXT);
+        TableIO.convert(checkpointed, file);
+        assertTrue(Files.readString(file.toPath()).startsWith("id\tsmall"));
+        assertEquals(checkpointed.toString(), TableIO.load(file).toString());
+    }
 }
@@ -1,9 +1,14 @@
 package edu.uob;
 
+import edu.uob.syntax.Token;
 import edu.uob.syntax.Tokenizer;
+import edu.uob.tables.Type;
 import org.junit.jupiter.api.Test;
 
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 
 public class TokenizerTests {
 
@@ -68,4 +73,29 @@ public class TokenizerTests {
         assertArrayEquals(expected, actual);
 
     }
+
+    @Test
+    void typedTokensTest() {
+        String command = "UPDATE t SET a='x y',b=-1.5 WHERE (c>=Null)or(d like 'it\"s');";
+        List<Token> actual = Tokenizer.lex(command);
+        assertEquals(Tokenizer.getTokens(command), actual.stream().map(Token::text).toList());
+        assertEquals(new Token("UPDATE", Token.Kind.WORD, null), actual.get(0));
+        assertEquals(new Token("'x y'", Token.Kind.VALUE, Type.STRING), actual.get(5));
+        assertEquals(new Token("=", Token.Kind.OPERATOR, null), actual.get(8));
+        assertEquals(new Token("-1.5", Token.Kind.VALUE, Type.FLOAT), actual.get(9));
+        assertEquals(new Token("Null", Token.Kind.WORD, Type.NULL), actual.get(14));
+        // a quote with " inside is not split as a string, but still reads as one.
+        assertEquals(new Token("'it\"s'", Token.Kind.VALUE, Type.STRING), actual.get(20));
+        assertEquals(List.of("a", "'b", "\"c'", ";"), Tokenizer.getTokens("a 'b \"c';"));
+    }
+
+    @Test
+    void splitStatementsTest() {
+        assertEquals(List.of("use a;", " insert into t values('x;y');", " select * from t;"),
+                     Tokenizer.splitStatements("use a; insert into t values('x;y'); select * from t;  "));
+        assertEquals(List.of("use a;", " select"), Tokenizer.splitStatements("use a; select"));
+        // a quote with " inside does not hide ;
+        assertEquals(List.of("a 'b;", "\"c';"), Tokenizer.splitStatements("a 'b;\"c';"));
+        assertEquals(List.of(), Tokenizer.splitStatements(" "));
+    }
 }